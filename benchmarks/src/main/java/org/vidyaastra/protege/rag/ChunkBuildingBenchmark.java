@@ -0,0 +1,114 @@
+package org.vidyaastra.protege.rag;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text chunk building for graph nodes and ontology entities
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkBuildingBenchmark {
+    
+    private static final String NAMESPACE = "http://example.org/benchmark#";
+    
+    /** Entities of each kind in the ontology */
+    @Param({"100", "1000"})
+    public int entities;
+    
+    private Value node;
+    private List<Object> labels;
+    private List<Object> relationships;
+    
+    private OntologyChunker chunker;
+    private OWLClass sampleClass;
+    private OWLNamedIndividual sampleIndividual;
+    private OWLObjectProperty sampleProperty;
+    
+    @Setup
+    public void setUp() throws OWLOntologyCreationException {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", "Transaction 4711");
+        properties.put("amount", 1250.75);
+        properties.put("currency", "EUR");
+        properties.put("timestamp", 1700000000000L);
+        properties.put("flagged", true);
+        properties.put("channel", "online");
+        properties.put("description", "Card-not-present purchase at an electronics merchant");
+        properties.put("riskScore", 0.82);
+        node = Values.value(properties);
+        labels = Arrays.asList("Transaction", "Suspicious");
+        relationships = new ArrayList<>();
+        for (String type : Arrays.asList("MADE_BY", "PAID_TO", "USING_CARD", "FROM_DEVICE", "FLAGGED_BY")) {
+            Map<String, Object> relationship = new HashMap<>();
+            relationship.put("type", type);
+            relationship.put("targetLabels", Collections.singletonList("Entity"));
+            relationships.add(relationship);
+        }
+        
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/benchmark"));
+        OWLObjectProperty relatedTo = factory.getOWLObjectProperty(IRI.create(NAMESPACE + "relatedTo"));
+        OWLDataProperty name = factory.getOWLDataProperty(IRI.create(NAMESPACE + "name"));
+        OWLClass[] classes = new OWLClass[entities];
+        OWLNamedIndividual[] individuals = new OWLNamedIndividual[entities];
+        Set<OWLAxiom> axioms = new HashSet<>();
+        for (int i = 0; i < entities; i++) {
+            classes[i] = factory.getOWLClass(IRI.create(NAMESPACE + "Class" + i));
+            individuals[i] = factory.getOWLNamedIndividual(IRI.create(NAMESPACE + "Individual" + i));
+            axioms.add(factory.getOWLDeclarationAxiom(classes[i]));
+            if (i > 0) {
+                axioms.add(factory.getOWLSubClassOfAxiom(classes[i], classes[i / 2]));
+            }
+            axioms.add(factory.getOWLClassAssertionAxiom(classes[i], individuals[i]));
+            axioms.add(factory.getOWLDataPropertyAssertionAxiom(name, individuals[i], "Individual " + i));
+            if (i > 0) {
+                axioms.add(factory.getOWLObjectPropertyAssertionAxiom(relatedTo, individuals[i], individuals[i - 1]));
+            }
+        }
+        axioms.add(factory.getOWLObjectPropertyDomainAxiom(relatedTo, classes[0]));
+        axioms.add(factory.getOWLObjectPropertyRangeAxiom(relatedTo, classes[0]));
+        manager.addAxioms(ontology, axioms);
+        
+        chunker = new OntologyChunker(ontology);
+        sampleClass = classes[entities - 1];
+        sampleIndividual = individuals[entities - 1];
+        sampleProperty = relatedTo;
+    }
+    
+    @Benchmark
+    public String graphNodeChunk() {
+        return Neo4jService.buildTextChunk(node, labels, relationships);
+    }
+    
+    @Benchmark
+    public String classChunk() {
+        return chunker.buildClassChunk(sampleClass);
+    }
+    
+    @Benchmark
+    public String individualChunk() {
+        return chunker.buildIndividualChunk(sampleIndividual);
+    }
+    
+    @Benchmark
+    public String objectPropertyChunk() {
+        return chunker.buildObjectPropertyChunk(sampleProperty);
+    }
+    
+    @Benchmark
+    public Map<String, String> wholeOntology() {
+        return chunker.chunkAll();
+    }
+}
@@ -0,0 +1,57 @@
+package org.vidyaastra.protege.rag;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Context and prompt assembly from retrieved chunks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextAssemblyBenchmark {
+    
+    /** Retrieved chunks */
+    @Param({"5", "20"})
+    public int results;
+    
+    private List<VectorStore.SearchResult> searchResults;
+    private String graphSchema;
+    private String ontologySummary;
+    
+    @Setup
+    public void setUp() {
+        searchResults = new ArrayList<>(results);
+        for (int i = 0; i < results; i++) {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("text", "Node Type: [Transaction]\nProperties: {name=Transaction " + i
+                + ", amount=" + (i * 17.5) + ", currency=EUR, channel=online, description=Card-not-present purchase "
+                + "at an electronics merchant flagged by the velocity rule}\nRelationships:\n"
+                + "  - MADE_BY -> [Customer]\n  - PAID_TO -> [Merchant]\n  - USING_CARD -> [Card]\n");
+            metadata.put("source", "neo4j");
+            searchResults.add(new VectorStore.SearchResult(0.9f - i * 0.01f, metadata));
+        }
+        graphSchema = "Node Labels: [Customer, Merchant, Card, Transaction, Device, Alert]\n"
+            + "Relationship Types: [MADE_BY, PAID_TO, USING_CARD, FROM_DEVICE, FLAGGED_BY]\n";
+        ontologySummary = "Current Protégé Ontology Summary:\n- Classes: 42\n- Individuals: 310\n"
+            + "- Object Properties: 18\n- Data Properties: 25\n";
+    }
+    
+    @Benchmark
+    public String buildContext() {
+        return RagService.buildContext(searchResults);
+    }
+    
+    @Benchmark
+    public String buildPrompt() {
+        return RagService.buildSystemPrompt(RagService.buildContext(searchResults), graphSchema, ontologySummary);
+    }
+}
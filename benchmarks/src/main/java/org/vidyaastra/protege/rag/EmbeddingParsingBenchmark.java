@@ -0,0 +1,86 @@
+package org.vidyaastra.protege.rag;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedding requests against a stubbed OpenAI endpoint: an interceptor answers every call with a canned
+ * response, so this measures request building and streaming JSON parsing without any network.
+ * Run with {@code -prof gc} to see the allocation rate per parsed batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingParsingBenchmark {
+    
+    private static final MediaType JSON = MediaType.get("application/json");
+    
+    @Param({"384", "1536"})
+    public int dimension;
+    
+    @Param({"1", "64"})
+    public int batchSize;
+    
+    private EmbeddingService service;
+    private List<String> texts;
+    
+    @Setup
+    public void setUp() {
+        byte[] body = openAiResponse(new Random(42)).getBytes(StandardCharsets.UTF_8);
+        OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(chain -> new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(body, JSON))
+                .build())
+            .build();
+        service = new EmbeddingService("text-embedding-3-small (OpenAI)", "benchmark", client,
+            "http://embeddings.invalid/v1/embeddings", "http://embeddings.invalid/v1/embed", null);
+        
+        texts = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            texts.add("Node Type: [Transaction]\nProperties: {name=Transaction " + i + ", amount=" + (i * 17.5) + "}");
+        }
+    }
+    
+    private String openAiResponse(Random random) {
+        StringBuilder json = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < batchSize; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":[");
+            for (int d = 0; d < dimension; d++) {
+                if (d > 0) {
+                    json.append(',');
+                }
+                json.append((float) (random.nextGaussian() * 0.05));
+            }
+            json.append("]}");
+        }
+        json.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":")
+            .append(batchSize * 20).append(",\"total_tokens\":").append(batchSize * 20).append("}}");
+        return json.toString();
+    }
+    
+    @Benchmark
+    public List<float[]> embedBatch() throws IOException {
+        return service.generateEmbeddings(texts);
+    }
+}
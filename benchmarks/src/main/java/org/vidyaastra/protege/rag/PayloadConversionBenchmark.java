@@ -0,0 +1,84 @@
+package org.vidyaastra.protege.rag;
+
+import io.qdrant.client.grpc.JsonWithInt.Value;
+import io.qdrant.client.grpc.Points.PointStruct;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Qdrant payload conversion and moving vectors in and out of the protobuf point messages
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadConversionBenchmark {
+    
+    @Param({"384", "1536"})
+    public int dimension;
+    
+    private Map<String, Object> metadata;
+    private Map<String, Value> payload;
+    private VectorStore.VectorData data;
+    private PointStruct point;
+    
+    @Setup
+    public void setUp() {
+        metadata = new HashMap<>();
+        metadata.put("text", "Node Type: [Transaction, Suspicious]\nProperties: {name=Transaction 4711, amount=1250.75, "
+            + "currency=EUR, channel=online, description=Card-not-present purchase at an electronics merchant}\n"
+            + "Relationships:\n  - MADE_BY -> [Customer]\n  - PAID_TO -> [Merchant]\n  - USING_CARD -> [Card]\n");
+        metadata.put("source", "neo4j");
+        metadata.put("nodeId", 4711L);
+        metadata.put("labels", "[Transaction, Suspicious]");
+        metadata.put("riskScore", 0.82);
+        metadata.put("flagged", true);
+        payload = QdrantVectorStore.convertMetadataToPayload(metadata);
+        
+        Random random = new Random(42);
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        data = new VectorStore.VectorData("neo4j:node:4711", vector, metadata);
+        point = QdrantVectorStore.toPoint(data);
+    }
+    
+    @Benchmark
+    public Map<String, Value> metadataToPayload() {
+        return QdrantVectorStore.convertMetadataToPayload(metadata);
+    }
+    
+    @Benchmark
+    public Map<String, Object> payloadToMetadata() {
+        return QdrantVectorStore.convertPayloadToMetadata(payload);
+    }
+    
+    /**
+     * float[] into the point message, including the payload and point id
+     */
+    @Benchmark
+    public PointStruct vectorToPoint() {
+        return QdrantVectorStore.toPoint(data);
+    }
+    
+    /**
+     * Vector out of a point message; the generated getter exposes the repeated field as boxed floats
+     */
+    @Benchmark
+    public float[] pointToVector() {
+        List<Float> values = point.getVectors().getVector().getDataList();
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = values.get(i);
+        }
+        return vector;
+    }
+}
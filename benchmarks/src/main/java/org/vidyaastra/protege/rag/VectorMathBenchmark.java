@@ -0,0 +1,64 @@
+package org.vidyaastra.protege.rag;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar versus active (Vector API, when available) similarity kernels on common embedding sizes.
+ * The fork enables {@code jdk.incubator.vector}, so this benchmark needs a JDK 17+.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorMathBenchmark {
+    
+    @Param({"384", "768", "1536"})
+    public int dimension;
+    
+    @Param({"scalar", "active"})
+    public String kernel;
+    
+    private VectorMath.Kernel kernels;
+    private float[] a;
+    private float[] b;
+    private ByteBuffer stored;
+    
+    @Setup
+    public void setUp() {
+        kernels = "scalar".equals(kernel) ? VectorMath.SCALAR : VectorMath.kernel();
+        Random random = new Random(42);
+        a = new float[dimension];
+        b = new float[dimension];
+        stored = ByteBuffer.allocateDirect(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < dimension; i++) {
+            a[i] = (float) random.nextGaussian();
+            b[i] = (float) random.nextGaussian();
+            stored.putFloat(i * Float.BYTES, b[i]);
+        }
+    }
+    
+    @Benchmark
+    public float dot() {
+        return kernels.dot(a, b);
+    }
+    
+    @Benchmark
+    public float squaredDistance() {
+        return kernels.squaredDistance(a, b);
+    }
+    
+    /**
+     * Dot product against a vector in an off-heap buffer, as in a memory-mapped index segment
+     */
+    @Benchmark
+    public float dotBuffer() {
+        return kernels.dot(a, stored, 0);
+    }
+}
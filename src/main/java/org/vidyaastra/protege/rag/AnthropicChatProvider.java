@@ -0,0 +1,88 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+
+/**
+ * Anthropic Messages API: the system prompt is a top-level field, authentication uses the
+ * x-api-key header, and the answer comes back as a list of content blocks
+ */
+public class AnthropicChatProvider extends ChatProvider {
+    
+    private static final String MESSAGES_URL = "https://api.anthropic.com/v1/messages";
+    private static final String API_VERSION = "2023-06-01";
+    
+    private final String apiKey;
+    private final String url;
+    
+    public AnthropicChatProvider(String model, String apiKey) {
+        this(model, apiKey, MESSAGES_URL);
+    }
+    
+    /**
+     * Provider with an explicit endpoint (e.g. for a mock server or a proxy)
+     */
+    AnthropicChatProvider(String model, String apiKey, String url) {
+        super(model, 10, 90, 120);
+        this.apiKey = apiKey;
+        this.url = url;
+    }
+    
+    @Override
+    protected Request buildRequest(String systemPrompt, String userMessage, int maxTokens, boolean stream) {
+        JsonObject requestBody = new JsonObject();
+        requestBody.addProperty("model", model);
+        requestBody.addProperty("max_tokens", maxTokens);
+        requestBody.addProperty("temperature", TEMPERATURE);
+        requestBody.addProperty("system", systemPrompt);
+        
+        JsonArray messages = new JsonArray();
+        JsonObject userMessageJson = new JsonObject();
+        userMessageJson.addProperty("role", "user");
+        userMessageJson.addProperty("content", userMessage);
+        messages.add(userMessageJson);
+        requestBody.add("messages", messages);
+        if (stream) {
+            requestBody.addProperty("stream", true);
+        }
+        
+        return new Request.Builder()
+            .url(url)
+            .addHeader("x-api-key", apiKey)
+            .addHeader("anthropic-version", API_VERSION)
+            .post(RequestBody.create(gson.toJson(requestBody), JSON))
+            .build();
+    }
+    
+    @Override
+    protected String parseResponse(JsonObject response) {
+        StringBuilder text = new StringBuilder();
+        for (JsonElement block : response.getAsJsonArray("content")) {
+            JsonObject content = block.getAsJsonObject();
+            if ("text".equals(content.get("type").getAsString())) {
+                text.append(content.get("text").getAsString());
+            }
+        }
+        return text.toString();
+    }
+    
+    @Override
+    protected String parseStreamEvent(JsonObject event) throws IOException {
+        String type = event.has("type") ? event.get("type").getAsString() : "";
+        if (type.equals("error")) {
+            throw new IOException("AI request failed: " + event.get("error"));
+        }
+        if (!type.equals("content_block_delta")) {
+            // message_start, content_block_start/stop, message_delta, message_stop and ping carry no text
+            return null;
+        }
+        JsonObject delta = event.getAsJsonObject("delta");
+        JsonElement text = delta == null ? null : delta.get("text");
+        return text == null || text.isJsonNull() ? null : text.getAsString();
+    }
+}
@@ -0,0 +1,199 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Chat model provider: encodes completion requests and decodes responses and streamed events for
+ * one API.
+ *
+ * All providers share one HTTP client, so connections (HTTP/2 where the server offers it) are
+ * pooled and reused across queries; each provider derives its own timeouts from it.
+ */
+public abstract class ChatProvider {
+    
+    /** Base URL of the OpenAI-compatible API of a local Ollama server */
+    public static final String DEFAULT_LOCAL_URL = "http://localhost:11434/v1";
+    
+    static final MediaType JSON = MediaType.get("application/json");
+    static final double TEMPERATURE = 0.7;
+    
+    private static final OkHttpClient SHARED_CLIENT = new OkHttpClient.Builder()
+        .connectionPool(new ConnectionPool(8, 5, TimeUnit.MINUTES))
+        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .connectTimeout(10, TimeUnit.SECONDS)
+        .writeTimeout(30, TimeUnit.SECONDS)
+        .readTimeout(90, TimeUnit.SECONDS)
+        .build();
+    
+    protected final String model;
+    protected final Gson gson = new Gson();
+    private final OkHttpClient httpClient;
+    private final long generationTimeoutSeconds;
+    
+    /**
+     * @param connectTimeoutSeconds Time allowed to open a connection
+     * @param readTimeoutSeconds Longest pause between bytes of a response, including the wait for the first token
+     * @param generationTimeoutSeconds Time allowed for a complete answer, or for the first token of a streamed one
+     */
+    protected ChatProvider(String model, long connectTimeoutSeconds, long readTimeoutSeconds,
+                           long generationTimeoutSeconds) {
+        this.model = model;
+        this.generationTimeoutSeconds = generationTimeoutSeconds;
+        this.httpClient = SHARED_CLIENT.newBuilder()
+            .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+            .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+    
+    /**
+     * Provider for a model selection such as "gpt-4o-mini (OpenAI)", "claude-3-5-sonnet-latest (Anthropic)"
+     * or "llama3:8b (Ollama Local)"
+     *
+     * @param localUrl Base URL of the OpenAI-compatible local server used for local models
+     */
+    public static ChatProvider forModel(String modelSelection, String apiKey, String localUrl) {
+        String model = modelSelection.contains("(")
+            ? modelSelection.substring(0, modelSelection.indexOf("(")).trim()
+            : modelSelection.trim();
+        if (modelSelection.contains("Anthropic") || model.startsWith("claude")) {
+            return new AnthropicChatProvider(model, apiKey);
+        }
+        if (modelSelection.contains("Local")) {
+            return OpenAiChatProvider.local(model, apiKey, localUrl);
+        }
+        return OpenAiChatProvider.openAi(model, apiKey);
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    /**
+     * Time allowed for a complete answer, or for the first token of a streamed one. Once a stream
+     * has started, only the read timeout bounds the pauses between tokens, so long answers are not
+     * cut off.
+     */
+    public long getGenerationTimeoutSeconds() {
+        return generationTimeoutSeconds;
+    }
+    
+    /**
+     * Generate a completion
+     *
+     * @param onToken If not null, the completion is streamed and each content delta passed to it
+     * @param onCancel Receives a hook that aborts the HTTP call, e.g. when the user cancels the query
+     * @return The complete answer text
+     */
+    public String complete(String systemPrompt, String userMessage, int maxTokens,
+                           Consumer<String> onToken, Consumer<Runnable> onCancel) throws IOException {
+        Request request = buildRequest(systemPrompt, userMessage, maxTokens, onToken != null);
+        
+        // Blocking socket reads ignore interrupts, so cancelling must cancel the call itself
+        Call call = httpClient.newCall(request);
+        onCancel.accept(call::cancel);
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("AI request failed: " + response.code() + " " + response.body().string());
+            }
+            if (onToken != null) {
+                return readStream(response.body().source(), onToken);
+            }
+            return parseResponse(gson.fromJson(response.body().string(), JsonObject.class));
+        }
+    }
+    
+    /**
+     * Read a completion streamed as server-sent events, passing each content delta to the listener
+     * as soon as its event is complete
+     *
+     * @return The concatenated content
+     */
+    String readStream(BufferedSource source, Consumer<String> onToken) throws IOException {
+        StringBuilder content = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.isEmpty()) {
+                // Only data fields matter; event names, ids and comments are skipped
+                if (line.startsWith("data:")) {
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+                }
+                continue;
+            }
+            
+            // A blank line ends the event
+            if (!dispatchEvent(data, content, onToken)) {
+                return content.toString();
+            }
+        }
+        // The stream may end right after the last event, without a blank line
+        dispatchEvent(data, content, onToken);
+        return content.toString();
+    }
+    
+    /**
+     * Handle the event whose data lines were collected, then clear them
+     *
+     * @return False if the event marks the end of the stream
+     */
+    private boolean dispatchEvent(StringBuilder data, StringBuilder content, Consumer<String> onToken)
+            throws IOException {
+        String event = data.toString();
+        data.setLength(0);
+        if (event.equals("[DONE]")) {
+            return false;
+        }
+        if (!event.isEmpty()) {
+            JsonObject json;
+            try {
+                json = JsonParser.parseString(event).getAsJsonObject();
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed completion stream event: " + event, e);
+            }
+            String token = parseStreamEvent(json);
+            if (token != null && !token.isEmpty()) {
+                content.append(token);
+                onToken.accept(token);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * HTTP request for a completion
+     */
+    protected abstract Request buildRequest(String systemPrompt, String userMessage, int maxTokens, boolean stream);
+    
+    /**
+     * Answer text of a complete (non-streamed) response
+     */
+    protected abstract String parseResponse(JsonObject response) throws IOException;
+    
+    /**
+     * Content delta carried by one stream event, or null for events without content
+     */
+    protected abstract String parseStreamEvent(JsonObject event) throws IOException;
+    
+    @Override
+    public String toString() {
+        return model;
+    }
+}
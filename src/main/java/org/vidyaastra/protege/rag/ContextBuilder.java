@@ -0,0 +1,202 @@
+package org.vidyaastra.protege.rag;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Selects retrieved chunks for the prompt within a token budget.
+ *
+ * Candidates are taken in maximal marginal relevance (MMR) order: each step picks the chunk with
+ * the best trade-off between relevance to the query and similarity to the chunks already picked.
+ * A chunk nearly identical to a picked one is dropped, and one that no longer fits the remaining
+ * budget is skipped in favour of smaller ones. Similarity uses the stored vectors when the store
+ * returned them, and word overlap otherwise. Tokens are counted locally with the cl100k_base BPE
+ * vocabulary, which matches OpenAI models and approximates others.
+ */
+public class ContextBuilder {
+    
+    static final int DEFAULT_TOKEN_BUDGET = 2000;
+    static final double DEFAULT_MMR_LAMBDA = 0.7;
+    
+    /** Similarity at or above which a chunk counts as a near-duplicate of one already picked */
+    static final double DUPLICATE_SIMILARITY = 0.95;
+    
+    // Tokens of the "Result n (relevance: x):" header and separators around each chunk
+    private static final int RESULT_OVERHEAD_TOKENS = 12;
+    
+    private static final Encoding TOKENIZER =
+        Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    
+    private final int tokenBudget;
+    private final double lambda;
+    
+    /**
+     * @param tokenBudget Maximum tokens of retrieved context in the prompt
+     * @param lambda MMR weight of relevance versus novelty, between 0 (novelty only) and 1 (relevance only)
+     */
+    public ContextBuilder(int tokenBudget, double lambda) {
+        this.tokenBudget = tokenBudget;
+        this.lambda = lambda;
+    }
+    
+    public ContextBuilder() {
+        this(DEFAULT_TOKEN_BUDGET, DEFAULT_MMR_LAMBDA);
+    }
+    
+    /**
+     * Whether selection trades relevance against novelty, which compares the candidates' vectors.
+     * Without vectors, similarity falls back to word overlap.
+     */
+    public boolean needsVectors() {
+        return lambda < 1;
+    }
+    
+    public static int countTokens(String text) {
+        return TOKENIZER.countTokens(text);
+    }
+    
+    /**
+     * Pick the chunks to put in the prompt, in the order they should appear
+     */
+    public Selection select(List<VectorStore.SearchResult> candidates) {
+        int n = candidates.size();
+        int[] tokens = new int[n];
+        double[] relevance = normalizedScores(candidates);
+        List<Set<String>> words = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String text = textOf(candidates.get(i));
+            tokens[i] = countTokens(text) + RESULT_OVERHEAD_TOKENS;
+            words.add(words(text));
+        }
+        
+        // Highest similarity of each candidate to any picked chunk
+        double[] redundancy = new double[n];
+        boolean[] done = new boolean[n];
+        List<VectorStore.SearchResult> selected = new ArrayList<>();
+        int remaining = tokenBudget;
+        int duplicates = 0;
+        int overBudget = 0;
+        
+        for (int step = 0; step < n; step++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (!done[i]) {
+                    double score = lambda * relevance[i] - (1 - lambda) * redundancy[i];
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = i;
+                    }
+                }
+            }
+            done[best] = true;
+            
+            if (redundancy[best] >= DUPLICATE_SIMILARITY) {
+                duplicates++;
+                continue;
+            }
+            if (tokens[best] > remaining) {
+                overBudget++;
+                continue;
+            }
+            
+            selected.add(candidates.get(best));
+            remaining -= tokens[best];
+            for (int i = 0; i < n; i++) {
+                if (!done[i]) {
+                    redundancy[i] = Math.max(redundancy[i], similarity(candidates.get(i), words.get(i),
+                        candidates.get(best), words.get(best)));
+                }
+            }
+        }
+        
+        return new Selection(selected, n, tokenBudget - remaining, duplicates, overBudget);
+    }
+    
+    private static double[] normalizedScores(List<VectorStore.SearchResult> candidates) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (VectorStore.SearchResult candidate : candidates) {
+            min = Math.min(min, candidate.getScore());
+            max = Math.max(max, candidate.getScore());
+        }
+        double[] normalized = new double[candidates.size()];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = max > min ? (candidates.get(i).getScore() - min) / (max - min) : 1;
+        }
+        return normalized;
+    }
+    
+    private static double similarity(VectorStore.SearchResult a, Set<String> aWords,
+                                     VectorStore.SearchResult b, Set<String> bWords) {
+        if (a.getVector() != null && b.getVector() != null && a.getVector().length == b.getVector().length) {
+            return VectorMath.cosine(a.getVector(), b.getVector());
+        }
+        // Jaccard similarity of the word sets
+        if (aWords.isEmpty() && bWords.isEmpty()) {
+            return 1;
+        }
+        int shared = 0;
+        for (String word : aWords) {
+            if (bWords.contains(word)) {
+                shared++;
+            }
+        }
+        return (double) shared / (aWords.size() + bWords.size() - shared);
+    }
+    
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>(Arrays.asList(text.toLowerCase(Locale.ROOT).split("\\W+")));
+        words.remove("");
+        return words;
+    }
+    
+    private static String textOf(VectorStore.SearchResult result) {
+        Object text = result.getMetadata().get("text");
+        return text == null ? "" : text.toString();
+    }
+    
+    /**
+     * Chunks picked for the prompt and what happened to the rest
+     */
+    public static class Selection {
+        private final List<VectorStore.SearchResult> results;
+        private final int candidates;
+        private final int tokens;
+        private final int duplicates;
+        private final int overBudget;
+        
+        Selection(List<VectorStore.SearchResult> results, int candidates, int tokens, int duplicates, int overBudget) {
+            this.results = results;
+            this.candidates = candidates;
+            this.tokens = tokens;
+            this.duplicates = duplicates;
+            this.overBudget = overBudget;
+        }
+        
+        public List<VectorStore.SearchResult> getResults() {
+            return results;
+        }
+        
+        /**
+         * Estimated prompt tokens of the picked chunks
+         */
+        public int getTokens() {
+            return tokens;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d of %d chunks, %d tokens (%d near-duplicates dropped, %d over budget)",
+                results.size(), candidates, tokens, duplicates, overBudget);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.vidyaastra.protege.rag;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Similarity metrics for the local vector index. Scores are "higher is more similar" for every metric.
+ */
+public enum DistanceMetric {
+    
+    /** Cosine similarity; vectors are normalized once when stored or queried, then compared by dot product */
+    COSINE,
+    /** Raw dot product */
+    DOT,
+    /** Euclidean distance, scored as the negated squared distance */
+    L2;
+    
+    /**
+     * Similarity of two vectors already passed through {@link #prepare(float[])}
+     */
+    public float similarity(float[] a, float[] b) {
+        if (this == L2) {
+            return -VectorMath.squaredDistance(a, b);
+        }
+        return VectorMath.dot(a, b);
+    }
+    
+    /**
+     * Similarity of a prepared vector to one stored little-endian in a (memory-mapped) buffer
+     */
+    public float similarity(float[] a, ByteBuffer b, int byteOffset) {
+        if (this == L2) {
+            return -VectorMath.squaredDistance(a, b, byteOffset);
+        }
+        return VectorMath.dot(a, b, byteOffset);
+    }
+    
+    /**
+     * Vector in the form the metric compares; for cosine this is a unit-length copy
+     */
+    public float[] prepare(float[] vector) {
+        if (this != COSINE) {
+            return vector;
+        }
+        float norm = (float) Math.sqrt(VectorMath.dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = vector[i] / norm;
+            }
+        }
+        return normalized;
+    }
+}
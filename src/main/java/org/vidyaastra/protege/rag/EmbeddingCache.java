@@ -0,0 +1,296 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content-addressed embedding cache keyed by SHA-256(model name + text).
+ *
+ * Two tiers: a bounded in-memory LRU map, backed by an append-only file of float32 vectors.
+ * Each record in the file is {@code [32-byte key][int dimension][dimension x float32]}; the
+ * key-to-offset index is rebuilt by scanning a memory-mapped view of the file on open, and a
+ * torn record left by a crash is truncated away.
+ *
+ * The file is locked while the cache is open; a cache whose file is locked by another Protégé
+ * instance keeps embeddings in memory only.
+ */
+public class EmbeddingCache implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCache.class);
+    
+    private static final String DATA_FILE = "embeddings.f32";
+    private static final int KEY_BYTES = 32;
+    private static final int HEADER_BYTES = KEY_BYTES + Integer.BYTES;
+    private static final int DEFAULT_MEMORY_ENTRIES = 10_000;
+    
+    private final Path dataFile;
+    private final Map<HashCode, Long> diskIndex = new HashMap<>();
+    private final LinkedHashMap<HashCode, float[]> memory;
+    
+    // Null when the cache is memory-only
+    private FileChannel channel;
+    // End of the last complete record; appends start here
+    private long end;
+    private boolean closed;
+    private long hits;
+    private long misses;
+    
+    /**
+     * Open (or create) a cache in the given directory
+     *
+     * @param directory Directory holding the cache file
+     * @param memoryEntries Maximum number of vectors kept in the in-memory LRU tier
+     */
+    public EmbeddingCache(Path directory, int memoryEntries) throws IOException {
+        Files.createDirectories(directory);
+        this.dataFile = directory.resolve(DATA_FILE);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<HashCode, float[]> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        
+        channel = openLocked();
+        if (channel == null) {
+            logger.warn("Embedding cache at {} is in use by another process, caching in memory only", dataFile);
+            return;
+        }
+        loadIndex();
+        logger.info("Opened embedding cache at {} with {} entries", dataFile, diskIndex.size());
+    }
+    
+    /**
+     * Open the cache file and lock it, or return null if another process holds the lock
+     */
+    private FileChannel openLocked() throws IOException {
+        FileChannel opened = FileChannel.open(dataFile,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = opened.tryLock();
+            if (lock != null) {
+                return opened;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by another cache in this JVM
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        opened.close();
+        return null;
+    }
+    
+    /**
+     * Reopen the file after an interrupted read or write closed the channel. Returns false if the
+     * cache cannot use the file right now.
+     */
+    private boolean ensureOpen() {
+        if (channel == null || closed) {
+            return false;
+        }
+        if (channel.isOpen()) {
+            return true;
+        }
+        try {
+            FileChannel reopened = openLocked();
+            if (reopened == null) {
+                logger.warn("Embedding cache at {} was locked by another process, caching in memory only", dataFile);
+                channel = null;
+                diskIndex.clear();
+                return false;
+            }
+            channel = reopened;
+            // Drop a record torn by the interrupt
+            channel.truncate(end);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to reopen embedding cache", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Open the cache in the default per-user location
+     */
+    public static EmbeddingCache openDefault() throws IOException {
+        Path directory = Paths.get(System.getProperty("user.home"), ".protege", "graphrag", "embedding-cache");
+        return new EmbeddingCache(directory, DEFAULT_MEMORY_ENTRIES);
+    }
+    
+    private void loadIndex() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        
+        while (position + HEADER_BYTES <= size) {
+            int window = (int) Math.min(Integer.MAX_VALUE, size - position);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            
+            int offset = 0;
+            while (offset + HEADER_BYTES <= window) {
+                byte[] key = new byte[KEY_BYTES];
+                mapped.position(offset);
+                mapped.get(key);
+                int dimension = mapped.getInt();
+                long recordBytes = HEADER_BYTES + (long) dimension * Float.BYTES;
+                if (dimension <= 0 || offset + recordBytes > window) {
+                    break;
+                }
+                diskIndex.put(HashCode.fromBytes(key), position + offset);
+                offset += recordBytes;
+            }
+            
+            if (offset == 0) {
+                break;
+            }
+            position += offset;
+        }
+        
+        if (position < size) {
+            // Partial record from an interrupted write
+            logger.warn("Truncating {} trailing bytes from embedding cache", size - position);
+            channel.truncate(position);
+        }
+        end = position;
+    }
+    
+    /**
+     * Cache key for a model/text pair
+     */
+    static HashCode key(String model, String text) {
+        return Hashing.sha256().newHasher()
+            .putString(model, StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(text, StandardCharsets.UTF_8)
+            .hash();
+    }
+    
+    /**
+     * Look up a cached embedding, or return null on a miss
+     */
+    public synchronized float[] get(String model, String text) {
+        HashCode key = key(model, text);
+        
+        float[] embedding = memory.get(key);
+        if (embedding == null) {
+            Long offset = diskIndex.get(key);
+            if (offset != null && ensureOpen()) {
+                try {
+                    embedding = readRecord(offset);
+                    memory.put(key, embedding);
+                } catch (ClosedChannelException e) {
+                    logger.debug("Embedding cache read interrupted, treating as miss");
+                } catch (IOException e) {
+                    logger.warn("Failed to read cached embedding, treating as miss", e);
+                }
+            }
+        }
+        
+        if (embedding == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return embedding;
+    }
+    
+    /**
+     * Store an embedding in both tiers
+     */
+    public synchronized void put(String model, String text, float[] embedding) {
+        HashCode key = key(model, text);
+        memory.put(key, embedding);
+        if (diskIndex.containsKey(key) || !ensureOpen()) {
+            return;
+        }
+        
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + embedding.length * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        record.put(key.asBytes());
+        record.putInt(embedding.length);
+        record.asFloatBuffer().put(embedding);
+        record.clear();
+        
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, end + record.position());
+            }
+            diskIndex.put(key, end);
+            end += record.limit();
+        } catch (ClosedChannelException e) {
+            logger.debug("Embedding cache write interrupted, not persisted");
+        } catch (IOException e) {
+            logger.warn("Failed to persist embedding to cache", e);
+        }
+    }
+    
+    private float[] readRecord(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, offset + KEY_BYTES);
+        int dimension = header.flip().getInt();
+        
+        ByteBuffer data = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(data, offset + HEADER_BYTES);
+        data.flip();
+        
+        float[] embedding = new float[dimension];
+        data.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of embedding cache file");
+            }
+        }
+    }
+    
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    public synchronized int size() {
+        return diskIndex.size();
+    }
+    
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.force(false);
+            // Releases the lock as well
+            channel.close();
+            logger.info("Closed embedding cache ({} hits, {} misses)", hits, misses);
+        } catch (IOException e) {
+            logger.error("Error closing embedding cache", e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package org.vidyaastra.protege.rag;
+
+import okhttp3.Dispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs embedding batches concurrently with a bounded, rate-limit-aware number of requests in flight.
+ *
+ * The in-flight limit adapts with AIMD: it grows by roughly one request per window of successful
+ * responses and halves whenever the provider throttles (HTTP 429/503). Throttled batches are retried
+ * after the provider's Retry-After delay (or an exponential backoff), during which no new batches are
+ * started. {@link #submit(List)} blocks while the limit is reached, which back-pressures the producer.
+ */
+public class EmbeddingExecutor implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingExecutor.class);
+    
+    private static final int MAX_RETRIES = 6;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    
+    private final EmbeddingService embeddingService;
+    private final AdaptiveLimit limit;
+    // Retries block on the limit until a slot is free, so each waits on its own pooled thread
+    private final ExecutorService retryExecutor;
+    
+    private final AtomicLong completedBatches = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    
+    /**
+     * @param embeddingService Service whose HTTP client dispatcher carries the requests
+     * @param maxConcurrency Upper bound on batch requests in flight
+     */
+    public EmbeddingExecutor(EmbeddingService embeddingService, int maxConcurrency) {
+        this.embeddingService = embeddingService;
+        this.limit = new AdaptiveLimit(Math.max(1, maxConcurrency));
+        AtomicInteger retryThreads = new AtomicInteger();
+        this.retryExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "embedding-retry-" + retryThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // The dispatcher must not queue below our own limit, or in-flight accounting would be off
+        Dispatcher dispatcher = embeddingService.getHttpClient().dispatcher();
+        if (dispatcher.getMaxRequestsPerHost() < maxConcurrency) {
+            dispatcher.setMaxRequestsPerHost(maxConcurrency);
+        }
+        if (dispatcher.getMaxRequests() < maxConcurrency) {
+            dispatcher.setMaxRequests(maxConcurrency);
+        }
+        
+        logger.info("Initialized EmbeddingExecutor with max {} concurrent batch requests", maxConcurrency);
+    }
+    
+    /**
+     * Submit one provider-sized batch. Blocks until a request slot is free.
+     */
+    public CompletableFuture<List<float[]>> submit(List<String> batch) throws InterruptedException {
+        limit.acquire();
+        CompletableFuture<List<float[]>> result = new CompletableFuture<>();
+        dispatch(batch, result, 0);
+        return result;
+    }
+    
+    /**
+     * Embed all texts using as many concurrent batch requests as the provider allows.
+     * Texts already in the embedding cache are not sent. The returned list matches the input order.
+     */
+    public List<float[]> embedAll(List<String> texts) throws IOException, InterruptedException {
+        CompletableFuture<List<float[]>> future = embedAsync(texts);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+    
+    /**
+     * Start embedding all texts and return without waiting for the results.
+     * Blocks only while the in-flight limit is reached; cached texts are not sent.
+     */
+    public CompletableFuture<List<float[]>> embedAsync(List<String> texts) throws InterruptedException {
+        List<float[]> embeddings = embeddingService.lookupCached(texts);
+        List<Integer> missing = EmbeddingService.missingIndices(embeddings);
+        List<String> missingTexts = EmbeddingService.select(texts, missing);
+        
+        List<CompletableFuture<List<float[]>>> futures = new ArrayList<>();
+        try {
+            for (List<String> batch : embeddingService.partitionIntoBatches(missingTexts)) {
+                futures.add(submit(batch));
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+        
+        CompletableFuture<List<float[]>> result = CompletableFuture
+            .allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(ignored -> {
+                List<float[]> generated = new ArrayList<>(missingTexts.size());
+                for (CompletableFuture<List<float[]>> future : futures) {
+                    generated.addAll(future.join());
+                }
+                
+                embeddingService.storeCached(missingTexts, generated);
+                EmbeddingService.fill(embeddings, missing, generated);
+                
+                logger.debug("Embedded {} texts ({} from cache) in {} batches (limit now {}, {} throttled requests)",
+                    texts.size(), texts.size() - missingTexts.size(), futures.size(),
+                    limit.current(), throttledRequests.get());
+                return embeddings;
+            });
+        
+        // A failed or cancelled batch aborts its siblings
+        result.whenComplete((r, error) -> {
+            if (error != null) {
+                futures.forEach(f -> f.cancel(true));
+            }
+        });
+        return result;
+    }
+    
+    private void dispatch(List<String> batch, CompletableFuture<List<float[]>> result, int attempt) {
+        CompletableFuture<List<float[]>> call = embeddingService.embedBatchAsync(batch);
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        
+        call.whenComplete((embeddings, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            
+            if (cause == null) {
+                limit.onSuccess();
+                completedBatches.incrementAndGet();
+                result.complete(embeddings);
+            } else if (cause instanceof EmbeddingService.RateLimitedException && attempt < MAX_RETRIES
+                    && !result.isDone()) {
+                throttledRequests.incrementAndGet();
+                long retryAfter = ((EmbeddingService.RateLimitedException) cause).getRetryAfterMillis();
+                long delay = retryAfter >= 0
+                    ? retryAfter
+                    : Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << attempt);
+                limit.onThrottle(delay);
+                logger.warn("Embedding batch throttled, retrying in {} ms (attempt {}, limit now {})",
+                    delay, attempt + 1, limit.current());
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, retryExecutor)
+                    .execute(() -> retry(batch, result, attempt + 1));
+            } else {
+                limit.onFailure();
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+    
+    private void retry(List<String> batch, CompletableFuture<List<float[]>> result, int attempt) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return;
+        }
+        dispatch(batch, result, attempt);
+    }
+    
+    static IOException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Embedding batch failed: " + cause.getMessage(), cause);
+    }
+    
+    /**
+     * @see EmbeddingService#getModelId()
+     */
+    public String getModelId() {
+        return embeddingService.getModelId();
+    }
+    
+    /**
+     * Current adaptive limit on concurrent batch requests
+     */
+    public int getConcurrencyLimit() {
+        return limit.current();
+    }
+    
+    public long getCompletedBatches() {
+        return completedBatches.get();
+    }
+    
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+    
+    @Override
+    public void close() {
+        retryExecutor.shutdownNow();
+    }
+    
+    /**
+     * Additive-increase / multiplicative-decrease limit on concurrent requests
+     */
+    private static class AdaptiveLimit {
+        private final int max;
+        private double limit;
+        private int inFlight;
+        private long pausedUntil;
+        
+        AdaptiveLimit(int max) {
+            this.max = max;
+            this.limit = max;
+        }
+        
+        synchronized void acquire() throws InterruptedException {
+            while (true) {
+                long pause = pausedUntil - System.currentTimeMillis();
+                if (pause > 0) {
+                    wait(pause);
+                } else if (inFlight >= (int) limit) {
+                    wait();
+                } else {
+                    inFlight++;
+                    return;
+                }
+            }
+        }
+        
+        synchronized void onSuccess() {
+            inFlight--;
+            limit = Math.min(max, limit + 1.0 / limit);
+            notifyAll();
+        }
+        
+        synchronized void onFailure() {
+            inFlight--;
+            notifyAll();
+        }
+        
+        synchronized void onThrottle(long delayMillis) {
+            inFlight--;
+            limit = Math.max(1.0, limit / 2);
+            pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + delayMillis);
+            notifyAll();
+        }
+        
+        synchronized int current() {
+            return (int) limit;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package org.vidyaastra.protege.rag;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -18,18 +28,45 @@ public class EmbeddingService {
     
     private static final Logger logger = LoggerFactory.getLogger(EmbeddingService.class);
     
+    private static final String OPENAI_EMBEDDINGS_URL = "https://api.openai.com/v1/embeddings";
+    private static final String COHERE_EMBED_URL = "https://api.cohere.ai/v1/embed";
+    
     private final OkHttpClient httpClient;
     private final Gson gson;
     private final String model;
     private final String apiKey;
     private final EmbeddingProvider provider;
+    private final String openAiUrl;
+    private final String cohereUrl;
+    private final EmbeddingCache cache;
+    
+    // Dimension of the last parsed embedding; pre-sizes the next parse buffer
+    private volatile int dimensionHint;
     
     public EmbeddingService(String modelSelection, String apiKey) {
-        this.httpClient = new OkHttpClient.Builder()
+        this(modelSelection, apiKey, null);
+    }
+    
+    /**
+     * Constructor with an embedding cache consulted before any API call
+     */
+    public EmbeddingService(String modelSelection, String apiKey, EmbeddingCache cache) {
+        this(modelSelection, apiKey, new OkHttpClient.Builder()
             .connectTimeout(30, TimeUnit.SECONDS)
             .readTimeout(60, TimeUnit.SECONDS)
             .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
+            .build(), OPENAI_EMBEDDINGS_URL, COHERE_EMBED_URL, cache);
+    }
+    
+    /**
+     * Constructor with explicit HTTP client and endpoints (e.g. for a mock server)
+     */
+    EmbeddingService(String modelSelection, String apiKey, OkHttpClient httpClient,
+                     String openAiUrl, String cohereUrl, EmbeddingCache cache) {
+        this.httpClient = httpClient;
+        this.cache = cache;
+        this.openAiUrl = openAiUrl;
+        this.cohereUrl = cohereUrl;
         this.gson = new Gson();
         this.model = extractModelName(modelSelection);
         this.apiKey = apiKey;
@@ -57,81 +94,225 @@ public class EmbeddingService {
         return EmbeddingProvider.OPENAI; // default
     }
     
+    /**
+     * The HTTP client used for embedding calls; its dispatcher is shared by async batch requests
+     */
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+    
     /**
      * Generate embeddings for a text
      */
-    public List<Float> generateEmbedding(String text) throws IOException {
-        switch (provider) {
-            case OPENAI:
-                return generateOpenAIEmbedding(text);
-            case COHERE:
-                return generateCohereEmbedding(text);
-            case LOCAL:
-                return generateLocalEmbedding(text);
-            default:
-                throw new IllegalStateException("Unknown provider: " + provider);
+    public float[] generateEmbedding(String text) throws IOException {
+        float[] cached = lookupCached(Collections.singletonList(text)).get(0);
+        if (cached != null) {
+            return cached;
         }
+        
+        List<float[]> embeddings = embedBatch(Collections.singletonList(text));
+        storeCached(Collections.singletonList(text), embeddings);
+        return embeddings.get(0);
     }
     
     /**
-     * Generate embeddings for multiple texts in batch
+     * Generate embeddings for multiple texts in batch.
+     * Cached texts are served from the cache; the rest are split into provider-sized batches
+     * (by item count and an estimated token budget) and each batch is sent as a single request.
+     * The returned list matches the input order.
      */
-    public List<List<Float>> generateEmbeddings(List<String> texts) throws IOException {
-        List<List<Float>> embeddings = new ArrayList<>();
+    public List<float[]> generateEmbeddings(List<String> texts) throws IOException {
+        List<float[]> embeddings = lookupCached(texts);
+        List<Integer> missing = missingIndices(embeddings);
+        List<String> missingTexts = select(texts, missing);
         
-        // For now, process one by one
-        // TODO: Implement batch processing for providers that support it
-        for (String text : texts) {
-            embeddings.add(generateEmbedding(text));
+        List<float[]> generated = new ArrayList<>(missingTexts.size());
+        for (List<String> batch : partitionIntoBatches(missingTexts)) {
+            generated.addAll(embedBatch(batch));
         }
         
+        storeCached(missingTexts, generated);
+        fill(embeddings, missing, generated);
         return embeddings;
     }
     
-    private List<Float> generateOpenAIEmbedding(String text) throws IOException {
-        JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("input", text);
-        requestBody.addProperty("model", model);
+    /**
+     * Cached embeddings parallel to {@code texts}, with null for every miss
+     */
+    List<float[]> lookupCached(List<String> texts) {
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            embeddings.add(isCacheable() ? cache.get(model, text) : null);
+        }
+        return embeddings;
+    }
+    
+    /**
+     * Write freshly generated embeddings to the cache
+     */
+    void storeCached(List<String> texts, List<float[]> embeddings) {
+        if (!isCacheable()) {
+            return;
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            cache.put(model, texts.get(i), embeddings.get(i));
+        }
+    }
+    
+    private boolean isCacheable() {
+        // Local embeddings are placeholders and must not be persisted
+        return cache != null && provider != EmbeddingProvider.LOCAL;
+    }
+    
+    static List<Integer> missingIndices(List<float[]> embeddings) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            if (embeddings.get(i) == null) {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+    
+    static List<String> select(List<String> texts, List<Integer> indices) {
+        List<String> selected = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            selected.add(texts.get(index));
+        }
+        return selected;
+    }
+    
+    static void fill(List<float[]> embeddings, List<Integer> indices, List<float[]> values) {
+        for (int i = 0; i < indices.size(); i++) {
+            embeddings.set(indices.get(i), values.get(i));
+        }
+    }
+    
+    /**
+     * Provider and model producing the vectors, e.g. "openai:text-embedding-3-small". Vectors of
+     * different models are not comparable; the model also fixes the vector dimension, since no
+     * output dimension is requested.
+     */
+    public String getModelId() {
+        return provider.name().toLowerCase(Locale.ROOT) + ":" + model;
+    }
+    
+    /**
+     * The cache in front of this service, or null if caching is disabled
+     */
+    public EmbeddingCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * Embed one provider-sized batch with a single blocking request
+     */
+    List<float[]> embedBatch(List<String> batch) throws IOException {
+        if (provider == EmbeddingProvider.LOCAL) {
+            return generateLocalEmbeddings(batch);
+        }
         
-        Request request = new Request.Builder()
-            .url("https://api.openai.com/v1/embeddings")
-            .addHeader("Authorization", "Bearer " + apiKey)
-            .addHeader("Content-Type", "application/json")
-            .post(RequestBody.create(
-                gson.toJson(requestBody),
-                MediaType.get("application/json")
-            ))
-            .build();
+        try (Response response = httpClient.newCall(buildBatchRequest(batch)).execute()) {
+            return parseBatchResponse(response, batch.size());
+        }
+    }
+    
+    /**
+     * Embed one provider-sized batch asynchronously on the HTTP client's dispatcher.
+     * A 429 response completes the future with a {@link RateLimitedException}.
+     */
+    CompletableFuture<List<float[]>> embedBatchAsync(List<String> batch) {
+        CompletableFuture<List<float[]>> future = new CompletableFuture<>();
+        
+        if (provider == EmbeddingProvider.LOCAL) {
+            future.complete(generateLocalEmbeddings(batch));
+            return future;
+        }
         
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("OpenAI embedding request failed: " + response.code());
+        Call call = httpClient.newCall(buildBatchRequest(batch));
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
             }
             
-            JsonObject responseJson = gson.fromJson(response.body().string(), JsonObject.class);
-            var embeddingArray = responseJson
-                .getAsJsonArray("data")
-                .get(0).getAsJsonObject()
-                .getAsJsonArray("embedding");
-            
-            List<Float> embedding = new ArrayList<>();
-            for (var element : embeddingArray) {
-                embedding.add(element.getAsFloat());
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(parseBatchResponse(response, batch.size()));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
             }
-            
-            logger.debug("Generated OpenAI embedding with dimension: {}", embedding.size());
-            return embedding;
+        });
+        
+        // Cancelling the future aborts the HTTP call
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        
+        return future;
+    }
+    
+    /**
+     * Split texts into consecutive batches that respect the provider's item and token limits
+     */
+    List<List<String>> partitionIntoBatches(List<String> texts) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentTokens = 0;
+        
+        for (String text : texts) {
+            int tokens = estimateTokens(text);
+            if (!current.isEmpty()
+                    && (current.size() >= provider.maxBatchSize
+                        || currentTokens + tokens > provider.maxBatchTokens)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(text);
+            currentTokens += tokens;
+        }
+        
+        if (!current.isEmpty()) {
+            batches.add(current);
         }
+        
+        logger.debug("Split {} texts into {} embedding batches", texts.size(), batches.size());
+        return batches;
     }
     
-    private List<Float> generateCohereEmbedding(String text) throws IOException {
+    /**
+     * Rough token estimate (~4 characters per token for English text)
+     */
+    private static int estimateTokens(String text) {
+        return text.length() / 4 + 1;
+    }
+    
+    private Request buildBatchRequest(List<String> texts) {
+        JsonArray textArray = new JsonArray();
+        for (String text : texts) {
+            textArray.add(text);
+        }
+        
         JsonObject requestBody = new JsonObject();
-        requestBody.addProperty("texts", text);
-        requestBody.addProperty("model", model);
-        requestBody.addProperty("input_type", "search_document");
+        String url;
+        if (provider == EmbeddingProvider.COHERE) {
+            requestBody.add("texts", textArray);
+            requestBody.addProperty("model", model);
+            requestBody.addProperty("input_type", "search_document");
+            url = cohereUrl;
+        } else {
+            requestBody.add("input", textArray);
+            requestBody.addProperty("model", model);
+            url = openAiUrl;
+        }
         
-        Request request = new Request.Builder()
-            .url("https://api.cohere.ai/v1/embed")
+        return new Request.Builder()
+            .url(url)
             .addHeader("Authorization", "Bearer " + apiKey)
             .addHeader("Content-Type", "application/json")
             .post(RequestBody.create(
@@ -139,42 +320,196 @@ public class EmbeddingService {
                 MediaType.get("application/json")
             ))
             .build();
+    }
+    
+    private List<float[]> parseBatchResponse(Response response, int expected) throws IOException {
+        String providerName = provider == EmbeddingProvider.COHERE ? "Cohere" : "OpenAI";
         
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Cohere embedding request failed: " + response.code());
+        if (response.code() == 429 || response.code() == 503) {
+            long retryAfterMillis = parseRetryAfter(response.header("Retry-After"));
+            throw new RateLimitedException(providerName + " embedding request throttled: " + response.code(),
+                retryAfterMillis);
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException(providerName + " embedding request failed: " + response.code());
+        }
+        
+        // Stream the body straight into primitive arrays instead of building a JSON tree
+        List<float[]> embeddings;
+        try (JsonReader reader = new JsonReader(response.body().charStream())) {
+            if (provider == EmbeddingProvider.COHERE) {
+                embeddings = parseCohereEmbeddings(reader, expected);
+            } else {
+                embeddings = parseOpenAIEmbeddings(reader, expected);
             }
-            
-            JsonObject responseJson = gson.fromJson(response.body().string(), JsonObject.class);
-            var embeddingArray = responseJson
-                .getAsJsonArray("embeddings")
-                .get(0).getAsJsonArray();
-            
-            List<Float> embedding = new ArrayList<>();
-            for (var element : embeddingArray) {
-                embedding.add(element.getAsFloat());
+        }
+        
+        logger.debug("Generated {} {} embeddings in one request", embeddings.size(), providerName);
+        return embeddings;
+    }
+    
+    private List<float[]> parseOpenAIEmbeddings(JsonReader reader, int expected) throws IOException {
+        // Results carry an explicit index; place them by index to preserve input order
+        float[][] embeddings = new float[expected][];
+        int count = 0;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("data")) {
+                reader.skipValue();
+                continue;
             }
-            
-            logger.debug("Generated Cohere embedding with dimension: {}", embedding.size());
-            return embedding;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                int index = count;
+                float[] embedding = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "index":
+                            index = reader.nextInt();
+                            break;
+                        case "embedding":
+                            embedding = readFloatArray(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (index < 0 || index >= expected || embedding == null) {
+                    throw new IOException("OpenAI returned an invalid embedding at index " + index);
+                }
+                embeddings[index] = embedding;
+                count++;
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        
+        if (count != expected) {
+            throw new IOException("OpenAI returned " + count + " embeddings for " + expected + " inputs");
+        }
+        return Arrays.asList(embeddings);
+    }
+    
+    private List<float[]> parseCohereEmbeddings(JsonReader reader, int expected) throws IOException {
+        // Cohere returns embeddings in the same order as the input texts
+        List<float[]> embeddings = new ArrayList<>(expected);
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("embeddings")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                embeddings.add(readFloatArray(reader));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        
+        if (embeddings.size() != expected) {
+            throw new IOException("Cohere returned " + embeddings.size() + " embeddings for " + expected + " inputs");
         }
+        return embeddings;
     }
     
-    private List<Float> generateLocalEmbedding(String text) {
+    /**
+     * Read a JSON number array into a float[], sized by the previously seen dimension to avoid regrowth
+     */
+    private float[] readFloatArray(JsonReader reader) throws IOException {
+        float[] values = new float[Math.max(16, dimensionHint)];
+        int size = 0;
+        
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = (float) reader.nextDouble();
+        }
+        reader.endArray();
+        
+        dimensionHint = size;
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+    
+    /**
+     * Parse a Retry-After header given either as delay-seconds or as an HTTP date.
+     * Returns -1 when the header is absent or unparseable.
+     */
+    static long parseRetryAfter(String header) {
+        if (header == null || header.isEmpty()) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(header.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+            } catch (DateTimeParseException ex) {
+                return -1;
+            }
+        }
+    }
+    
+    private List<float[]> generateLocalEmbeddings(List<String> texts) {
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            embeddings.add(generateLocalEmbedding(text));
+        }
+        return embeddings;
+    }
+    
+    private float[] generateLocalEmbedding(String text) {
         // TODO: Implement local embedding using sentence-transformers or similar
         // For now, return a simple hash-based embedding as placeholder
         logger.warn("Local embedding not fully implemented, using placeholder");
         
-        List<Float> embedding = new ArrayList<>();
         // Generate 1536-dimensional placeholder
-        for (int i = 0; i < 1536; i++) {
-            embedding.add((float) Math.random());
+        float[] embedding = new float[1536];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) Math.random();
         }
         
         return embedding;
     }
     
     private enum EmbeddingProvider {
-        OPENAI, COHERE, LOCAL
+        // OpenAI accepts up to 2048 inputs per request; Cohere accepts up to 96 texts
+        OPENAI(2048, 250_000),
+        COHERE(96, 100_000),
+        LOCAL(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        
+        private final int maxBatchSize;
+        private final int maxBatchTokens;
+        
+        EmbeddingProvider(int maxBatchSize, int maxBatchTokens) {
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchTokens = maxBatchTokens;
+        }
+    }
+    
+    /**
+     * Thrown when the provider throttles a request (HTTP 429/503)
+     */
+    public static class RateLimitedException extends IOException {
+        private final long retryAfterMillis;
+        
+        public RateLimitedException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+        
+        /**
+         * Delay requested by the provider's Retry-After header, or -1 if none was given
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
     }
 }
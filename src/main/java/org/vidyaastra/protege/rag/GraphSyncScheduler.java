@@ -0,0 +1,139 @@
+package org.vidyaastra.protege.rag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs incremental Neo4j graph syncs on a background thread, either on a fixed schedule or on demand.
+ *
+ * Each run resumes from the watermark stored in {@link RagPreferences} and stores the new one only
+ * after the changed chunks were indexed, so a failed run is simply retried from the same point.
+ * Every {@value #SYNCS_PER_DELETION_CHECK}th run also removes the vectors of deleted nodes, which
+ * checks every stored node against the graph.
+ */
+public class GraphSyncScheduler implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GraphSyncScheduler.class);
+    
+    // How long close() waits for a running sync to finish
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+    static final int SYNCS_PER_DELETION_CHECK = 12;
+    
+    private final RagService ragService;
+    private final RagPreferences preferences;
+    private final String changeProperty;
+    private final ScheduledExecutorService executor;
+    
+    private ScheduledFuture<?> schedule;
+    // Only touched on the sync thread
+    private int syncsSinceDeletionCheck;
+    private volatile long lastSyncMillis;
+    private volatile Exception lastError;
+    
+    /**
+     * @param changeProperty Node/relationship property holding the last modification time in epoch millis
+     */
+    public GraphSyncScheduler(RagService ragService, RagPreferences preferences, String changeProperty) {
+        this.ragService = ragService;
+        this.preferences = preferences;
+        this.changeProperty = changeProperty;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "graph-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * (Re)start scheduled syncs every {@code intervalMinutes}; 0 or less stops them
+     */
+    public synchronized void start(int intervalMinutes) {
+        stop();
+        if (intervalMinutes > 0) {
+            schedule = executor.scheduleWithFixedDelay(this::syncQuietly,
+                intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+            logger.info("Scheduled graph sync every {} minutes", intervalMinutes);
+        }
+    }
+    
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+    
+    /**
+     * Run one sync now on the sync thread; runs never overlap with scheduled ones
+     */
+    public Future<Long> syncNow() {
+        return executor.submit(this::sync);
+    }
+    
+    private long sync() throws Exception {
+        long watermark = preferences.getNeo4jSyncWatermark();
+        try {
+            long next = ragService.syncGraphChangesToVectorStore(changeProperty, watermark);
+            preferences.setNeo4jSyncWatermark(next);
+            if (++syncsSinceDeletionCheck >= SYNCS_PER_DELETION_CHECK) {
+                int removed = ragService.removeDeletedGraphNodes();
+                syncsSinceDeletionCheck = 0;
+                logger.info("Removed {} deleted graph nodes from the vector store", removed);
+            }
+            lastSyncMillis = System.currentTimeMillis();
+            lastError = null;
+            return next;
+        } catch (Exception e) {
+            lastError = e;
+            throw e;
+        }
+    }
+    
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Keep the schedule alive; the next run retries from the same watermark
+            logger.error("Scheduled graph sync failed", e);
+        }
+    }
+    
+    /**
+     * Time of the last successful sync in epoch millis, or 0 if none
+     */
+    public long getLastSyncMillis() {
+        return lastSyncMillis;
+    }
+    
+    /**
+     * Error of the most recent sync, or null if it succeeded
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+    
+    /**
+     * Stop the schedule and wait for a running sync to finish. The sync is not interrupted, since an
+     * interrupt during a write-ahead log append would close the vector store's log file.
+     */
+    @Override
+    public void close() {
+        stop();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Graph sync still running after {} s, closing without it", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
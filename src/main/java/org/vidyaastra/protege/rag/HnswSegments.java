@@ -0,0 +1,627 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.ToNumberPolicy;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * One immutable generation of the local HNSW index, stored as three memory-mapped segment files:
+ *
+ * <ul>
+ *   <li>{@code vectors-N.seg}: fixed-stride float32 vectors, addressed by node number</li>
+ *   <li>{@code links-N.seg}: level-0 neighbour slots (fixed stride), node levels, and the upper-level slots</li>
+ *   <li>{@code payload-N.seg}: an offset table followed by one JSON record (id, content hash, payload) per node</li>
+ *   <li>{@code codes-N.seg} (optional): the trained {@link VectorQuantizer} followed by fixed-size codes per node</li>
+ * </ul>
+ *
+ * Every segment starts with a magic number and the format version. The {@code index.manifest} file names
+ * the current generation; it is replaced atomically, which makes switching generations crash-safe.
+ * Opening a generation only maps the files, so it costs the same regardless of index size.
+ */
+final class HnswSegments implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HnswSegments.class);
+    
+    static final int FORMAT_VERSION = 1;
+    static final String MANIFEST_FILE = "index.manifest";
+    
+    private static final int VECTORS_MAGIC = 0x484e5356; // "HNSV"
+    private static final int LINKS_MAGIC = 0x484e534c;   // "HNSL"
+    private static final int PAYLOAD_MAGIC = 0x484e5350; // "HNSP"
+    private static final int CODES_MAGIC = 0x484e5351;   // "HNSQ"
+    
+    private static final int VECTORS_HEADER_BYTES = 16;
+    private static final int LINKS_HEADER_BYTES = 24;
+    private static final int PAYLOAD_HEADER_BYTES = 12;
+    private static final int CODES_HEADER_BYTES = 20;
+    
+    // A single mapping is limited to 2 GB; vectors and payloads are mapped in chunks of whole records
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+    
+    private static final Gson gson = new GsonBuilder()
+        .setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE)
+        .create();
+    private static final Type PAYLOAD_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+    
+    private final FileChannel vectorChannel;
+    private final FileChannel linkChannel;
+    private final FileChannel payloadChannel;
+    private final FileChannel codeChannel;
+    
+    private final int count;
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    
+    private final ByteBuffer[] vectorChunks;
+    private final int vectorsPerChunk;
+    private final IntBuffer links;
+    private final int levelsOffset;
+    private final int upperStartOffset;
+    private final int upperOffset;
+    private final LongBuffer payloadOffsets;
+    private final ByteBuffer[] payloadChunks;
+    private final int[] payloadChunkFirstNode;
+    private final VectorQuantizer quantizer;
+    private final ByteBuffer codes;
+    
+    private HnswSegments(Path directory, long generation) throws IOException {
+        vectorChannel = FileChannel.open(vectorFile(directory, generation), StandardOpenOption.READ);
+        linkChannel = FileChannel.open(linkFile(directory, generation), StandardOpenOption.READ);
+        payloadChannel = FileChannel.open(payloadFile(directory, generation), StandardOpenOption.READ);
+        
+        ByteBuffer header = readHeader(vectorChannel, VECTORS_HEADER_BYTES, VECTORS_MAGIC);
+        count = header.getInt();
+        dimension = header.getInt();
+        
+        long vectorBytes = (long) dimension * Float.BYTES;
+        vectorsPerChunk = (int) Math.max(1, MAX_CHUNK_BYTES / Math.max(1, vectorBytes));
+        int chunks = count == 0 ? 0 : (count - 1) / vectorsPerChunk + 1;
+        vectorChunks = new ByteBuffer[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int inChunk = Math.min(vectorsPerChunk, count - c * vectorsPerChunk);
+            vectorChunks[c] = vectorChannel.map(FileChannel.MapMode.READ_ONLY,
+                    VECTORS_HEADER_BYTES + (long) c * vectorsPerChunk * vectorBytes, inChunk * vectorBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        
+        header = readHeader(linkChannel, LINKS_HEADER_BYTES, LINKS_MAGIC);
+        checkCount(header.getInt(), "links");
+        m = header.getInt();
+        maxM0 = header.getInt();
+        header.getInt(); // upper slot count
+        long linkBytes = linkChannel.size() - LINKS_HEADER_BYTES;
+        if (linkBytes > Integer.MAX_VALUE) {
+            throw new IOException("Links segment too large to map: " + linkBytes + " bytes");
+        }
+        links = linkChannel.map(FileChannel.MapMode.READ_ONLY, LINKS_HEADER_BYTES, linkBytes)
+            .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        levelsOffset = count * (maxM0 + 1);
+        upperStartOffset = levelsOffset + count;
+        upperOffset = upperStartOffset + count;
+        
+        header = readHeader(payloadChannel, PAYLOAD_HEADER_BYTES, PAYLOAD_MAGIC);
+        checkCount(header.getInt(), "payload");
+        long offsetBytes = (count + 1L) * Long.BYTES;
+        payloadOffsets = payloadChannel.map(FileChannel.MapMode.READ_ONLY, PAYLOAD_HEADER_BYTES, offsetBytes)
+            .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        long payloadDataStart = PAYLOAD_HEADER_BYTES + offsetBytes;
+        // Payloads are read from mappings rather than the channel: an interrupt during channel I/O
+        // would close it for every later search
+        List<ByteBuffer> mappedPayloads = new ArrayList<>();
+        List<Integer> firstNodes = new ArrayList<>();
+        for (int first = 0; first < count; ) {
+            long chunkStart = payloadOffsets.get(first);
+            int last = lastPayloadBoundary(first, chunkStart + MAX_CHUNK_BYTES);
+            long chunkBytes = payloadOffsets.get(last) - chunkStart;
+            if (chunkBytes > Integer.MAX_VALUE) {
+                throw new IOException("Payload record too large to map: " + chunkBytes + " bytes");
+            }
+            mappedPayloads.add(payloadChannel.map(FileChannel.MapMode.READ_ONLY, payloadDataStart + chunkStart, chunkBytes));
+            firstNodes.add(first);
+            first = last;
+        }
+        payloadChunks = mappedPayloads.toArray(new ByteBuffer[0]);
+        payloadChunkFirstNode = firstNodes.stream().mapToInt(Integer::intValue).toArray();
+        
+        Path codeFile = codeFile(directory, generation);
+        if (Files.exists(codeFile)) {
+            codeChannel = FileChannel.open(codeFile, StandardOpenOption.READ);
+            header = readHeader(codeChannel, CODES_HEADER_BYTES, CODES_MAGIC);
+            checkCount(header.getInt(), "codes");
+            int codeSize = header.getInt();
+            int quantizerBytes = header.getInt();
+            ByteBuffer quantizerBuffer = ByteBuffer.allocate(quantizerBytes);
+            while (quantizerBuffer.hasRemaining()) {
+                if (codeChannel.read(quantizerBuffer, CODES_HEADER_BYTES + quantizerBuffer.position()) < 0) {
+                    throw new IOException("Truncated codes segment");
+                }
+            }
+            quantizer = VectorQuantizer.read(new DataInputStream(new ByteArrayInputStream(quantizerBuffer.array())));
+            long codeBytes = (long) count * codeSize;
+            if (codeBytes > Integer.MAX_VALUE) {
+                throw new IOException("Codes segment too large to map: " + codeBytes + " bytes");
+            }
+            codes = codeChannel.map(FileChannel.MapMode.READ_ONLY, CODES_HEADER_BYTES + quantizerBytes, codeBytes);
+        } else {
+            codeChannel = null;
+            quantizer = null;
+            codes = null;
+        }
+    }
+    
+    /**
+     * Map the segments of a generation
+     */
+    static HnswSegments open(Path directory, long generation) throws IOException {
+        return new HnswSegments(directory, generation);
+    }
+    
+    private static ByteBuffer readHeader(FileChannel channel, int bytes, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Truncated index segment header");
+            }
+        }
+        header.flip();
+        if (header.getInt() != magic) {
+            throw new IOException("Not an index segment (bad magic number)");
+        }
+        int version = header.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format version " + version);
+        }
+        return header;
+    }
+    
+    private void checkCount(int segmentCount, String segment) throws IOException {
+        if (segmentCount != count) {
+            throw new IOException("The " + segment + " segment holds " + segmentCount + " nodes, expected " + count);
+        }
+    }
+    
+    /**
+     * The last node boundary after {@code first} whose data offset is at most {@code limit}, but at least
+     * {@code first + 1} so that a record larger than a chunk still gets a chunk of its own
+     */
+    private int lastPayloadBoundary(int first, long limit) {
+        int low = first + 1;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (payloadOffsets.get(mid) <= limit) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    int getCount() {
+        return count;
+    }
+    
+    int getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * Quantizer the codes segment was written with, or null if the generation has no codes
+     */
+    VectorQuantizer getQuantizer() {
+        return quantizer;
+    }
+    
+    /**
+     * Mapped codes, {@code quantizer.codeSize()} bytes per node, or null if the generation has no codes
+     */
+    ByteBuffer getCodes() {
+        return codes;
+    }
+    
+    /**
+     * Similarity of a prepared query to a stored vector, read straight from the mapping
+     */
+    float similarity(DistanceMetric metric, float[] query, int node) {
+        return metric.similarity(query, vectorChunks[node / vectorsPerChunk],
+            (node % vectorsPerChunk) * dimension * Float.BYTES);
+    }
+    
+    /**
+     * Copy of a stored vector
+     */
+    float[] vector(int node) {
+        FloatBuffer chunk = vectorChunks[node / vectorsPerChunk].asFloatBuffer();
+        chunk.position((node % vectorsPerChunk) * dimension);
+        float[] vector = new float[dimension];
+        chunk.get(vector);
+        return vector;
+    }
+    
+    /**
+     * Highest level the node has links on
+     */
+    int level(int node) {
+        return links.get(levelsOffset + node);
+    }
+    
+    int neighbourCount(int node, int level) {
+        return links.get(slotOffset(node, level));
+    }
+    
+    int neighbour(int node, int level, int index) {
+        return links.get(slotOffset(node, level) + 1 + index);
+    }
+    
+    /**
+     * Copy of the node's links in the in-memory layout: one count-prefixed array per level
+     */
+    int[][] copyLinks(int node) {
+        int level = level(node);
+        int[][] copy = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            int offset = slotOffset(node, l);
+            copy[l] = new int[(l == 0 ? maxM0 : m) + 1];
+            int n = links.get(offset);
+            for (int i = 0; i <= n; i++) {
+                copy[l][i] = links.get(offset + i);
+            }
+        }
+        return copy;
+    }
+    
+    private int slotOffset(int node, int level) {
+        if (level == 0) {
+            return node * (maxM0 + 1);
+        }
+        return upperOffset + (links.get(upperStartOffset + node) + level - 1) * (m + 1);
+    }
+    
+    /**
+     * Read the id, content hash and payload record of a node
+     */
+    Record record(int node) throws IOException {
+        int c = Arrays.binarySearch(payloadChunkFirstNode, node);
+        if (c < 0) {
+            c = -c - 2;
+        }
+        long start = payloadOffsets.get(node);
+        byte[] bytes = new byte[(int) (payloadOffsets.get(node + 1) - start)];
+        ByteBuffer chunk = payloadChunks[c].duplicate();
+        int position = (int) (start - payloadOffsets.get(payloadChunkFirstNode[c]));
+        chunk.position(position);
+        chunk.get(bytes);
+        JsonObject json = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), JsonObject.class);
+        Map<String, Object> payload = gson.fromJson(json.get("payload"), PAYLOAD_TYPE);
+        return new Record(json.get("id").getAsString(), json.get("hash").getAsString(), payload);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        vectorChannel.close();
+        linkChannel.close();
+        payloadChannel.close();
+        if (codeChannel != null) {
+            codeChannel.close();
+        }
+    }
+    
+    /**
+     * Node contents written into a new generation; node numbers are dense from 0
+     */
+    interface Source {
+        int count();
+        
+        float[] vector(int node);
+        
+        /**
+         * Count-prefixed neighbour arrays per level, already in the new node numbering
+         */
+        int[][] links(int node);
+        
+        Record record(int node);
+        
+        /**
+         * Quantized codes of the node; only called when writing with a quantizer
+         */
+        byte[] codes(int node);
+    }
+    
+    /**
+     * Write the segments of a new generation and force them to disk.
+     * The generation only becomes current once the manifest naming it is written.
+     *
+     * @param quantizer Quantizer the source codes were encoded with, or null to write no codes segment
+     */
+    static void write(Path directory, long generation, int dimension, int m, int maxM0,
+                      VectorQuantizer quantizer, Source source) throws IOException {
+        int count = source.count();
+        
+        try (FileChannel channel = create(vectorFile(directory, generation))) {
+            ByteBuffer buffer = ByteBuffer.allocate(VECTORS_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(VECTORS_MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(dimension).flip();
+            writeFully(channel, buffer);
+            ByteBuffer vectorBuffer = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int node = 0; node < count; node++) {
+                vectorBuffer.clear();
+                vectorBuffer.asFloatBuffer().put(source.vector(node));
+                writeFully(channel, vectorBuffer);
+            }
+            channel.force(true);
+        }
+        
+        try (FileChannel channel = create(linkFile(directory, generation))) {
+            int[] levels = new int[count];
+            int upperSlots = 0;
+            for (int node = 0; node < count; node++) {
+                levels[node] = source.links(node).length - 1;
+                upperSlots += levels[node];
+            }
+            
+            ByteBuffer buffer = ByteBuffer.allocate(LINKS_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(LINKS_MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(m).putInt(maxM0)
+                .putInt(upperSlots).flip();
+            writeFully(channel, buffer);
+            
+            IntWriter out = new IntWriter(channel);
+            for (int node = 0; node < count; node++) {
+                out.putSlot(source.links(node)[0], maxM0 + 1);
+            }
+            for (int node = 0; node < count; node++) {
+                out.put(levels[node]);
+            }
+            int slot = 0;
+            for (int node = 0; node < count; node++) {
+                out.put(slot);
+                slot += levels[node];
+            }
+            for (int node = 0; node < count; node++) {
+                int[][] nodeLinks = source.links(node);
+                for (int l = 1; l < nodeLinks.length; l++) {
+                    out.putSlot(nodeLinks[l], m + 1);
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+        
+        try (FileChannel channel = create(payloadFile(directory, generation))) {
+            ByteBuffer buffer = ByteBuffer.allocate(PAYLOAD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(PAYLOAD_MAGIC).putInt(FORMAT_VERSION).putInt(count).flip();
+            writeFully(channel, buffer);
+            
+            // Records go after the offset table, whose size is known up front
+            long dataStart = PAYLOAD_HEADER_BYTES + (count + 1L) * Long.BYTES;
+            ByteBuffer offsets = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long offset = 0;
+            for (int node = 0; node < count; node++) {
+                Record record = source.record(node);
+                JsonObject json = new JsonObject();
+                json.addProperty("id", record.id);
+                json.addProperty("hash", record.contentHash);
+                json.add("payload", gson.toJsonTree(record.payload));
+                ByteBuffer bytes = ByteBuffer.wrap(gson.toJson(json).getBytes(StandardCharsets.UTF_8));
+                
+                offsets.clear();
+                offsets.putLong(offset).flip();
+                writeFully(channel, offsets, PAYLOAD_HEADER_BYTES + (long) node * Long.BYTES);
+                writeFully(channel, bytes, dataStart + offset);
+                offset += bytes.capacity();
+            }
+            offsets.clear();
+            offsets.putLong(offset).flip();
+            writeFully(channel, offsets, PAYLOAD_HEADER_BYTES + (long) count * Long.BYTES);
+            channel.force(true);
+        }
+        
+        if (quantizer != null) {
+            try (FileChannel channel = create(codeFile(directory, generation))) {
+                ByteArrayOutputStream quantizerBytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(quantizerBytes)) {
+                    quantizer.write(out);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(CODES_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(CODES_MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(quantizer.codeSize())
+                    .putInt(quantizerBytes.size()).flip();
+                writeFully(channel, buffer);
+                writeFully(channel, ByteBuffer.wrap(quantizerBytes.toByteArray()));
+                
+                ByteBuffer codeBuffer = ByteBuffer.allocate(64 * 1024);
+                for (int node = 0; node < count; node++) {
+                    byte[] nodeCodes = source.codes(node);
+                    if (codeBuffer.remaining() < nodeCodes.length) {
+                        codeBuffer.flip();
+                        writeFully(channel, codeBuffer);
+                        codeBuffer.clear();
+                    }
+                    codeBuffer.put(nodeCodes);
+                }
+                codeBuffer.flip();
+                writeFully(channel, codeBuffer);
+                channel.force(true);
+            }
+        }
+    }
+    
+    private static FileChannel create(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+    
+    /**
+     * Read the manifest, or return null if the directory holds no index yet
+     */
+    static Properties readManifest(Path directory) throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest)) {
+            properties.load(in);
+        }
+        int version = Integer.parseInt(properties.getProperty("format.version", "0"));
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format version " + version);
+        }
+        return properties;
+    }
+    
+    /**
+     * Atomically replace the manifest: written to a temporary file, forced, then moved over the old one
+     */
+    static void writeManifest(Path directory, Properties properties) throws IOException {
+        properties.setProperty("format.version", String.valueOf(FORMAT_VERSION));
+        Path temp = directory.resolve(MANIFEST_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Local HNSW index");
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(MANIFEST_FILE),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+    }
+    
+    /**
+     * Force the directory entry changes (the manifest rename) to disk, so the generation switch
+     * survives a crash. Not every platform can open a directory for this (Windows cannot); there the
+     * rename is left to the file system.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+    
+    /**
+     * Delete segment and log files that do not belong to the given generation
+     */
+    static void deleteOtherGenerations(Path directory, long generation) throws IOException {
+        String suffix = "-" + generation + ".";
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                boolean generationFile = name.endsWith(".seg") || name.endsWith(".log");
+                if (generationFile && !name.contains(suffix)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+    
+    static Path walFile(Path directory, long generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+    
+    private static Path vectorFile(Path directory, long generation) {
+        return directory.resolve("vectors-" + generation + ".seg");
+    }
+    
+    private static Path linkFile(Path directory, long generation) {
+        return directory.resolve("links-" + generation + ".seg");
+    }
+    
+    private static Path payloadFile(Path directory, long generation) {
+        return directory.resolve("payload-" + generation + ".seg");
+    }
+    
+    private static Path codeFile(Path directory, long generation) {
+        return directory.resolve("codes-" + generation + ".seg");
+    }
+    
+    /**
+     * Id, content hash and payload of a stored node
+     */
+    static final class Record {
+        final String id;
+        final String contentHash;
+        final Map<String, Object> payload;
+        
+        Record(String id, String contentHash, Map<String, Object> payload) {
+            this.id = id;
+            this.contentHash = contentHash;
+            this.payload = payload;
+        }
+    }
+    
+    /**
+     * Buffered little-endian int writer
+     */
+    private static final class IntWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        
+        IntWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        void put(int value) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+        
+        /**
+         * Write a count-prefixed neighbour array padded to a fixed slot size
+         */
+        void putSlot(int[] neighbours, int slotSize) throws IOException {
+            for (int i = 0; i < slotSize; i++) {
+                put(i <= neighbours[0] ? neighbours[i] : 0);
+            }
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,993 @@
+package org.vidyaastra.protege.rag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process approximate nearest neighbour index (HNSW) - no server round trip, usable offline.
+ *
+ * Nodes are numbered in insertion order. Each node keeps, per level, a neighbour array whose first
+ * element is the neighbour count. Replaced or deleted points are tombstoned: they still route searches
+ * but are never returned. Searches take a read lock and may run concurrently; upserts take the write lock.
+ *
+ * A store opened on a directory is persistent. Nodes below {@code baseCount} are served straight from the
+ * memory-mapped segments of the current generation ({@link HnswSegments}); nodes added since live on the
+ * heap, and base nodes whose links change get a heap copy of their links. Every change is written to a
+ * {@link WriteAheadLog} before it is applied, and {@link #compact()} folds everything into a new generation.
+ *
+ * With quantization enabled, a {@link VectorQuantizer} is trained once enough vectors are stored. Searches
+ * then traverse the graph scoring compact codes only, and rescore the candidates with the full vectors.
+ * Inserts keep using full vectors so the graph quality does not depend on the quantization.
+ */
+public class HnswVectorStore implements VectorStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorStore.class);
+    
+    static final int DEFAULT_M = 16;
+    static final int DEFAULT_EF_CONSTRUCTION = 200;
+    static final int DEFAULT_EF_SEARCH = 64;
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    // Live vectors needed before a quantizer is trained; all of them form the training sample
+    static final int QUANTIZATION_TRAINING_SIZE = 4096;
+    // Quantized searches collect this many times the requested results before rescoring
+    private static final int RESCORE_OVERSAMPLING = 2;
+    // Visited sets kept for reuse; about the number of searches expected to run at once
+    private static final int MAX_POOLED_VISITED_SETS = 16;
+    
+    // Logged changes or dead nodes beyond which a write (or close) folds them into a new generation
+    static final long COMPACTION_LOG_BYTES = 64L * 1024 * 1024;
+    static final double COMPACTION_TOMBSTONE_RATIO = 0.3;
+    
+    private static final Comparator<Candidate> BEST_FIRST = (a, b) -> Float.compare(b.score, a.score);
+    private static final Comparator<Candidate> WORST_FIRST = (a, b) -> Float.compare(a.score, b.score);
+    
+    private final DistanceMetric metric;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private volatile int efSearch;
+    private final VectorQuantization quantization;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random(42);
+    // Pooled rather than thread-local: query stages run on short-lived virtual threads
+    private final BlockingQueue<VisitedSet> visitedSets = new ArrayBlockingQueue<>(MAX_POOLED_VISITED_SETS);
+    
+    // Persistence; all null/0 for an in-memory store
+    private final Path directory;
+    private long generation;
+    private HnswSegments base;
+    private int baseCount;
+    private WriteAheadLog wal;
+    
+    // Nodes added since the base generation, indexed by node - baseCount
+    private float[][] vectors = new float[INITIAL_CAPACITY][];
+    private int[][][] links = new int[INITIAL_CAPACITY][][];
+    private final List<HnswSegments.Record> records = new ArrayList<>();
+    // Heap copies of base node links that were changed since the base generation
+    private final Map<Integer, int[][]> baseLinkOverrides = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    // Built on first use so that opening a persisted index does not read every record
+    private Map<String, Integer> nodesById;
+    
+    private int size;
+    private int liveCount;
+    private int dimension = -1;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    
+    // Quantized codes; null until a quantizer is trained. Base codes are mapped or, if the quantizer was
+    // trained after the generation was written, on the heap; tail codes are indexed by node - baseCount.
+    private VectorQuantizer quantizer;
+    private ByteBuffer baseCodes;
+    private byte[] tailCodes;
+    private ByteBuffer tailCodeBuffer;
+    
+    /**
+     * @param metric Similarity metric
+     * @param m Links per node on the upper levels (twice as many on level 0)
+     * @param efConstruction Candidate list size while inserting; higher builds a better graph, slower
+     * @param efSearch Candidate list size while searching; higher improves recall, slower
+     */
+    public HnswVectorStore(DistanceMetric metric, int m, int efConstruction, int efSearch) {
+        this(metric, m, efConstruction, efSearch, VectorQuantization.NONE);
+    }
+    
+    /**
+     * @param quantization Compression of the vectors scored during graph traversal
+     */
+    public HnswVectorStore(DistanceMetric metric, int m, int efConstruction, int efSearch,
+                           VectorQuantization quantization) {
+        this(metric, m, efConstruction, efSearch, quantization, null);
+    }
+    
+    public HnswVectorStore() {
+        this(DistanceMetric.COSINE, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+    
+    private HnswVectorStore(DistanceMetric metric, int m, int efConstruction, int efSearch,
+                            VectorQuantization quantization, Path directory) {
+        this.metric = metric;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.quantization = quantization;
+        this.directory = directory;
+        logger.info("Initialized HNSW vector store ({}, M={}, efConstruction={}, efSearch={}, quantization={}{})",
+            metric, this.m, this.efConstruction, this.efSearch, quantization,
+            directory != null ? ", " + directory : "");
+    }
+    
+    /**
+     * Open (or create) a persistent index in a directory. An existing index keeps the metric and M it
+     * was built with; the given values only apply to a new one. A stored quantizer of a different type
+     * than {@code quantization} is discarded and a new one trained.
+     */
+    public static HnswVectorStore open(Path directory, DistanceMetric metric, int m, int efConstruction,
+                                       int efSearch, VectorQuantization quantization) throws IOException {
+        Files.createDirectories(directory);
+        Properties manifest = HnswSegments.readManifest(directory);
+        if (manifest != null) {
+            DistanceMetric storedMetric = DistanceMetric.valueOf(manifest.getProperty("metric"));
+            int storedM = Integer.parseInt(manifest.getProperty("m"));
+            if (storedMetric != metric || storedM != m) {
+                logger.warn("Index in {} was built with {} and M={}; using those instead of {} and M={}",
+                    directory, storedMetric, storedM, metric, m);
+            }
+            metric = storedMetric;
+            m = storedM;
+        }
+        
+        HnswVectorStore store = new HnswVectorStore(metric, m, efConstruction, efSearch, quantization, directory);
+        store.load(manifest);
+        return store;
+    }
+    
+    private void load(Properties manifest) throws IOException {
+        if (manifest != null) {
+            generation = Long.parseLong(manifest.getProperty("generation"));
+            entryPoint = Integer.parseInt(manifest.getProperty("entryPoint"));
+            maxLevel = Integer.parseInt(manifest.getProperty("maxLevel"));
+            base = HnswSegments.open(directory, generation);
+            baseCount = base.getCount();
+            size = baseCount;
+            liveCount = baseCount;
+            dimension = baseCount > 0 ? base.getDimension() : -1;
+            adoptBaseCodes();
+        }
+        // Leftovers of a compaction interrupted before or after its manifest switch
+        HnswSegments.deleteOtherGenerations(directory, generation);
+        
+        wal = new WriteAheadLog(HnswSegments.walFile(directory, generation));
+        int replayed = wal.replay(new WriteAheadLog.Replay() {
+            @Override
+            public void upsert(VectorData data) {
+                applyUpsert(data);
+            }
+            
+            @Override
+            public void delete(String id) {
+                applyDelete(id);
+            }
+        });
+        trainQuantizerIfReady();
+        logger.info("Opened HNSW index generation {} ({} stored vectors, {} logged changes replayed)",
+            generation, baseCount, replayed);
+    }
+    
+    /**
+     * Use the codes of the current base generation if they match the configured quantization
+     */
+    private void adoptBaseCodes() {
+        VectorQuantizer stored = base.getQuantizer();
+        if (stored != null && stored.getType() == quantization) {
+            quantizer = stored;
+            baseCodes = base.getCodes();
+            tailCodes = new byte[vectors.length * quantizer.codeSize()];
+            tailCodeBuffer = ByteBuffer.wrap(tailCodes);
+        }
+    }
+    
+    /**
+     * Train the quantizer once enough vectors are stored, and encode every node with it
+     */
+    private void trainQuantizerIfReady() {
+        if (quantization == VectorQuantization.NONE || quantizer != null || liveCount < QUANTIZATION_TRAINING_SIZE) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<float[]> sample = new ArrayList<>(liveCount);
+        for (int node = 0; node < size; node++) {
+            if (!deleted.get(node)) {
+                sample.add(vector(node));
+            }
+        }
+        quantizer = VectorQuantizer.train(quantization, metric, sample);
+        
+        int codeSize = quantizer.codeSize();
+        byte[] codes = new byte[baseCount * codeSize];
+        for (int node = 0; node < baseCount; node++) {
+            quantizer.encode(base.vector(node), codes, node * codeSize);
+        }
+        baseCodes = ByteBuffer.wrap(codes);
+        tailCodes = new byte[vectors.length * codeSize];
+        tailCodeBuffer = ByteBuffer.wrap(tailCodes);
+        for (int node = baseCount; node < size; node++) {
+            quantizer.encode(vectors[node - baseCount], tailCodes, (node - baseCount) * codeSize);
+        }
+        logger.info("Trained {} quantizer on {} vectors in {} ms ({} bytes per vector instead of {})",
+            quantization, sample.size(), System.currentTimeMillis() - start, codeSize, dimension * Float.BYTES);
+    }
+    
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+    
+    @Override
+    public void upsert(List<VectorData> vectorDataList) {
+        lock.writeLock().lock();
+        try {
+            if (wal != null) {
+                // A record that cannot be applied would fail every replay, so validate before logging
+                checkDimensions(vectorDataList);
+                wal.appendUpserts(vectorDataList);
+                wal.sync();
+            }
+            for (VectorData data : vectorDataList) {
+                applyUpsert(data);
+            }
+            trainQuantizerIfReady();
+            compactIfDue();
+            logger.debug("Added {} vectors to HNSW index ({} live)", vectorDataList.size(), liveCount);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write HNSW index log: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void checkDimensions(List<VectorData> vectorDataList) {
+        int expected = dimension;
+        for (VectorData data : vectorDataList) {
+            int length = data.getVector().length;
+            if (expected < 0) {
+                expected = length;
+            } else if (length != expected) {
+                throw new IllegalArgumentException(
+                    "Vector dimension " + length + " does not match index dimension " + expected);
+            }
+        }
+    }
+    
+    private void applyUpsert(VectorData data) {
+        float[] vector = metric.prepare(data.getVector());
+        if (dimension < 0) {
+            dimension = vector.length;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                "Vector dimension " + vector.length + " does not match index dimension " + dimension);
+        }
+        
+        Integer previous = nodesById().get(data.getId());
+        if (previous != null) {
+            deleted.set(previous);
+        } else {
+            liveCount++;
+        }
+        
+        int node = addNode(data, vector);
+        nodesById.put(data.getId(), node);
+        insert(node, vector);
+    }
+    
+    private int addNode(VectorData data, float[] vector) {
+        int index = size - baseCount;
+        if (index == vectors.length) {
+            vectors = Arrays.copyOf(vectors, index * 2);
+            links = Arrays.copyOf(links, index * 2);
+            if (quantizer != null) {
+                tailCodes = Arrays.copyOf(tailCodes, index * 2 * quantizer.codeSize());
+                tailCodeBuffer = ByteBuffer.wrap(tailCodes);
+            }
+        }
+        vectors[index] = vector;
+        if (quantizer != null) {
+            quantizer.encode(vector, tailCodes, index * quantizer.codeSize());
+        }
+        records.add(new HnswSegments.Record(data.getId(), data.getContentHash(),
+            data.getMetadata() != null ? data.getMetadata() : Collections.emptyMap()));
+        return size++;
+    }
+    
+    private void insert(int node, float[] vector) {
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        links[node - baseCount] = nodeLinks;
+        
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        
+        NodeScorer exact = other -> similarity(vector, other);
+        Candidate current = greedyDescent(exact, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> found = sortedBestFirst(searchLayer(exact, current, efConstruction, l));
+            for (Candidate neighbour : selectNeighbours(found, m)) {
+                addLink(node, neighbour.node, l);
+                addLink(neighbour.node, node, l);
+            }
+            current = found.get(0);
+        }
+        
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+    
+    /**
+     * Walk greedily from the entry point down to (but not including) {@code targetLevel}
+     */
+    private Candidate greedyDescent(NodeScorer scorer, int targetLevel) {
+        int current = entryPoint;
+        float currentScore = scorer.score(current);
+        for (int level = maxLevel; level > targetLevel; level--) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                int node = current;
+                int[] heapLinks = heapLinks(node, level);
+                int count = heapLinks != null ? heapLinks[0] : base.neighbourCount(node, level);
+                for (int i = 0; i < count; i++) {
+                    int neighbour = heapLinks != null ? heapLinks[i + 1] : base.neighbour(node, level, i);
+                    float score = scorer.score(neighbour);
+                    if (score > currentScore) {
+                        current = neighbour;
+                        currentScore = score;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return new Candidate(current, currentScore);
+    }
+    
+    /**
+     * Best-first search on one level; returns up to {@code ef} results with the worst at the head
+     */
+    private PriorityQueue<Candidate> searchLayer(NodeScorer scorer, Candidate entry, int ef, int level) {
+        VisitedSet visited = visitedSets.poll();
+        if (visited == null) {
+            visited = new VisitedSet();
+        }
+        try {
+            visited.reset(size);
+            visited.visit(entry.node);
+            
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(BEST_FIRST);
+            PriorityQueue<Candidate> results = new PriorityQueue<>(WORST_FIRST);
+            candidates.add(entry);
+            results.add(entry);
+            
+            while (!candidates.isEmpty()) {
+                Candidate closest = candidates.poll();
+                if (results.size() >= ef && closest.score < results.peek().score) {
+                    break;
+                }
+                int[] heapLinks = heapLinks(closest.node, level);
+                int count = heapLinks != null ? heapLinks[0] : base.neighbourCount(closest.node, level);
+                for (int i = 0; i < count; i++) {
+                    int neighbour = heapLinks != null ? heapLinks[i + 1] : base.neighbour(closest.node, level, i);
+                    if (!visited.visit(neighbour)) {
+                        continue;
+                    }
+                    float score = scorer.score(neighbour);
+                    if (results.size() < ef || score > results.peek().score) {
+                        Candidate candidate = new Candidate(neighbour, score);
+                        candidates.add(candidate);
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+            return results;
+        } finally {
+            // Dropped if the pool is full
+            visitedSets.offer(visited);
+        }
+    }
+    
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the base node than to any
+     * already selected neighbour, which spreads links across directions. Tops up with the closest
+     * rejected candidates if fewer than {@code max} survive.
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> bestFirst, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> rejected = new ArrayList<>();
+        for (Candidate candidate : bestFirst) {
+            if (selected.size() >= max) {
+                break;
+            }
+            boolean diverse = true;
+            float[] candidateVector = vector(candidate.node);
+            for (Candidate chosen : selected) {
+                if (similarity(candidateVector, chosen.node) > candidate.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                rejected.add(candidate);
+            }
+        }
+        for (int i = 0; i < rejected.size() && selected.size() < max; i++) {
+            selected.add(rejected.get(i));
+        }
+        return selected;
+    }
+    
+    private void addLink(int from, int to, int level) {
+        int[] neighbours = mutableLinks(from)[level];
+        int capacity = neighbours.length - 1;
+        if (neighbours[0] < capacity) {
+            neighbours[++neighbours[0]] = to;
+            return;
+        }
+        
+        // Full: re-select the best links among the existing ones plus the new one
+        float[] fromVector = vector(from);
+        List<Candidate> candidates = new ArrayList<>(capacity + 1);
+        for (int i = 1; i <= neighbours[0]; i++) {
+            candidates.add(new Candidate(neighbours[i], similarity(fromVector, neighbours[i])));
+        }
+        candidates.add(new Candidate(to, similarity(fromVector, to)));
+        candidates.sort(BEST_FIRST);
+        
+        List<Candidate> kept = selectNeighbours(candidates, capacity);
+        neighbours[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            neighbours[i + 1] = kept.get(i).node;
+        }
+    }
+    
+    private float similarity(float[] query, int node) {
+        if (node < baseCount) {
+            return base.similarity(metric, query, node);
+        }
+        return metric.similarity(query, vectors[node - baseCount]);
+    }
+    
+    private float[] vector(int node) {
+        return node < baseCount ? base.vector(node) : vectors[node - baseCount];
+    }
+    
+    /**
+     * Links of a node on a level if they are on the heap, or null if they must be read from the base segments
+     */
+    private int[] heapLinks(int node, int level) {
+        if (node >= baseCount) {
+            return links[node - baseCount][level];
+        }
+        if (baseLinkOverrides.isEmpty()) {
+            return null;
+        }
+        int[][] override = baseLinkOverrides.get(node);
+        return override != null ? override[level] : null;
+    }
+    
+    /**
+     * Heap links of a node, copying a base node's links on first modification
+     */
+    private int[][] mutableLinks(int node) {
+        if (node >= baseCount) {
+            return links[node - baseCount];
+        }
+        return baseLinkOverrides.computeIfAbsent(node, base::copyLinks);
+    }
+    
+    private int level(int node) {
+        if (node >= baseCount) {
+            return links[node - baseCount].length - 1;
+        }
+        return base.level(node);
+    }
+    
+    private HnswSegments.Record record(int node) {
+        if (node >= baseCount) {
+            return records.get(node - baseCount);
+        }
+        try {
+            return base.record(node);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read HNSW index payload: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Live node number by point id; must be called with the write lock held
+     */
+    private Map<String, Integer> nodesById() {
+        if (nodesById == null) {
+            nodesById = new HashMap<>(Math.max(16, baseCount * 2));
+            for (int node = 0; node < baseCount; node++) {
+                if (!deleted.get(node)) {
+                    nodesById.put(record(node).id, node);
+                }
+            }
+        }
+        return nodesById;
+    }
+    
+    private static List<Candidate> sortedBestFirst(PriorityQueue<Candidate> results) {
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+    
+    @Override
+    public List<SearchResult> search(float[] queryVector, int limit, boolean withVectors) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || limit <= 0) {
+                return new ArrayList<>();
+            }
+            float[] query = metric.prepare(queryVector);
+            
+            List<Candidate> found;
+            if (quantizer != null) {
+                VectorQuantizer.Scorer codeScorer = quantizer.scorer(query);
+                int codeSize = quantizer.codeSize();
+                NodeScorer approximate = node -> node < baseCount
+                    ? codeScorer.score(baseCodes, node * codeSize)
+                    : codeScorer.score(tailCodeBuffer, (node - baseCount) * codeSize);
+                Candidate entry = greedyDescent(approximate, 0);
+                int ef = Math.max(efSearch, limit * RESCORE_OVERSAMPLING);
+                found = rescore(query, searchLayer(approximate, entry, ef, 0));
+            } else {
+                Candidate entry = greedyDescent(node -> similarity(query, node), 0);
+                found = sortedBestFirst(searchLayer(node -> similarity(query, node), entry, Math.max(efSearch, limit), 0));
+            }
+            
+            List<SearchResult> results = new ArrayList<>(limit);
+            for (Candidate candidate : found) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                if (!deleted.get(candidate.node)) {
+                    results.add(toSearchResult(candidate, withVectors));
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Exact search by scanning every live vector; the ground truth for measuring recall
+     */
+    public List<SearchResult> exactSearch(float[] queryVector, int limit) {
+        lock.readLock().lock();
+        try {
+            float[] query = metric.prepare(queryVector);
+            PriorityQueue<Candidate> best = new PriorityQueue<>(WORST_FIRST);
+            for (int node = 0; node < size; node++) {
+                if (deleted.get(node)) {
+                    continue;
+                }
+                float score = similarity(query, node);
+                if (best.size() < limit || score > best.peek().score) {
+                    best.add(new Candidate(node, score));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+            
+            List<SearchResult> results = new ArrayList<>(best.size());
+            for (Candidate candidate : sortedBestFirst(best)) {
+                results.add(toSearchResult(candidate, false));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Replace approximate scores of live candidates with full-precision ones, best first
+     */
+    private List<Candidate> rescore(float[] query, Collection<Candidate> candidates) {
+        List<Candidate> rescored = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            if (!deleted.get(candidate.node)) {
+                rescored.add(new Candidate(candidate.node, similarity(query, candidate.node)));
+            }
+        }
+        rescored.sort(BEST_FIRST);
+        return rescored;
+    }
+    
+    /**
+     * Bytes per vector scored while traversing the graph: the code size once a quantizer is trained,
+     * otherwise the full float32 vector
+     */
+    public int getSearchBytesPerVector() {
+        lock.readLock().lock();
+        try {
+            if (quantizer != null) {
+                return quantizer.codeSize();
+            }
+            return Math.max(0, dimension) * Float.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private SearchResult toSearchResult(Candidate candidate, boolean withVector) {
+        HnswSegments.Record record = record(candidate.node);
+        Map<String, Object> metadata = new HashMap<>(record.payload);
+        metadata.put(SOURCE_ID_KEY, record.id);
+        return new SearchResult(candidate.score, metadata, withVector ? vector(candidate.node) : null);
+    }
+    
+    @Override
+    public Set<String> findUnchanged(Map<String, String> contentHashesById) {
+        // Write lock: the first call may build the id index
+        lock.writeLock().lock();
+        try {
+            Set<String> unchanged = new HashSet<>();
+            for (Map.Entry<String, String> entry : contentHashesById.entrySet()) {
+                Integer node = nodesById().get(entry.getKey());
+                if (node != null && entry.getValue().equals(record(node).contentHash)) {
+                    unchanged.add(entry.getKey());
+                }
+            }
+            return unchanged;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public Set<String> findSourceIds(String prefix) {
+        // Write lock: the first call may build the id index
+        lock.writeLock().lock();
+        try {
+            Set<String> ids = new HashSet<>();
+            for (String id : nodesById().keySet()) {
+                if (id.startsWith(prefix)) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void delete(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            if (wal != null) {
+                wal.appendDeletes(ids);
+                wal.sync();
+            }
+            int removed = 0;
+            for (String id : ids) {
+                if (applyDelete(id)) {
+                    removed++;
+                }
+            }
+            logger.info("Deleted {} vectors from HNSW index", removed);
+            compactIfDue();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write HNSW index log: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private boolean applyDelete(String id) {
+        Integer node = nodesById().remove(id);
+        if (node == null) {
+            return false;
+        }
+        deleted.set(node);
+        liveCount--;
+        return true;
+    }
+    
+    @Override
+    public void flush() {
+        // Upserts are applied synchronously
+    }
+    
+    /**
+     * Write all live nodes into a new generation, dropping tombstones, and start a fresh log.
+     * The switch happens when the new manifest is moved into place; a crash before that leaves the
+     * previous generation and its log intact.
+     */
+    public void compact() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int[] newNode = new int[size];
+            int[] oldNode = new int[liveCount];
+            int count = 0;
+            for (int node = 0; node < size; node++) {
+                if (deleted.get(node)) {
+                    newNode[node] = -1;
+                } else {
+                    newNode[node] = count;
+                    oldNode[count++] = node;
+                }
+            }
+            
+            // A tombstoned entry point still routes well, but it is not carried over; use the highest live node
+            int newEntryPoint = -1;
+            int newMaxLevel = -1;
+            if (entryPoint >= 0 && !deleted.get(entryPoint)) {
+                newEntryPoint = newNode[entryPoint];
+                newMaxLevel = maxLevel;
+            } else {
+                for (int node = 0; node < count; node++) {
+                    int level = level(oldNode[node]);
+                    if (level > newMaxLevel) {
+                        newEntryPoint = node;
+                        newMaxLevel = level;
+                    }
+                }
+            }
+            
+            long next = generation + 1;
+            int liveNodes = count;
+            VectorQuantizer codesQuantizer = quantizer;
+            HnswSegments.write(directory, next, Math.max(0, dimension), m, maxM0, codesQuantizer, new HnswSegments.Source() {
+                @Override
+                public int count() {
+                    return liveNodes;
+                }
+                
+                @Override
+                public float[] vector(int node) {
+                    return HnswVectorStore.this.vector(oldNode[node]);
+                }
+                
+                @Override
+                public int[][] links(int node) {
+                    return remapLinks(oldNode[node], newNode);
+                }
+                
+                @Override
+                public HnswSegments.Record record(int node) {
+                    return HnswVectorStore.this.record(oldNode[node]);
+                }
+                
+                @Override
+                public byte[] codes(int node) {
+                    int old = oldNode[node];
+                    int codeSize = codesQuantizer.codeSize();
+                    byte[] codes = new byte[codeSize];
+                    ByteBuffer source = old < baseCount ? baseCodes.duplicate() : tailCodeBuffer.duplicate();
+                    source.position((old < baseCount ? old : old - baseCount) * codeSize);
+                    source.get(codes);
+                    return codes;
+                }
+            });
+            
+            Properties manifest = new Properties();
+            manifest.setProperty("generation", String.valueOf(next));
+            manifest.setProperty("count", String.valueOf(count));
+            manifest.setProperty("dimension", String.valueOf(dimension));
+            manifest.setProperty("metric", metric.name());
+            manifest.setProperty("m", String.valueOf(m));
+            manifest.setProperty("entryPoint", String.valueOf(newEntryPoint));
+            manifest.setProperty("maxLevel", String.valueOf(newMaxLevel));
+            HnswSegments.writeManifest(directory, manifest);
+            
+            int storedDimension = count > 0 ? dimension : -1;
+            closeFiles();
+            resetNodes();
+            generation = next;
+            base = HnswSegments.open(directory, generation);
+            baseCount = count;
+            size = count;
+            liveCount = count;
+            dimension = storedDimension;
+            entryPoint = newEntryPoint;
+            maxLevel = newMaxLevel;
+            adoptBaseCodes();
+            HnswSegments.deleteOtherGenerations(directory, generation);
+            wal = new WriteAheadLog(HnswSegments.walFile(directory, generation));
+            logger.info("Compacted HNSW index into generation {} ({} vectors)", generation, count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Links of a node renumbered for compaction, with links to tombstoned nodes dropped
+     */
+    private int[][] remapLinks(int node, int[] newNode) {
+        int[][] remapped = new int[level(node) + 1][];
+        for (int l = 0; l < remapped.length; l++) {
+            int[] heapLinks = heapLinks(node, l);
+            int count = heapLinks != null ? heapLinks[0] : base.neighbourCount(node, l);
+            int[] slot = new int[(l == 0 ? maxM0 : m) + 1];
+            for (int i = 0; i < count; i++) {
+                int neighbour = newNode[heapLinks != null ? heapLinks[i + 1] : base.neighbour(node, l, i)];
+                if (neighbour >= 0) {
+                    slot[++slot[0]] = neighbour;
+                }
+            }
+            remapped[l] = slot;
+        }
+        return remapped;
+    }
+    
+    private void resetNodes() {
+        vectors = new float[INITIAL_CAPACITY][];
+        links = new int[INITIAL_CAPACITY][][];
+        records.clear();
+        baseLinkOverrides.clear();
+        deleted.clear();
+        nodesById = null;
+        base = null;
+        baseCount = 0;
+        size = 0;
+        liveCount = 0;
+        dimension = -1;
+        entryPoint = -1;
+        maxLevel = -1;
+        quantizer = null;
+        baseCodes = null;
+        tailCodes = null;
+        tailCodeBuffer = null;
+    }
+    
+    private void closeFiles() throws IOException {
+        if (wal != null) {
+            wal.close();
+            wal = null;
+        }
+        if (base != null) {
+            base.close();
+        }
+    }
+    
+    @Override
+    public CollectionStats getStats() {
+        lock.readLock().lock();
+        try {
+            return new CollectionStats(liveCount, liveCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (directory == null) {
+                resetNodes();
+            } else {
+                // Keep the old generation mapped until the empty one replaces it
+                HnswSegments previous = base;
+                resetNodes();
+                base = previous;
+                compact();
+            }
+            logger.info("Cleared HNSW index");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to clear HNSW index: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Compact once the log or the tombstones have grown past their thresholds; below them, reopening
+     * replays the log, which is cheaper than rewriting every segment
+     */
+    private void compactIfDue() throws IOException {
+        if (wal == null) {
+            return;
+        }
+        int tombstones = size - liveCount;
+        if (wal.size() > COMPACTION_LOG_BYTES || tombstones > size * COMPACTION_TOMBSTONE_RATIO) {
+            compact();
+        }
+    }
+    
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            compactIfDue();
+            closeFiles();
+            logger.info("Closed HNSW vector store ({} vectors)", liveCount);
+        } catch (IOException e) {
+            logger.error("Failed to close HNSW index in {}", directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Similarity of a fixed query to a node
+     */
+    private interface NodeScorer {
+        float score(int node);
+    }
+    
+    private static final class Candidate {
+        final int node;
+        final float score;
+        
+        Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+    
+    /**
+     * Visited marks reused across searches through a pool; bumping the epoch clears them in O(1)
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int epoch;
+        
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+        
+        /**
+         * Mark a node, returning false if it was already visited in this search
+         */
+        boolean visit(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
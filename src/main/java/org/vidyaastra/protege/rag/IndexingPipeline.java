@@ -0,0 +1,400 @@
+package org.vidyaastra.protege.rag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Staged indexing pipeline: extract -> embed -> upsert.
+ *
+ * Items whose stored content hash is unchanged are dropped before embedding, so re-indexing an
+ * unchanged source costs neither embedding calls nor upserts. The hash covers the embedding model,
+ * so after a model switch every item is re-embedded.
+ *
+ * Extraction and embedding each run on their own thread and upserts run on the calling thread;
+ * stages hand batches to the next through a bounded queue, so extraction, embedding requests
+ * and vector store upserts overlap while peak memory stays
+ * proportional to {@code batchSize * queueCapacity} rather than to the size of the source.
+ * Per-stage throughput and queue depth are collected in a {@link Report}.
+ *
+ * @param <T> Type of the source items (e.g. graph chunks)
+ */
+public class IndexingPipeline<T> {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IndexingPipeline.class);
+    
+    private final EmbeddingExecutor embeddingExecutor;
+    private final VectorStore vectorStore;
+    private final int batchSize;
+    private final int queueCapacity;
+    
+    /**
+     * @param embeddingExecutor Executor used for embedding batches
+     * @param vectorStore Target vector store
+     * @param batchSize Number of items per pipeline batch
+     * @param queueCapacity Number of batches that may wait between two stages
+     */
+    public IndexingPipeline(EmbeddingExecutor embeddingExecutor, VectorStore vectorStore,
+                            int batchSize, int queueCapacity) {
+        this.embeddingExecutor = embeddingExecutor;
+        this.vectorStore = vectorStore;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+    
+    /**
+     * Run the pipeline to completion on the given source
+     *
+     * @param source Items to index; iterated lazily on the extract thread
+     * @param textOf Text to embed for an item
+     * @param describe Builds the vector store record (id and payload, no vector yet) for an item
+     */
+    public Report run(Iterable<T> source, Function<T, String> textOf,
+                      Function<T, VectorStore.VectorData> describe)
+            throws IOException, InterruptedException {
+        
+        String modelId = embeddingExecutor.getModelId();
+        BlockingQueue<List<T>> extracted = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<EmbeddedBatch> embedded = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicLong skipped = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        
+        StageStats extractStats = new StageStats("extract", extracted);
+        StageStats embedStats = new StageStats("embed", embedded);
+        StageStats upsertStats = new StageStats("upsert", null);
+        long started = System.nanoTime();
+        
+        Thread extractor = new Thread(() -> {
+            try {
+                List<T> batch = new ArrayList<>(batchSize);
+                extractStats.begin();
+                for (T item : source) {
+                    batch.add(item);
+                    if (batch.size() == batchSize) {
+                        extractStats.end(batch.size());
+                        extracted.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                        extractStats.begin();
+                    }
+                }
+                extractStats.end(batch.size());
+                if (!batch.isEmpty()) {
+                    extracted.put(batch);
+                }
+                extracted.put(endOfStream());
+            } catch (Throwable t) {
+                fail(failure, t);
+            }
+        }, "index-extract");
+        
+        Thread embedder = new Thread(() -> {
+            try {
+                while (true) {
+                    List<T> batch = extracted.take();
+                    extractStats.sampleQueue();
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    
+                    embedStats.begin();
+                    
+                    // Skip items whose stored content hash is unchanged
+                    Map<String, String> hashes = new LinkedHashMap<>();
+                    List<VectorStore.VectorData> records = new ArrayList<>(batch.size());
+                    for (T item : batch) {
+                        // Points embedded by another model count as changed
+                        VectorStore.VectorData record = describe.apply(item).forEmbeddingModel(modelId);
+                        records.add(record);
+                        hashes.put(record.getId(), record.getContentHash());
+                    }
+                    Set<String> unchanged = vectorStore.findUnchanged(hashes);
+                    
+                    List<VectorStore.VectorData> changed = new ArrayList<>(batch.size());
+                    List<String> texts = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (!unchanged.contains(records.get(i).getId())) {
+                            changed.add(records.get(i));
+                            texts.add(textOf.apply(batch.get(i)));
+                        }
+                    }
+                    skipped.addAndGet(batch.size() - changed.size());
+                    
+                    // Blocks while the embedding executor is saturated
+                    CompletableFuture<List<float[]>> embeddings = embeddingExecutor.embedAsync(texts);
+                    embeddings.whenComplete((r, e) -> embedStats.end(batch.size()));
+                    embedded.put(new EmbeddedBatch(changed, embeddings));
+                }
+                embedded.put(EmbeddedBatch.END);
+            } catch (Throwable t) {
+                fail(failure, t);
+            }
+        }, "index-embed");
+        
+        extractor.setDaemon(true);
+        embedder.setDaemon(true);
+        extractor.start();
+        embedder.start();
+        
+        long indexed = 0;
+        EmbeddedBatch current = null;
+        boolean completed = false;
+        try {
+            // Upsert stage runs on the calling thread
+            while (failure.get() == null) {
+                EmbeddedBatch batch = embedded.poll(200, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    continue;
+                }
+                embedStats.sampleQueue();
+                if (batch == EmbeddedBatch.END) {
+                    break;
+                }
+                current = batch;
+                
+                List<float[]> embeddings;
+                try {
+                    embeddings = batch.embeddings.get();
+                } catch (ExecutionException e) {
+                    throw EmbeddingExecutor.unwrap(e.getCause());
+                }
+                
+                if (batch.records.isEmpty()) {
+                    continue;
+                }
+                
+                upsertStats.begin();
+                List<VectorStore.VectorData> vectorDataList = new ArrayList<>(batch.records.size());
+                for (int i = 0; i < batch.records.size(); i++) {
+                    vectorDataList.add(batch.records.get(i).withVector(embeddings.get(i)));
+                }
+                vectorStore.upsert(vectorDataList);
+                upsertStats.end(batch.records.size());
+                
+                indexed += batch.records.size();
+                logger.debug("Pipeline progress: {} items indexed, queues extract={} embed={}",
+                    indexed, extracted.size(), embedded.size());
+            }
+            
+            Throwable t = failure.get();
+            if (t != null) {
+                throw t instanceof IOException ? (IOException) t : EmbeddingExecutor.unwrap(t);
+            }
+            
+            // Barrier for fire-and-forget upserts still in flight
+            upsertStats.begin();
+            vectorStore.flush();
+            upsertStats.end(0);
+            completed = true;
+        } finally {
+            if (!completed) {
+                // Stop the other stages and abandon in-flight embedding requests
+                extractor.interrupt();
+                embedder.interrupt();
+                if (current != null) {
+                    current.embeddings.cancel(true);
+                }
+                EmbeddedBatch leftover;
+                while ((leftover = embedded.poll()) != null) {
+                    if (leftover.embeddings != null) {
+                        leftover.embeddings.cancel(true);
+                    }
+                }
+            }
+        }
+        
+        Report report = new Report(indexed, skipped.get(), System.nanoTime() - started,
+            extractStats, embedStats, upsertStats);
+        logger.info("Indexing pipeline finished:\n{}", report);
+        return report;
+    }
+    
+    private static void fail(AtomicReference<Throwable> failure, Throwable t) {
+        if (t instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.compareAndSet(null, t)) {
+            logger.error("Indexing pipeline stage failed", t);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> endOfStream() {
+        // An empty batch marks the end of the stream; real batches are never empty
+        return (List<T>) new ArrayList<>(0);
+    }
+    
+    /**
+     * Records to upsert together with their in-flight embeddings
+     */
+    private static class EmbeddedBatch {
+        /** Marks the end of the stream */
+        static final EmbeddedBatch END = new EmbeddedBatch(new ArrayList<>(0), null);
+        
+        private final List<VectorStore.VectorData> records;
+        private final CompletableFuture<List<float[]>> embeddings;
+        
+        EmbeddedBatch(List<VectorStore.VectorData> records, CompletableFuture<List<float[]>> embeddings) {
+            this.records = records;
+            this.embeddings = embeddings;
+        }
+    }
+    
+    /**
+     * Throughput and queue-depth counters for one pipeline stage.
+     * Busy time is the union of intervals during which the stage had at least one batch in progress,
+     * so concurrent embedding batches are not double counted.
+     */
+    public static class StageStats {
+        private final String name;
+        private final BlockingQueue<?> outputQueue;
+        private long items;
+        private long busyNanos;
+        private int inProgress;
+        private long busySince;
+        private int maxQueueDepth;
+        private long queueDepthSum;
+        private long queueSamples;
+        
+        StageStats(String name, BlockingQueue<?> outputQueue) {
+            this.name = name;
+            this.outputQueue = outputQueue;
+        }
+        
+        synchronized void begin() {
+            if (inProgress++ == 0) {
+                busySince = System.nanoTime();
+            }
+        }
+        
+        synchronized void end(int count) {
+            items += count;
+            if (--inProgress == 0) {
+                busyNanos += System.nanoTime() - busySince;
+            }
+        }
+        
+        synchronized void sampleQueue() {
+            if (outputQueue != null) {
+                int depth = outputQueue.size();
+                maxQueueDepth = Math.max(maxQueueDepth, depth);
+                queueDepthSum += depth;
+                queueSamples++;
+            }
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public synchronized long getItems() {
+            return items;
+        }
+        
+        public synchronized double getBusySeconds() {
+            return busyNanos / 1e9;
+        }
+        
+        /**
+         * Items per second of time spent working in this stage (excludes time blocked on queues)
+         */
+        public synchronized double getThroughput() {
+            return busyNanos == 0 ? 0 : items * 1e9 / busyNanos;
+        }
+        
+        public synchronized int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+        
+        public synchronized double getAverageQueueDepth() {
+            return queueSamples == 0 ? 0 : (double) queueDepthSum / queueSamples;
+        }
+        
+        @Override
+        public synchronized String toString() {
+            String queue = outputQueue == null ? "" : String.format(", output queue avg %.1f / max %d",
+                getAverageQueueDepth(), maxQueueDepth);
+            return String.format("%-8s %d items, busy %.1f s, %.1f items/s%s",
+                name, items, getBusySeconds(), getThroughput(), queue);
+        }
+    }
+    
+    /**
+     * Summary of one pipeline run
+     */
+    public static class Report {
+        private final long indexed;
+        private final long skipped;
+        private final long elapsedNanos;
+        private final Map<String, StageStats> stages = new LinkedHashMap<>();
+        
+        Report(long indexed, long skipped, long elapsedNanos, StageStats... stageStats) {
+            this.indexed = indexed;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+            for (StageStats stats : stageStats) {
+                stages.put(stats.getName(), stats);
+            }
+        }
+        
+        public long getIndexed() {
+            return indexed;
+        }
+        
+        /**
+         * Items skipped because their stored content hash was unchanged
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+        
+        public double getElapsedSeconds() {
+            return elapsedNanos / 1e9;
+        }
+        
+        public Map<String, StageStats> getStages() {
+            return stages;
+        }
+        
+        /**
+         * The stage that was busy for the largest share of the run, i.e. the likely bottleneck
+         */
+        public StageStats getBottleneck() {
+            StageStats busiest = null;
+            for (StageStats stats : stages.values()) {
+                if (stats.getItems() > 0 && (busiest == null || stats.getBusySeconds() > busiest.getBusySeconds())) {
+                    busiest = stats;
+                }
+            }
+            return busiest;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Indexed %d items (%d unchanged, skipped) in %.1f s%n",
+                indexed, skipped, getElapsedSeconds()));
+            for (StageStats stats : stages.values()) {
+                sb.append("  ").append(stats).append(System.lineSeparator());
+            }
+            StageStats bottleneck = getBottleneck();
+            if (bottleneck != null) {
+                sb.append("  Bottleneck: ").append(bottleneck.getName());
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.vidyaastra.protege.rag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory BM25 index over chunk text, used next to the vector store for hybrid retrieval.
+ *
+ * Exact identifiers such as {@code CircularFlow_001} embed poorly but are found here directly,
+ * without an embedding call. Each term's posting list is a byte array of variable-length
+ * (LEB128) integers: the document number as a delta from the previous posting, followed by
+ * the term frequency. Document numbers only grow, so re-indexing a source assigns it a new
+ * number and leaves a dead posting behind; posting lists are compacted once dead postings
+ * make up half of them.
+ */
+public class LexicalIndex {
+    
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+    
+    // Identifiers keep their underscores and digits; parts are indexed as well (see tokenize)
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}_]+");
+    private static final Pattern PART_BOUNDARY = Pattern.compile("_+|(?<=\\p{Ll})(?=\\p{Lu})|(?<=\\p{L})(?=\\p{N})");
+    
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<PostingList> postings = new ArrayList<>();
+    private final Map<String, Integer> docNumbers = new HashMap<>();
+    private final List<Doc> docs = new ArrayList<>();
+    
+    private int liveDocs;
+    private long totalLength;
+    private long livePostings;
+    private long deadPostings;
+    
+    /**
+     * Index or re-index a chunk
+     *
+     * @param id Source id of the chunk
+     * @param metadata Payload returned with search hits; its "text" field is indexed
+     */
+    public synchronized void add(String id, Map<String, Object> metadata) {
+        Map<String, Object> payload = new HashMap<>(metadata);
+        payload.put(VectorStore.SOURCE_ID_KEY, id);
+        Doc existing = live(id);
+        if (existing != null && existing.metadata.equals(payload)) {
+            return;
+        }
+        remove(id);
+        
+        Object text = metadata.get("text");
+        List<String> tokens = tokenize(text == null ? "" : text.toString());
+        Map<Integer, Integer> frequencies = new LinkedHashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(termId(token), 1, Integer::sum);
+        }
+        
+        int docNumber = docs.size();
+        int[] terms = new int[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : frequencies.entrySet()) {
+            postings.get(entry.getKey()).add(docNumber, entry.getValue());
+            terms[i++] = entry.getKey();
+        }
+        
+        docs.add(new Doc(tokens.size(), terms, payload));
+        docNumbers.put(id, docNumber);
+        liveDocs++;
+        totalLength += tokens.size();
+        livePostings += terms.length;
+    }
+    
+    public synchronized void delete(Collection<String> ids) {
+        ids.forEach(this::remove);
+    }
+    
+    private void remove(String id) {
+        Integer docNumber = docNumbers.remove(id);
+        if (docNumber == null) {
+            return;
+        }
+        Doc doc = docs.get(docNumber);
+        docs.set(docNumber, null);
+        for (int term : doc.terms) {
+            postings.get(term).documentFrequency--;
+        }
+        liveDocs--;
+        totalLength -= doc.length;
+        livePostings -= doc.terms.length;
+        deadPostings += doc.terms.length;
+        if (deadPostings > livePostings) {
+            compact();
+        }
+    }
+    
+    private Doc live(String id) {
+        Integer docNumber = docNumbers.get(id);
+        return docNumber == null ? null : docs.get(docNumber);
+    }
+    
+    /**
+     * Drop the postings of removed documents
+     */
+    private void compact() {
+        for (PostingList list : postings) {
+            PostingList compacted = new PostingList();
+            list.forEach((doc, frequency) -> {
+                if (docs.get(doc) != null) {
+                    compacted.add(doc, frequency);
+                }
+            });
+            list.replaceWith(compacted);
+        }
+        deadPostings = 0;
+    }
+    
+    /**
+     * Best BM25 matches for the query, best first; scores are not comparable to vector similarities
+     */
+    public synchronized List<VectorStore.SearchResult> search(String query, int limit) {
+        if (liveDocs == 0) {
+            return Collections.emptyList();
+        }
+        double averageLength = (double) totalLength / liveDocs;
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String token : new LinkedHashSet<>(tokenize(query))) {
+            Integer term = termIds.get(token);
+            if (term == null || postings.get(term).documentFrequency == 0) {
+                continue;
+            }
+            PostingList list = postings.get(term);
+            double idf = Math.log(1 + (liveDocs - list.documentFrequency + 0.5) / (list.documentFrequency + 0.5));
+            list.forEach((docNumber, frequency) -> {
+                Doc doc = docs.get(docNumber);
+                if (doc != null) {
+                    double norm = K1 * (1 - B + B * doc.length / averageLength);
+                    scores.merge(docNumber, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+                }
+            });
+        }
+        
+        PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            top.add(entry);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        VectorStore.SearchResult[] results = new VectorStore.SearchResult[top.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            Map.Entry<Integer, Double> entry = top.poll();
+            results[i] = new VectorStore.SearchResult(entry.getValue().floatValue(), docs.get(entry.getKey()).metadata);
+        }
+        return Arrays.asList(results);
+    }
+    
+    public synchronized int size() {
+        return liveDocs;
+    }
+    
+    public synchronized int getTermCount() {
+        return termIds.size();
+    }
+    
+    /**
+     * Encoded size of all posting lists in bytes
+     */
+    public synchronized long getPostingBytes() {
+        long bytes = 0;
+        for (PostingList list : postings) {
+            bytes += list.size;
+        }
+        return bytes;
+    }
+    
+    public synchronized void clear() {
+        termIds.clear();
+        postings.clear();
+        docNumbers.clear();
+        docs.clear();
+        liveDocs = 0;
+        totalLength = 0;
+        livePostings = 0;
+        deadPostings = 0;
+    }
+    
+    private int termId(String token) {
+        return termIds.computeIfAbsent(token, t -> {
+            postings.add(new PostingList());
+            return postings.size() - 1;
+        });
+    }
+    
+    /**
+     * Lower-cased words; an identifier like {@code CircularFlow_001} also yields its parts
+     * ("circular", "flow", "001") so that it matches a query spelling them out
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            String word = matcher.group();
+            tokens.add(word.toLowerCase(Locale.ROOT));
+            String[] parts = PART_BOUNDARY.split(word);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    if (!part.isEmpty()) {
+                        tokens.add(part.toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+    
+    private static class Doc {
+        private final int length;
+        private final int[] terms;
+        private final Map<String, Object> metadata;
+        
+        private Doc(int length, int[] terms, Map<String, Object> metadata) {
+            this.length = length;
+            this.terms = terms;
+            this.metadata = metadata;
+        }
+    }
+    
+    private interface PostingConsumer {
+        void accept(int docNumber, int frequency);
+    }
+    
+    /**
+     * Delta- and varint-encoded (document number, term frequency) pairs in ascending document order
+     */
+    private static class PostingList {
+        private byte[] data = new byte[8];
+        private int size;
+        private int lastDoc;
+        private int documentFrequency;
+        
+        void add(int docNumber, int frequency) {
+            writeVarint(docNumber - lastDoc);
+            writeVarint(frequency);
+            lastDoc = docNumber;
+            documentFrequency++;
+        }
+        
+        void forEach(PostingConsumer consumer) {
+            int position = 0;
+            int docNumber = 0;
+            while (position < size) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                int frequency = 0;
+                shift = 0;
+                do {
+                    b = data[position++];
+                    frequency |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                docNumber += delta;
+                consumer.accept(docNumber, frequency);
+            }
+        }
+        
+        void replaceWith(PostingList other) {
+            data = Arrays.copyOf(other.data, other.size);
+            size = other.size;
+            lastDoc = other.lastDoc;
+            documentFrequency = other.documentFrequency;
+        }
+        
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+}
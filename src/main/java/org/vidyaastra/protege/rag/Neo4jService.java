@@ -1,10 +1,18 @@
 package org.vidyaastra.protege.rag;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.neo4j.driver.*;
+import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.types.Node;
+import org.neo4j.driver.types.Relationship;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 /**
  * Service for Neo4j database operations
@@ -13,12 +21,56 @@ public class Neo4jService implements AutoCloseable {
     
     private static final Logger logger = LoggerFactory.getLogger(Neo4jService.class);
     
+    static final int DEFAULT_PAGE_SIZE = 500;
+    static final long DEFAULT_SCHEMA_TTL_MINUTES = 10;
+    // Nodes and relationships sampled for property keys and relationship patterns
+    private static final int SCHEMA_SAMPLE_SIZE = 10_000;
+    static final int MAX_EXPANSION_HOPS = 3;
+    // Records pulled per round trip when streaming query results (the driver's default)
+    static final int DEFAULT_FETCH_SIZE = 1000;
+    // Change property names are written into queries literally, so only plain identifiers are accepted
+    private static final Pattern PROPERTY_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    
+    // Chunk projection shared by full and incremental reads; expects the source nodes bound to n
+    private static final String GRAPH_CHUNK_PROJECTION =
+        "OPTIONAL MATCH (n)-[r]->(m) " +
+        "WITH n, [rel IN collect({type: type(r), target: m, targetLabels: labels(m)}) " +
+        "         WHERE rel.type IS NOT NULL] as relationships " +
+        "RETURN id(n) as nodeId, n, labels(n) as nodeLabels, relationships " +
+        "ORDER BY nodeId";
+    
     private final Driver driver;
     private final String database;
+    private final int fetchSize;
+    private final SessionConfig readSessionConfig;
+    private volatile long schemaTtlNanos = TimeUnit.MINUTES.toNanos(DEFAULT_SCHEMA_TTL_MINUTES);
+    private String cachedSchema;
+    private long schemaLoadedAt;
     
     public Neo4jService(String uri, String username, String password, String database) {
+        this(uri, username, password, database, new PoolSettings());
+    }
+    
+    public Neo4jService(String uri, String username, String password, String database, PoolSettings pool) {
+        this(GraphDatabase.driver(uri, AuthTokens.basic(username, password), pool.toConfig()), database,
+            pool.fetchSize);
+    }
+    
+    /**
+     * Wrap an existing driver, e.g. one connected to an embedded test harness
+     */
+    Neo4jService(Driver driver, String database) {
+        this(driver, database, DEFAULT_FETCH_SIZE);
+    }
+    
+    private Neo4jService(Driver driver, String database, int fetchSize) {
         this.database = database;
-        this.driver = GraphDatabase.driver(uri, AuthTokens.basic(username, password));
+        this.driver = driver;
+        this.fetchSize = fetchSize;
+        this.readSessionConfig = SessionConfig.builder()
+            .withDatabase(database)
+            .withDefaultAccessMode(AccessMode.READ)
+            .build();
         
         // Test connection
         try (Session session = driver.session(SessionConfig.forDatabase(database))) {
@@ -31,22 +83,68 @@ public class Neo4jService implements AutoCloseable {
     }
     
     /**
-     * Get all graph data as text representations for embedding
+     * Get all graph data as text representations for embedding.
+     * Materializes every chunk; prefer {@link #streamGraphChunks(int)} for large graphs.
      */
     public List<GraphChunk> getGraphChunks() {
         List<GraphChunk> chunks = new ArrayList<>();
+        for (GraphChunk chunk : streamGraphChunks(DEFAULT_PAGE_SIZE)) {
+            chunks.add(chunk);
+        }
         
-        try (Session session = driver.session(SessionConfig.forDatabase(database))) {
-            // Get all nodes with their properties and relationships
-            String query = 
-                "MATCH (n) " +
-                "OPTIONAL MATCH (n)-[r]->(m) " +
-                "RETURN n, labels(n) as nodeLabels, " +
-                "       collect({type: type(r), target: m, targetLabels: labels(m)}) as relationships " +
-                "LIMIT 1000";
-            
-            Result result = session.run(query);
-            
+        logger.info("Retrieved {} graph chunks from Neo4j", chunks.size());
+        return chunks;
+    }
+    
+    /**
+     * Stream all graph chunks lazily, fetching one page of nodes at a time.
+     * Pages are read with keyset pagination on the node id, so memory use is bounded by the page size
+     * and there is no cap on the number of nodes.
+     *
+     * @param pageSize Number of nodes fetched per round trip
+     */
+    public Iterable<GraphChunk> streamGraphChunks(int pageSize) {
+        return () -> new GraphChunkIterator(pageSize);
+    }
+    
+    /**
+     * Fetch one page of graph chunks for nodes with id greater than {@code afterNodeId}, in id order
+     */
+    private List<GraphChunk> fetchGraphChunkPage(long afterNodeId, int pageSize) {
+        String query =
+            "MATCH (n) WHERE id(n) > $afterId " +
+            "WITH n ORDER BY id(n) LIMIT $pageSize " +
+            GRAPH_CHUNK_PROJECTION;
+        Map<String, Object> params = new HashMap<>();
+        params.put("afterId", afterNodeId);
+        params.put("pageSize", pageSize);
+        
+        return readGraphChunks(query, params);
+    }
+    
+    /**
+     * Stream the graph chunks of the given nodes, fetching one page of nodes at a time.
+     * Nodes that no longer exist are left out.
+     */
+    public Iterable<GraphChunk> streamGraphChunks(Collection<Long> nodeIds, int pageSize) {
+        List<Long> ids = new ArrayList<>(nodeIds);
+        Collections.sort(ids);
+        return Iterables.concat(Iterables.transform(Lists.partition(ids, pageSize), this::fetchGraphChunks));
+    }
+    
+    private List<GraphChunk> fetchGraphChunks(List<Long> nodeIds) {
+        String query =
+            "UNWIND $ids AS nodeId " +
+            "MATCH (n) WHERE id(n) = nodeId " +
+            "WITH n " +
+            GRAPH_CHUNK_PROJECTION;
+        return readGraphChunks(query, Collections.singletonMap("ids", nodeIds));
+    }
+    
+    private List<GraphChunk> readGraphChunks(String query, Map<String, Object> params) {
+        return read(tx -> {
+            List<GraphChunk> page = new ArrayList<>();
+            Result result = tx.run(query, params);
             while (result.hasNext()) {
                 org.neo4j.driver.Record record = result.next();
                 Value nodeValue = record.get("n");
@@ -54,63 +152,374 @@ public class Neo4jService implements AutoCloseable {
                 List<Object> relationships = record.get("relationships").asList();
                 
                 String chunk = buildTextChunk(nodeValue, labels, relationships);
-                chunks.add(new GraphChunk(chunk, nodeValue.asMap()));
+                page.add(new GraphChunk(record.get("nodeId").asLong(), chunk, nodeValue.asMap()));
             }
-        }
-        
-        logger.info("Retrieved {} graph chunks from Neo4j", chunks.size());
-        return chunks;
+            return page;
+        });
     }
     
     /**
-     * Get graph schema
+     * Find nodes whose chunk text may have changed since a watermark.
+     *
+     * A node counts as changed when its own change property, or that of a relationship it takes
+     * part in, is at or after the watermark. The change property must hold epoch milliseconds.
+     * Because a chunk renders its outgoing relationships and their targets, the 1-hop
+     * neighbourhood of every changed node is included as well.
+     *
+     * Changes stamped with the watermark itself are returned again by the next call, so a write
+     * committed later within the same millisecond is not missed; re-reading them is cheap since
+     * unchanged chunks are skipped by their content hash.
+     *
+     * Deletions leave no change property behind and are not returned: deleted nodes have to be
+     * found with {@link #findExistingNodeIds(Collection)}, and a deleted relationship is only
+     * picked up once the change property of one of its former endpoints is touched (or by a
+     * full index).
+     *
+     * The query matches each label and relationship type with the property written literally, so a
+     * range index on {@code (:Label).changeProperty} or {@code [:TYPE].changeProperty} serves it;
+     * changes of nodes without any label are only picked up by a full index.
+     *
+     * @param changeProperty Node/relationship property holding the last modification time (e.g. updatedAt)
+     * @param sinceWatermark Only changes at or after this value are returned
+     * @throws IllegalArgumentException If the property name is not a plain identifier
      */
-    public String getGraphSchema() {
-        StringBuilder schema = new StringBuilder();
+    public GraphChangeSet findChangedNodes(String changeProperty, long sinceWatermark) {
+        String property = quotePropertyName(changeProperty);
+        String neighbourQuery =
+            "UNWIND $ids AS nodeId " +
+            "MATCH (n)--(m) WHERE id(n) = nodeId " +
+            "RETURN DISTINCT id(m) AS nodeId";
         
-        try (Session session = driver.session(SessionConfig.forDatabase(database))) {
-            // Get node labels
-            Result labelResult = session.run("CALL db.labels()");
-            schema.append("Node Labels:\n");
-            while (labelResult.hasNext()) {
-                schema.append("  - ").append(labelResult.next().get(0).asString()).append("\n");
+        return read(tx -> {
+            List<String> parts = new ArrayList<>();
+            for (String label : tx.run("CALL db.labels() YIELD label RETURN label").list(r -> r.get("label").asString())) {
+                parts.add("MATCH (n:" + quoteName(label) + ") WHERE n." + property + " >= $since " +
+                    "RETURN id(n) AS nodeId, n." + property + " AS changedAt");
+            }
+            for (String type : tx.run("CALL db.relationshipTypes() YIELD relationshipType RETURN relationshipType")
+                    .list(r -> r.get("relationshipType").asString())) {
+                parts.add("MATCH (a)-[r:" + quoteName(type) + "]->(b) WHERE r." + property + " >= $since " +
+                    "UNWIND [id(a), id(b)] AS nodeId RETURN nodeId, r." + property + " AS changedAt");
             }
             
-            // Get relationship types
-            Result relResult = session.run("CALL db.relationshipTypes()");
-            schema.append("\nRelationship Types:\n");
-            while (relResult.hasNext()) {
-                schema.append("  - ").append(relResult.next().get(0).asString()).append("\n");
+            Set<Long> changed = new HashSet<>();
+            long watermark = sinceWatermark;
+            Result result = parts.isEmpty() ? null
+                : tx.run(String.join(" UNION ALL ", parts), Collections.singletonMap("since", sinceWatermark));
+            while (result != null && result.hasNext()) {
+                org.neo4j.driver.Record record = result.next();
+                changed.add(record.get("nodeId").asLong());
+                watermark = Math.max(watermark, record.get("changedAt").asNumber().longValue());
             }
+            
+            Set<Long> affected = new HashSet<>(changed);
+            if (!changed.isEmpty()) {
+                Result neighbours = tx.run(neighbourQuery, Collections.singletonMap("ids", new ArrayList<>(changed)));
+                while (neighbours.hasNext()) {
+                    affected.add(neighbours.next().get("nodeId").asLong());
+                }
+            }
+            
+            logger.info("Found {} changed nodes ({} with neighbours) since watermark {}",
+                changed.size(), affected.size(), sinceWatermark);
+            return new GraphChangeSet(changed.size(), affected, watermark);
+        });
+    }
+    
+    /**
+     * Those of the given node ids that still exist in the graph
+     */
+    public Set<Long> findExistingNodeIds(Collection<Long> nodeIds) {
+        String query =
+            "UNWIND $ids AS nodeId " +
+            "MATCH (n) WHERE id(n) = nodeId " +
+            "RETURN id(n) AS nodeId";
+        Set<Long> existing = new HashSet<>();
+        for (List<Long> page : Lists.partition(new ArrayList<>(nodeIds), DEFAULT_FETCH_SIZE)) {
+            existing.addAll(read(tx -> tx.run(query, Collections.singletonMap("ids", page))
+                .list(record -> record.get("nodeId").asLong())));
+        }
+        return existing;
+    }
+    
+    /**
+     * Fetch the neighbourhood of the given nodes, up to {@code hops} relationships away in either
+     * direction, in a single round trip.
+     *
+     * The query expands breadth-first from all seeds at once, one hop per step, so nearer nodes
+     * are kept first and expansion stops once the node budget is reached; it never enumerates
+     * paths. Relationships among the kept nodes are returned with them.
+     *
+     * @param seedIds Node ids to expand from, most relevant first; they count against the budget
+     * @param hops Relationship distance to expand to, between 1 and {@value #MAX_EXPANSION_HOPS}
+     * @param nodeBudget Maximum number of nodes in the subgraph
+     */
+    public Subgraph expandNeighbourhood(List<Long> seedIds, int hops, int nodeBudget) {
+        if (hops < 1 || hops > MAX_EXPANSION_HOPS) {
+            throw new IllegalArgumentException("Expansion hops must be between 1 and " + MAX_EXPANSION_HOPS + ": " + hops);
         }
         
-        return schema.toString();
+        // Variable-length patterns cannot be parameterized, so the query repeats one hop per step
+        StringBuilder query = new StringBuilder(
+            "UNWIND $ids AS seedId " +
+            "MATCH (s) WHERE id(s) = seedId " +
+            "WITH collect(s)[..$budget] AS visited " +
+            "WITH visited, visited AS frontier ");
+        for (int hop = 0; hop < hops; hop++) {
+            query.append(
+                "UNWIND CASE WHEN size(frontier) = 0 THEN [null] ELSE frontier END AS a " +
+                "OPTIONAL MATCH (a)--(b) WHERE NOT b IN visited " +
+                "WITH visited, collect(DISTINCT b)[..($budget - size(visited))] AS reached " +
+                "WITH visited + reached AS visited, reached AS frontier ");
+        }
+        query.append(
+            "UNWIND visited AS a " +
+            "OPTIONAL MATCH (a)-[r]->(b) WHERE b IN visited " +
+            "RETURN visited AS nodes, collect(DISTINCT r)[..$relationshipBudget] AS relationships");
+        
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", seedIds);
+        params.put("budget", nodeBudget);
+        params.put("relationshipBudget", nodeBudget * Subgraph.RELATIONSHIPS_PER_NODE);
+        
+        return read(tx -> {
+            Result result = tx.run(query.toString(), params);
+            if (!result.hasNext()) {
+                return new Subgraph(hops, Collections.emptyList(), Collections.emptyList());
+            }
+            org.neo4j.driver.Record record = result.single();
+            return new Subgraph(hops,
+                record.get("nodes").asList(Value::asNode),
+                record.get("relationships").asList(Value::asRelationship));
+        });
     }
     
     /**
-     * Execute a Cypher query
+     * Highest change property value in the graph, or 0 if none is set.
+     * Read before a full index so a later incremental sync resumes from there.
      */
-    public List<Map<String, Object>> executeQuery(String cypherQuery) {
-        List<Map<String, Object>> results = new ArrayList<>();
+    public long getChangeWatermark(String changeProperty) {
+        String property = quotePropertyName(changeProperty);
+        String query =
+            "MATCH (n) WHERE n." + property + " IS NOT NULL " +
+            "RETURN max(n." + property + ") AS watermark";
+        return read(tx -> {
+            Value watermark = tx.run(query).single().get("watermark");
+            return watermark.isNull() ? 0L : watermark.asNumber().longValue();
+        });
+    }
+    
+    /**
+     * Graph schema for the prompt: labels with their property keys, relationship types, and
+     * label-to-label relationship patterns. Served from a cache that expires after the schema TTL
+     * and is dropped by {@link #invalidateGraphSchema()}.
+     */
+    public synchronized String getGraphSchema() {
+        long now = System.nanoTime();
+        if (cachedSchema == null || now - schemaLoadedAt > schemaTtlNanos) {
+            cachedSchema = loadGraphSchema();
+            schemaLoadedAt = now;
+        }
+        return cachedSchema;
+    }
+    
+    /**
+     * Drop the cached schema, e.g. after the graph was (re-)indexed
+     */
+    public synchronized void invalidateGraphSchema() {
+        cachedSchema = null;
+    }
+    
+    /**
+     * Set how long a loaded schema is reused; 0 reloads it on every call
+     */
+    public void setSchemaTtl(long ttl, TimeUnit unit) {
+        schemaTtlNanos = unit.toNanos(ttl);
+    }
+    
+    private String loadGraphSchema() {
+        // Property keys and patterns come from a sample of nodes/relationships, which avoids both a
+        // full scan and a dependency on apoc.meta
+        String propertyQuery =
+            "MATCH (n) WITH n LIMIT $sample " +
+            "UNWIND labels(n) AS label UNWIND keys(n) AS key " +
+            "RETURN label, collect(DISTINCT key) AS keys";
+        String patternQuery =
+            "MATCH (a)-[r]->(b) WITH a, r, b LIMIT $sample " +
+            "UNWIND labels(a) AS fromLabel UNWIND labels(b) AS toLabel " +
+            "RETURN DISTINCT fromLabel, type(r) AS type, toLabel " +
+            "ORDER BY fromLabel, type, toLabel";
+        Map<String, Object> params = Collections.singletonMap("sample", SCHEMA_SAMPLE_SIZE);
         
-        try (Session session = driver.session(SessionConfig.forDatabase(database))) {
-            Result result = session.run(cypherQuery);
+        String schema = read(tx -> {
+            Map<String, List<Object>> keysByLabel = new TreeMap<>();
+            tx.run("CALL db.labels()").forEachRemaining(record ->
+                keysByLabel.put(record.get(0).asString(), Collections.emptyList()));
+            tx.run(propertyQuery, params).forEachRemaining(record -> {
+                List<Object> keys = new ArrayList<>(record.get("keys").asList());
+                keys.sort(Comparator.comparing(Object::toString));
+                keysByLabel.put(record.get("label").asString(), keys);
+            });
             
-            while (result.hasNext()) {
-                org.neo4j.driver.Record record = result.next();
-                Map<String, Object> row = new HashMap<>();
-                for (String key : record.keys()) {
-                    row.put(key, record.get(key).asObject());
+            StringBuilder text = new StringBuilder("Node Labels:\n");
+            keysByLabel.forEach((label, keys) -> {
+                text.append("  - ").append(label);
+                if (!keys.isEmpty()) {
+                    text.append(" ").append(keys);
                 }
-                results.add(row);
-            }
+                text.append("\n");
+            });
+            
+            text.append("\nRelationship Types:\n");
+            tx.run("CALL db.relationshipTypes()").forEachRemaining(record ->
+                text.append("  - ").append(record.get(0).asString()).append("\n"));
+            
+            text.append("\nRelationship Patterns:\n");
+            tx.run(patternQuery, params).forEachRemaining(record ->
+                text.append("  - (:").append(record.get("fromLabel").asString())
+                    .append(")-[:").append(record.get("type").asString())
+                    .append("]->(:").append(record.get("toLabel").asString()).append(")\n"));
+            return text.toString();
+        });
+        logger.info("Loaded graph schema ({} characters)", schema.length());
+        return schema;
+    }
+    
+    /**
+     * Execute a Cypher query without parameters
+     *
+     * @see #executeQuery(String, Map)
+     */
+    public List<Map<String, Object>> executeQuery(String cypherQuery) {
+        return executeQuery(cypherQuery, Collections.emptyMap());
+    }
+    
+    /**
+     * Execute a Cypher query that may write, and collect all rows.
+     *
+     * The query runs in a write transaction, which a cluster routes to the leader; use
+     * {@link #executeReadQuery(String, Map)} for queries that only read. The driver retries the
+     * transaction on transient errors, so the query must be safe to run more than once.
+     */
+    public List<Map<String, Object>> executeQuery(String cypherQuery, Map<String, Object> parameters) {
+        List<Map<String, Object>> results;
+        try (Session session = driver.session(querySessionConfig(AccessMode.WRITE, fetchSize))) {
+            results = session.writeTransaction(
+                tx -> tx.run(cypherQuery, parameters).list(org.neo4j.driver.Record::asMap));
         }
-        
         logger.info("Query returned {} results", results.size());
         return results;
     }
     
-    private String buildTextChunk(Value node, List<Object> labels, List<Object> relationships) {
+    /**
+     * Execute a read-only Cypher query without parameters
+     *
+     * @see #executeReadQuery(String, Map)
+     */
+    public List<Map<String, Object>> executeReadQuery(String cypherQuery) {
+        return executeReadQuery(cypherQuery, Collections.emptyMap());
+    }
+    
+    /**
+     * Execute a read-only Cypher query and collect all rows.
+     *
+     * Values are passed as parameters ({@code $name} in the query) rather than concatenated into
+     * it, so the server can reuse the cached plan of the query text. The query runs in a read
+     * transaction, which a cluster routes to a follower; write queries fail.
+     * Each attempt of the transaction collects its own rows, so a retry does not duplicate them.
+     * Prefer {@link #streamQuery(String, Map, int, Consumer)} for large results.
+     */
+    public List<Map<String, Object>> executeReadQuery(String cypherQuery, Map<String, Object> parameters) {
+        List<Map<String, Object>> results = read(querySessionConfig(AccessMode.READ, fetchSize),
+            tx -> tx.run(cypherQuery, parameters).list(org.neo4j.driver.Record::asMap));
+        logger.info("Query returned {} results", results.size());
+        return results;
+    }
+    
+    /**
+     * Execute a read-only Cypher query, passing each row to a callback as it is received.
+     *
+     * Rows are pulled from the server in batches of {@code fetchSize}, so only one batch is held
+     * in memory and a slow callback throttles the server rather than buffering the result. If the
+     * read transaction is retried after a transient failure, rows already seen are delivered again.
+     *
+     * @param fetchSize Rows pulled per round trip; -1 pulls everything at once
+     * @param onRow Receives each row as a column name to value map
+     * @return Number of rows delivered in the successful attempt
+     */
+    public long streamQuery(String cypherQuery, Map<String, Object> parameters, int fetchSize,
+                            Consumer<Map<String, Object>> onRow) {
+        long rows = read(querySessionConfig(AccessMode.READ, fetchSize), tx -> {
+            long count = 0;
+            Result result = tx.run(cypherQuery, parameters);
+            while (result.hasNext()) {
+                onRow.accept(result.next().asMap());
+                count++;
+            }
+            return count;
+        });
+        logger.info("Query returned {} results", rows);
+        return rows;
+    }
+    
+    /**
+     * Quote a change property name for use as a literal in a query
+     *
+     * @throws IllegalArgumentException If the name is not a plain identifier
+     */
+    private static String quotePropertyName(String property) {
+        if (property == null || !PROPERTY_NAME.matcher(property).matches()) {
+            throw new IllegalArgumentException("Change property must be a plain identifier: " + property);
+        }
+        return quoteName(property);
+    }
+    
+    /**
+     * Quote a label, relationship type or property name read from the database
+     */
+    private static String quoteName(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+    
+    private SessionConfig querySessionConfig(AccessMode mode, int fetchSize) {
+        return SessionConfig.builder()
+            .withDatabase(database)
+            .withDefaultAccessMode(mode)
+            .withFetchSize(fetchSize)
+            .build();
+    }
+    
+    /**
+     * Run a unit of work in a read transaction on a pooled connection.
+     *
+     * Sessions are cheap and not thread-safe, so each call opens one; the connection behind it
+     * comes from the driver's pool. The driver retries the work on transient errors (leader
+     * changes, deadlocks, unavailable servers) with backoff until the max transaction retry time,
+     * so the work must be safe to run more than once.
+     */
+    <T> T read(TransactionWork<T> work) {
+        return read(readSessionConfig, work);
+    }
+    
+    private <T> T read(SessionConfig config, TransactionWork<T> work) {
+        try (Session session = driver.session(config)) {
+            return session.readTransaction(work);
+        }
+    }
+    
+    /**
+     * Metrics of each connection pool (one per server), or an empty list if the driver was
+     * created without metrics
+     */
+    public Collection<ConnectionPoolMetrics> getConnectionPoolMetrics() {
+        try {
+            return driver.metrics().connectionPoolMetrics();
+        } catch (ClientException e) {
+            return Collections.emptyList();
+        }
+    }
+    
+    static String buildTextChunk(Value node, List<Object> labels, List<Object> relationships) {
         StringBuilder chunk = new StringBuilder();
         
         // Add node description
@@ -118,7 +527,7 @@ public class Neo4jService implements AutoCloseable {
         chunk.append("Properties: ").append(node.asMap()).append("\n");
         
         // Add relationships
-        if (!relationships.isEmpty() && relationships.get(0) instanceof Map) {
+        if (!relationships.isEmpty()) {
             chunk.append("Relationships:\n");
             for (Object rel : relationships) {
                 if (rel instanceof Map) {
@@ -141,18 +550,218 @@ public class Neo4jService implements AutoCloseable {
         }
     }
     
+    /**
+     * Iterates graph chunks page by page; only the current page is held in memory
+     */
+    private class GraphChunkIterator implements Iterator<GraphChunk> {
+        private final int pageSize;
+        private Iterator<GraphChunk> page = Collections.emptyIterator();
+        private long lastNodeId = -1;
+        private boolean exhausted;
+        private int total;
+        
+        GraphChunkIterator(int pageSize) {
+            this.pageSize = pageSize;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !exhausted) {
+                List<GraphChunk> next = fetchGraphChunkPage(lastNodeId, pageSize);
+                if (next.size() < pageSize) {
+                    exhausted = true;
+                }
+                if (!next.isEmpty()) {
+                    lastNodeId = next.get(next.size() - 1).getNodeId();
+                    total += next.size();
+                    logger.debug("Fetched page of {} graph chunks ({} so far)", next.size(), total);
+                }
+                page = next.iterator();
+            }
+            return page.hasNext();
+        }
+        
+        @Override
+        public GraphChunk next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
+    
+    /**
+     * Nodes to re-index after a change query, and the watermark to resume from next time
+     */
+    public static class GraphChangeSet {
+        private final int changedCount;
+        private final Set<Long> nodeIds;
+        private final long watermark;
+        
+        public GraphChangeSet(int changedCount, Set<Long> nodeIds, long watermark) {
+            this.changedCount = changedCount;
+            this.nodeIds = nodeIds;
+            this.watermark = watermark;
+        }
+        
+        /**
+         * Number of nodes changed directly, excluding neighbours
+         */
+        public int getChangedCount() {
+            return changedCount;
+        }
+        
+        /**
+         * Changed nodes plus their 1-hop neighbourhood
+         */
+        public Set<Long> getNodeIds() {
+            return nodeIds;
+        }
+        
+        public long getWatermark() {
+            return watermark;
+        }
+    }
+    
+    /**
+     * Driver connection pool settings
+     */
+    public static class PoolSettings {
+        static final int DEFAULT_MAX_POOL_SIZE = 100;
+        static final int DEFAULT_ACQUISITION_TIMEOUT_SECONDS = 60;
+        static final int DEFAULT_MAX_LIFETIME_MINUTES = 60;
+        static final int DEFAULT_LIVENESS_CHECK_SECONDS = -1;
+        
+        private final int maxPoolSize;
+        private final int acquisitionTimeoutSeconds;
+        private final int maxLifetimeMinutes;
+        private final int livenessCheckSeconds;
+        private final int fetchSize;
+        
+        /**
+         * @param maxPoolSize Maximum connections per server; queries wait for a free one beyond this
+         * @param acquisitionTimeoutSeconds Time a query waits for a pooled connection before failing
+         * @param maxLifetimeMinutes Connections older than this are closed instead of reused, e.g. to
+         *                           stay below a load balancer's idle cut-off
+         * @param livenessCheckSeconds Pooled connections idle for longer than this are tested before
+         *                             use; 0 tests every time, -1 never
+         * @param fetchSize Records pulled per round trip by {@link #executeQuery(String, Map)} and
+         *                  {@link #executeReadQuery(String, Map)}
+         */
+        public PoolSettings(int maxPoolSize, int acquisitionTimeoutSeconds, int maxLifetimeMinutes,
+                            int livenessCheckSeconds, int fetchSize) {
+            this.maxPoolSize = maxPoolSize;
+            this.acquisitionTimeoutSeconds = acquisitionTimeoutSeconds;
+            this.maxLifetimeMinutes = maxLifetimeMinutes;
+            this.livenessCheckSeconds = livenessCheckSeconds;
+            this.fetchSize = fetchSize;
+        }
+        
+        public PoolSettings() {
+            this(DEFAULT_MAX_POOL_SIZE, DEFAULT_ACQUISITION_TIMEOUT_SECONDS, DEFAULT_MAX_LIFETIME_MINUTES,
+                DEFAULT_LIVENESS_CHECK_SECONDS, DEFAULT_FETCH_SIZE);
+        }
+        
+        Config toConfig() {
+            return Config.builder()
+                .withMaxConnectionPoolSize(maxPoolSize)
+                .withConnectionAcquisitionTimeout(acquisitionTimeoutSeconds, TimeUnit.SECONDS)
+                .withMaxConnectionLifetime(maxLifetimeMinutes, TimeUnit.MINUTES)
+                .withConnectionLivenessCheckTimeout(livenessCheckSeconds, TimeUnit.SECONDS)
+                .withFetchSize(fetchSize)
+                .withDriverMetrics()
+                .build();
+        }
+    }
+    
+    /**
+     * Neighbourhood of a set of nodes, as fetched by {@link #expandNeighbourhood(List, int, int)}
+     */
+    public static class Subgraph {
+        static final int RELATIONSHIPS_PER_NODE = 4;
+        // Longer property values (e.g. stored embeddings or documents) are left out of the text
+        private static final int MAX_VALUE_LENGTH = 120;
+        
+        private final int hops;
+        private final List<Node> nodes;
+        private final List<Relationship> relationships;
+        
+        public Subgraph(int hops, List<Node> nodes, List<Relationship> relationships) {
+            this.hops = hops;
+            this.nodes = nodes;
+            this.relationships = relationships;
+        }
+        
+        public int getNodeCount() {
+            return nodes.size();
+        }
+        
+        List<Node> getNodes() {
+            return nodes;
+        }
+        
+        public int getRelationshipCount() {
+            return relationships.size();
+        }
+        
+        public boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+        
+        /**
+         * Compact text form for the prompt: one line per node, referenced by a short handle
+         * in one line per relationship
+         */
+        public String toText() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("Graph neighbourhood of the top results (%d hops, %d nodes, %d relationships):\n",
+                hops, nodes.size(), relationships.size()));
+            for (Node node : nodes) {
+                text.append("  n").append(node.id());
+                node.labels().forEach(label -> text.append(':').append(label));
+                StringJoiner properties = new StringJoiner(", ", " {", "}").setEmptyValue("");
+                node.asMap().forEach((key, value) -> {
+                    String rendered = String.valueOf(value);
+                    if (rendered.length() <= MAX_VALUE_LENGTH) {
+                        properties.add(key + ": " + rendered);
+                    }
+                });
+                text.append(properties).append("\n");
+            }
+            for (Relationship relationship : relationships) {
+                text.append("  n").append(relationship.startNodeId())
+                    .append(" -[").append(relationship.type()).append("]-> n")
+                    .append(relationship.endNodeId()).append("\n");
+            }
+            return text.toString();
+        }
+    }
+    
     /**
      * Represents a chunk of graph data with its text representation and metadata
      */
     public static class GraphChunk {
+        private final long nodeId;
         private final String text;
         private final Map<String, Object> metadata;
         
         public GraphChunk(String text, Map<String, Object> metadata) {
+            this(-1, text, metadata);
+        }
+        
+        public GraphChunk(long nodeId, String text, Map<String, Object> metadata) {
+            this.nodeId = nodeId;
             this.text = text;
             this.metadata = metadata;
         }
         
+        /**
+         * Neo4j id of the source node, or -1 if unknown
+         */
+        public long getNodeId() {
+            return nodeId;
+        }
+        
         public String getText() {
             return text;
         }
@@ -0,0 +1,65 @@
+package org.vidyaastra.protege.rag;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records entities touched by ontology changes so that only their chunks need re-indexing.
+ *
+ * The signature of every added or removed axiom is marked dirty, which covers both the changed
+ * entity and the neighbours whose chunk text mentions it (e.g. the subject of an object property
+ * assertion when its target changes).
+ */
+public class OntologyChangeTracker implements OWLOntologyChangeListener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(OntologyChangeTracker.class);
+    
+    private final Set<OWLEntity> dirty = new HashSet<>();
+    
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        synchronized (dirty) {
+            for (OWLOntologyChange change : changes) {
+                for (OWLEntity entity : change.getSignature()) {
+                    if (OntologyChunker.isChunked(entity)) {
+                        dirty.add(entity);
+                    }
+                }
+            }
+            logger.debug("{} ontology changes, {} dirty entities", changes.size(), dirty.size());
+        }
+    }
+    
+    /**
+     * Return the dirty entities and reset the tracker
+     */
+    public Set<OWLEntity> drainDirty() {
+        synchronized (dirty) {
+            Set<OWLEntity> drained = new HashSet<>(dirty);
+            dirty.clear();
+            return drained;
+        }
+    }
+    
+    /**
+     * Put entities back, e.g. after a failed incremental run
+     */
+    public void markDirty(Set<OWLEntity> entities) {
+        synchronized (dirty) {
+            dirty.addAll(entities);
+        }
+    }
+    
+    public int getDirtyCount() {
+        synchronized (dirty) {
+            return dirty.size();
+        }
+    }
+}
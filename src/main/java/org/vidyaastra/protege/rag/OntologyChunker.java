@@ -0,0 +1,138 @@
+package org.vidyaastra.protege.rag;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds text chunks for ontology entities (classes, individuals and object properties)
+ */
+public class OntologyChunker {
+    
+    /** Prefix of the source ids of ontology chunks */
+    static final String SOURCE_ID_PREFIX = "owl:";
+    
+    private final OWLOntology ontology;
+    
+    public OntologyChunker(OWLOntology ontology) {
+        this.ontology = ontology;
+    }
+    
+    /**
+     * Chunk text for every class, individual and object property, keyed by source id
+     */
+    public Map<String, String> chunkAll() {
+        Map<String, String> chunks = new LinkedHashMap<>();
+        
+        // Extract classes with their superclasses
+        ontology.getClassesInSignature().forEach(cls -> chunks.put(sourceId(cls), buildClassChunk(cls)));
+        
+        // Extract individuals with their types and relationships
+        ontology.getIndividualsInSignature().forEach(ind -> chunks.put(sourceId(ind), buildIndividualChunk(ind)));
+        
+        // Extract object properties with domain/range
+        ontology.getObjectPropertiesInSignature().forEach(prop -> chunks.put(sourceId(prop), buildObjectPropertyChunk(prop)));
+        
+        return chunks;
+    }
+    
+    /**
+     * Chunk text for a single entity, or null if entities of its kind are not indexed
+     */
+    public String chunk(OWLEntity entity) {
+        if (entity.isOWLClass()) {
+            return buildClassChunk(entity.asOWLClass());
+        } else if (entity.isOWLNamedIndividual()) {
+            return buildIndividualChunk(entity.asOWLNamedIndividual());
+        } else if (entity.isOWLObjectProperty()) {
+            return buildObjectPropertyChunk(entity.asOWLObjectProperty());
+        }
+        return null;
+    }
+    
+    /**
+     * Whether chunks are built for entities of this kind
+     */
+    public static boolean isChunked(OWLEntity entity) {
+        return entity.isOWLClass() || entity.isOWLNamedIndividual() || entity.isOWLObjectProperty();
+    }
+    
+    /**
+     * Source id of an OWL entity (entity kind + IRI); the kind keeps punned IRIs apart
+     */
+    public static String sourceId(OWLEntity entity) {
+        String kind;
+        if (entity.isOWLClass()) {
+            kind = "class";
+        } else if (entity.isOWLNamedIndividual()) {
+            kind = "individual";
+        } else if (entity.isOWLObjectProperty()) {
+            kind = "objectProperty";
+        } else {
+            kind = entity.getEntityType().getName();
+        }
+        return SOURCE_ID_PREFIX + kind + ":" + entity.getIRI();
+    }
+    
+    public String buildClassChunk(OWLClass cls) {
+        StringBuilder chunk = new StringBuilder();
+        chunk.append(String.format("OWL Class: %s", cls.getIRI().getShortForm()));
+        
+        // Add superclass information
+        ontology.getSubClassAxiomsForSubClass(cls).forEach(axiom -> {
+            chunk.append(String.format(" subClassOf %s",
+                axiom.getSuperClass().toString().replaceAll("<.*#(.+)>", "$1")));
+        });
+        
+        return chunk.toString();
+    }
+    
+    public String buildIndividualChunk(OWLNamedIndividual ind) {
+        StringBuilder chunk = new StringBuilder();
+        chunk.append(String.format("Individual: %s", ind.getIRI().getShortForm()));
+        
+        // Add class types (rdf:type)
+        ontology.getClassAssertionAxioms(ind).forEach(axiom -> {
+            String className = axiom.getClassExpression().toString()
+                .replaceAll("<.*#(.+)>", "$1");
+            chunk.append(String.format(" type:%s", className));
+        });
+        
+        // Add object property assertions (relationships)
+        ontology.getObjectPropertyAssertionAxioms(ind).forEach(axiom -> {
+            String property = axiom.getProperty().toString()
+                .replaceAll("<.*#(.+)>", "$1");
+            String target = axiom.getObject().toString()
+                .replaceAll("<.*#(.+)>", "$1");
+            chunk.append(String.format(" %s:%s", property, target));
+        });
+        
+        // Add data property assertions
+        ontology.getDataPropertyAssertionAxioms(ind).forEach(axiom -> {
+            String property = axiom.getProperty().toString()
+                .replaceAll("<.*#(.+)>", "$1");
+            String value = axiom.getObject().getLiteral();
+            chunk.append(String.format(" %s:'%s'", property, value));
+        });
+        
+        return chunk.toString();
+    }
+    
+    public String buildObjectPropertyChunk(OWLObjectProperty prop) {
+        StringBuilder chunk = new StringBuilder();
+        chunk.append(String.format("OWL Object Property: %s", prop.getIRI().getShortForm()));
+        
+        ontology.getObjectPropertyDomainAxioms(prop).forEach(axiom -> {
+            chunk.append(String.format(" domain:%s",
+                axiom.getDomain().toString().replaceAll("<.*#(.+)>", "$1")));
+        });
+        
+        ontology.getObjectPropertyRangeAxioms(prop).forEach(axiom -> {
+            chunk.append(String.format(" range:%s",
+                axiom.getRange().toString().replaceAll("<.*#(.+)>", "$1")));
+        });
+        
+        return chunk.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+
+/**
+ * OpenAI chat completions API, also spoken by local servers such as Ollama, llama.cpp or vLLM
+ */
+public class OpenAiChatProvider extends ChatProvider {
+    
+    private static final String OPENAI_CHAT_URL = "https://api.openai.com/v1/chat/completions";
+    
+    private final String url;
+    private final String apiKey;
+    
+    OpenAiChatProvider(String model, String apiKey, String url, long connectTimeoutSeconds, long readTimeoutSeconds,
+                       long generationTimeoutSeconds) {
+        super(model, connectTimeoutSeconds, readTimeoutSeconds, generationTimeoutSeconds);
+        this.url = url;
+        this.apiKey = apiKey;
+    }
+    
+    static OpenAiChatProvider openAi(String model, String apiKey) {
+        return new OpenAiChatProvider(model, apiKey, OPENAI_CHAT_URL, 10, 90, 120);
+    }
+    
+    /**
+     * Provider for an OpenAI-compatible local server. Local models on a CPU can take minutes before
+     * the first token, so reads and the whole answer may wait longer; connecting to localhost should not.
+     *
+     * @param baseUrl Base URL of the API, e.g. http://localhost:11434/v1
+     * @param apiKey Key if the server requires one, otherwise empty
+     */
+    static OpenAiChatProvider local(String model, String apiKey, String baseUrl) {
+        String base = baseUrl == null || baseUrl.trim().isEmpty() ? DEFAULT_LOCAL_URL : baseUrl.trim();
+        String url = base.endsWith("/chat/completions")
+            ? base
+            : base.replaceAll("/+$", "") + "/chat/completions";
+        return new OpenAiChatProvider(model, apiKey, url, 5, 300, 600);
+    }
+    
+    @Override
+    protected Request buildRequest(String systemPrompt, String userMessage, int maxTokens, boolean stream) {
+        JsonObject requestBody = new JsonObject();
+        JsonArray messages = new JsonArray();
+        
+        JsonObject systemMessage = new JsonObject();
+        systemMessage.addProperty("role", "system");
+        systemMessage.addProperty("content", systemPrompt);
+        messages.add(systemMessage);
+        
+        JsonObject userMessageJson = new JsonObject();
+        userMessageJson.addProperty("role", "user");
+        userMessageJson.addProperty("content", userMessage);
+        messages.add(userMessageJson);
+        
+        requestBody.add("messages", messages);
+        requestBody.addProperty("model", model);
+        requestBody.addProperty("temperature", TEMPERATURE);
+        requestBody.addProperty("max_tokens", maxTokens);
+        if (stream) {
+            requestBody.addProperty("stream", true);
+        }
+        
+        Request.Builder request = new Request.Builder()
+            .url(url)
+            .post(RequestBody.create(gson.toJson(requestBody), JSON));
+        if (apiKey != null && !apiKey.isEmpty()) {
+            request.addHeader("Authorization", "Bearer " + apiKey);
+        }
+        return request.build();
+    }
+    
+    @Override
+    protected String parseResponse(JsonObject response) {
+        return response
+            .getAsJsonArray("choices")
+            .get(0).getAsJsonObject()
+            .getAsJsonObject("message")
+            .get("content").getAsString();
+    }
+    
+    @Override
+    protected String parseStreamEvent(JsonObject event) throws IOException {
+        if (event.has("error")) {
+            throw new IOException("AI request failed: " + event.get("error"));
+        }
+        JsonArray choices = event.getAsJsonArray("choices");
+        if (choices == null || choices.size() == 0) {
+            return null;
+        }
+        JsonObject delta = choices.get(0).getAsJsonObject().getAsJsonObject("delta");
+        JsonElement text = delta == null ? null : delta.get("content");
+        return text == null || text.isJsonNull() ? null : text.getAsString();
+    }
+}
@@ -1,34 +1,80 @@
 package org.vidyaastra.protege.rag;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.qdrant.client.PointIdFactory;
 import io.qdrant.client.QdrantClient;
 import io.qdrant.client.QdrantGrpcClient;
 import io.qdrant.client.ValueFactory;
+import io.qdrant.client.grpc.Collections.CompressionRatio;
+import io.qdrant.client.grpc.Collections.CreateCollection;
 import io.qdrant.client.grpc.Collections.Distance;
+import io.qdrant.client.grpc.Collections.ProductQuantization;
+import io.qdrant.client.grpc.Collections.QuantizationConfig;
+import io.qdrant.client.grpc.Collections.QuantizationType;
+import io.qdrant.client.grpc.Collections.ScalarQuantization;
 import io.qdrant.client.grpc.Collections.VectorParams;
+import io.qdrant.client.grpc.Collections.VectorsConfig;
 import io.qdrant.client.grpc.JsonWithInt.Value;
 import io.qdrant.client.grpc.Points.PointStruct;
+import io.qdrant.client.grpc.Points.QuantizationSearchParams;
+import io.qdrant.client.grpc.Points.SearchParams;
 import io.qdrant.client.grpc.Points.ScoredPoint;
 import io.qdrant.client.grpc.Points.SearchPoints;
 import io.qdrant.client.grpc.Points.Vectors;
 import io.qdrant.client.grpc.Points.WithPayloadSelector;
 import io.qdrant.client.grpc.Points.PointId;
+import io.qdrant.client.grpc.Points.PayloadIncludeSelector;
+import io.qdrant.client.grpc.Points.RetrievedPoint;
+import io.qdrant.client.grpc.Points.ScrollPoints;
+import io.qdrant.client.grpc.Points.ScrollResponse;
+import io.qdrant.client.grpc.Points.WithVectorsSelector;
+import io.qdrant.client.grpc.Points.UpdateResult;
+import io.qdrant.client.grpc.Points.UpsertPoints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Qdrant vector store - supports Qdrant Cloud with API key authentication
  */
-public class QdrantVectorStore implements AutoCloseable {
+public class QdrantVectorStore implements VectorStore {
     
     private static final Logger logger = LoggerFactory.getLogger(QdrantVectorStore.class);
     
+    static final int DEFAULT_UPSERT_BATCH_SIZE = 256;
+    static final int DEFAULT_MAX_IN_FLIGHT_UPSERTS = 4;
+    
+    private static final int SCROLL_PAGE_SIZE = 1000;
+    
+    // Candidates fetched from the quantized index per requested hit, re-scored with the original vectors
+    private static final double RESCORE_OVERSAMPLING = 2.0;
+    
+    // RFC 4122 URL namespace; source ids are hashed into it to get stable point ids
+    private static final UUID POINT_ID_NAMESPACE = UUID.fromString("6ba7b811-9dad-11d1-80b4-00c04fd430c8");
+    
     private final String collectionName;
     private final QdrantClient client;
     private final int vectorDimension;
-    private long pointIdCounter = 0;
+    private final VectorQuantization quantization;
+    private int upsertBatchSize = DEFAULT_UPSERT_BATCH_SIZE;
+    private int maxInFlightUpserts = DEFAULT_MAX_IN_FLIGHT_UPSERTS;
+    private boolean fireAndForgetUpserts = false;
+    private Semaphore inFlightUpserts = new Semaphore(DEFAULT_MAX_IN_FLIGHT_UPSERTS);
+    private final Set<ListenableFuture<UpdateResult>> pendingUpserts = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> upsertFailure = new AtomicReference<>();
+    private volatile boolean collectionReady = false;
     
     /**
      * Constructor with API key support for Qdrant Cloud
@@ -37,10 +83,14 @@ public class QdrantVectorStore implements AutoCloseable {
      * @param vectorDimension Dimension of the vectors (e.g., 1536 for OpenAI embeddings)
      * @param url Cloud URL (e.g., "xyz.gcp.cloud.qdrant.io:6334" or "https://xyz.gcp.cloud.qdrant.io:6334")
      * @param apiKey API key for Qdrant Cloud
+     * @param quantization Quantization configured on the collection when it is created; an existing
+     *                     collection keeps its own configuration
      */
-    public QdrantVectorStore(String collectionName, int vectorDimension, String url, String apiKey) {
+    public QdrantVectorStore(String collectionName, int vectorDimension, String url, String apiKey,
+                             VectorQuantization quantization) {
         this.collectionName = collectionName;
         this.vectorDimension = vectorDimension;
+        this.quantization = quantization;
         
         try {
             // Parse URL - remove http/https prefix
@@ -75,11 +125,22 @@ public class QdrantVectorStore implements AutoCloseable {
         }
     }
     
+    public QdrantVectorStore(String collectionName, int vectorDimension, String url, String apiKey) {
+        this(collectionName, vectorDimension, url, apiKey, VectorQuantization.NONE);
+    }
+    
     /**
      * Constructor with default dimension (1536 for OpenAI embeddings)
      */
     public QdrantVectorStore(String collectionName, String url, String apiKey) {
-        this(collectionName, 1536, url, apiKey);
+        this(collectionName, 1536, url, apiKey, VectorQuantization.NONE);
+    }
+    
+    /**
+     * Constructor with default dimension (1536 for OpenAI embeddings) and a quantized collection
+     */
+    public QdrantVectorStore(String collectionName, String url, String apiKey, VectorQuantization quantization) {
+        this(collectionName, 1536, url, apiKey, quantization);
     }
     
     private void initializeCollection() throws ExecutionException, InterruptedException {
@@ -95,76 +156,350 @@ public class QdrantVectorStore implements AutoCloseable {
         // Collection doesn't exist, create it
         logger.info("Creating new collection: {}", collectionName);
         
+        createCollection();
+        
+        logger.info("✅ Created collection: {}", collectionName);
+    }
+    
+    private void createCollection() throws ExecutionException, InterruptedException {
         VectorParams vectorParams = VectorParams.newBuilder()
             .setSize(vectorDimension)
             .setDistance(Distance.Cosine)
             .build();
         
-        client.createCollectionAsync(collectionName, vectorParams).get();
+        CreateCollection.Builder request = CreateCollection.newBuilder()
+            .setCollectionName(collectionName)
+            .setVectorsConfig(VectorsConfig.newBuilder().setParams(vectorParams).build());
         
-        logger.info("✅ Created collection: {}", collectionName);
+        // Quantized vectors are kept in RAM for the search; originals stay available for rescoring
+        if (quantization == VectorQuantization.SCALAR_INT8) {
+            request.setQuantizationConfig(QuantizationConfig.newBuilder()
+                .setScalar(ScalarQuantization.newBuilder()
+                    .setType(QuantizationType.Int8)
+                    .setQuantile(0.99f)
+                    .setAlwaysRam(true)));
+        } else if (quantization == VectorQuantization.PRODUCT) {
+            request.setQuantizationConfig(QuantizationConfig.newBuilder()
+                .setProduct(ProductQuantization.newBuilder()
+                    .setCompression(CompressionRatio.x32)
+                    .setAlwaysRam(true)));
+        }
+        
+        client.createCollectionAsync(request.build()).get();
+    }
+    
+    /**
+     * Configure how upserts are split and pipelined
+     *
+     * @param batchSize Points per upsert request
+     * @param maxInFlight Maximum number of upsert requests in flight
+     * @param fireAndForget If true, requests use wait=false and {@link #upsert} returns once batches are
+     *                      submitted; call {@link #flush()} to wait for them
+     */
+    public void configureUpserts(int batchSize, int maxInFlight, boolean fireAndForget) {
+        flush();
+        this.upsertBatchSize = Math.max(1, batchSize);
+        this.maxInFlightUpserts = Math.max(1, maxInFlight);
+        this.inFlightUpserts = new Semaphore(this.maxInFlightUpserts);
+        this.fireAndForgetUpserts = fireAndForget;
+        logger.info("Upserts: batch size {}, max {} in flight, fire-and-forget {}",
+            upsertBatchSize, maxInFlightUpserts, fireAndForget);
     }
     
     /**
-     * Add vectors to the store
+     * Add vectors to the store.
+     * Points are sent in batches with several upsert requests in flight at once. Unless fire-and-forget
+     * upserts are enabled, this returns only after every batch has been acknowledged.
      */
+    @Override
     public void upsert(List<VectorData> vectorDataList) {
         try {
-            // Ensure collection exists before upserting
-            ensureCollectionExists();
-            
-            List<PointStruct> points = new ArrayList<>();
-            
-            for (VectorData data : vectorDataList) {
-                pointIdCounter++;
-                
-                // Convert float[] to List<Float>
-                List<Float> vectorList = data.getVector();
-                
-                // Build vectors
-                io.qdrant.client.grpc.Points.Vector vector = io.qdrant.client.grpc.Points.Vector.newBuilder()
-                    .addAllData(vectorList)
-                    .build();
-                
-                // Build point with vectors and payload  
-                PointStruct point = PointStruct.newBuilder()
-                    .setId(PointId.newBuilder().setNum(pointIdCounter).build())
-                    .setVectors(Vectors.newBuilder().setVector(vector).build())
-                    .putAllPayload(convertMetadataToPayload(data.getMetadata()))
-                    .build();
-                
-                points.add(point);
+            // Ensure collection exists before the first upsert
+            if (!collectionReady) {
+                ensureCollectionExists();
+                collectionReady = true;
             }
+            rethrowUpsertFailure();
             
-            // Upsert points to Qdrant
-            client.upsertAsync(collectionName, points).get();
+            List<ListenableFuture<UpdateResult>> submitted = new ArrayList<>();
+            for (int from = 0; from < vectorDataList.size(); from += upsertBatchSize) {
+                List<VectorData> batch = vectorDataList.subList(from, Math.min(from + upsertBatchSize, vectorDataList.size()));
+                submitted.add(submitUpsertBatch(batch));
+            }
             
-            logger.info("✅ Added {} vectors to collection {}", vectorDataList.size(), collectionName);
+            if (!fireAndForgetUpserts) {
+                Futures.allAsList(submitted).get();
+                rethrowUpsertFailure();
+                logger.info("✅ Added {} vectors to collection {} in {} batches",
+                    vectorDataList.size(), collectionName, submitted.size());
+            } else {
+                logger.debug("Submitted {} vectors to collection {} in {} batches",
+                    vectorDataList.size(), collectionName, submitted.size());
+            }
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while upserting vectors to Qdrant", e);
         } catch (Exception e) {
+            // The failure is reported here, so it must not resurface on the next call
+            upsertFailure.set(null);
             logger.error("Failed to upsert vectors", e);
             throw new RuntimeException("Failed to upsert vectors to Qdrant", e);
         }
     }
     
     /**
-     * Search for similar vectors using Qdrant's optimized similarity search
+     * Send one batch of points, blocking while the in-flight limit is reached
      */
-    public List<SearchResult> search(float[] queryVector, int limit) {
+    private ListenableFuture<UpdateResult> submitUpsertBatch(List<VectorData> batch) throws InterruptedException {
+        List<PointStruct> points = new ArrayList<>(batch.size());
+        
+        for (VectorData data : batch) {
+            points.add(toPoint(data));
+        }
+        
+        UpsertPoints request = UpsertPoints.newBuilder()
+            .setCollectionName(collectionName)
+            .addAllPoints(points)
+            .setWait(!fireAndForgetUpserts)
+            .build();
+        
+        Semaphore permits = inFlightUpserts;
+        permits.acquire();
+        ListenableFuture<UpdateResult> future;
         try {
-            // Convert float[] to List<Float>
-            List<Float> queryVectorList = new ArrayList<>(queryVector.length);
-            for (float v : queryVector) {
-                queryVectorList.add(v);
+            future = client.upsertAsync(request);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        pendingUpserts.add(future);
+        
+        Futures.addCallback(future, new FutureCallback<UpdateResult>() {
+            @Override
+            public void onSuccess(UpdateResult result) {
+                permits.release();
+                pendingUpserts.remove(future);
             }
             
+            @Override
+            public void onFailure(Throwable t) {
+                permits.release();
+                pendingUpserts.remove(future);
+                upsertFailure.compareAndSet(null, t);
+                logger.error("Upsert batch of {} points failed", points.size(), t);
+            }
+        }, MoreExecutors.directExecutor());
+        
+        return future;
+    }
+    
+    /**
+     * Wait until every submitted upsert has been acknowledged. Rethrows the first upsert failure, if any.
+     */
+    @Override
+    public void flush() {
+        try {
+            List<ListenableFuture<UpdateResult>> pending = new ArrayList<>(pendingUpserts);
+            if (!pending.isEmpty()) {
+                Futures.successfulAsList(pending).get();
+                logger.info("Flushed {} pending upsert batches to collection {}", pending.size(), collectionName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while flushing upserts to Qdrant", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to flush upserts to Qdrant", e.getCause());
+        }
+        rethrowUpsertFailure();
+    }
+    
+    private void rethrowUpsertFailure() {
+        Throwable failure = upsertFailure.getAndSet(null);
+        if (failure != null) {
+            throw new RuntimeException("A previous upsert batch failed: " + failure.getMessage(), failure);
+        }
+    }
+    
+    /**
+     * Find which points already stored with the given content hashes are unchanged.
+     * Only the content hash payload field is fetched, in one request.
+     *
+     * @param contentHashesById Source id to content hash of the candidate points
+     * @return Source ids whose stored content hash matches, i.e. points that need no upsert
+     */
+    @Override
+    public Set<String> findUnchanged(Map<String, String> contentHashesById) {
+        Set<String> unchanged = new HashSet<>();
+        if (contentHashesById.isEmpty()) {
+            return unchanged;
+        }
+        
+        try {
+            Map<String, String> idsByUuid = new HashMap<>();
+            List<PointId> pointIds = new ArrayList<>(contentHashesById.size());
+            for (String id : contentHashesById.keySet()) {
+                PointId pointId = toPointId(id);
+                idsByUuid.put(pointId.getUuid(), id);
+                pointIds.add(pointId);
+            }
+            
+            WithPayloadSelector hashOnly = WithPayloadSelector.newBuilder()
+                .setInclude(PayloadIncludeSelector.newBuilder().addFields(CONTENT_HASH_KEY))
+                .build();
+            WithVectorsSelector noVectors = WithVectorsSelector.newBuilder().setEnable(false).build();
+            
+            List<RetrievedPoint> existing = client
+                .retrieveAsync(collectionName, pointIds, hashOnly, noVectors, null)
+                .get();
+            
+            for (RetrievedPoint point : existing) {
+                String id = idsByUuid.get(point.getId().getUuid());
+                Value storedHash = point.getPayloadMap().get(CONTENT_HASH_KEY);
+                if (id != null && storedHash != null
+                        && storedHash.getStringValue().equals(contentHashesById.get(id))) {
+                    unchanged.add(id);
+                }
+            }
+        } catch (Exception e) {
+            // Treat everything as changed; an extra upsert is harmless
+            logger.warn("Failed to look up stored content hashes", e);
+        }
+        
+        return unchanged;
+    }
+    
+    /**
+     * Delete points by source id
+     */
+    @Override
+    public void delete(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            List<PointId> pointIds = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                pointIds.add(toPointId(id));
+            }
+            client.deleteAsync(collectionName, pointIds).get();
+            logger.info("Deleted {} vectors from collection {}", ids.size(), collectionName);
+        } catch (Exception e) {
+            logger.error("Failed to delete vectors", e);
+            throw new RuntimeException("Failed to delete vectors from Qdrant", e);
+        }
+    }
+    
+    /**
+     * Scroll through the collection fetching only the source id payload field, a page at a time.
+     * Qdrant has no prefix match on keyword fields, so the prefix is applied here.
+     */
+    @Override
+    public Set<String> findSourceIds(String prefix) {
+        Set<String> ids = new HashSet<>();
+        WithPayloadSelector sourceIdOnly = WithPayloadSelector.newBuilder()
+            .setInclude(PayloadIncludeSelector.newBuilder().addFields(SOURCE_ID_KEY))
+            .build();
+        try {
+            PointId offset = null;
+            do {
+                ScrollPoints.Builder scroll = ScrollPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setWithPayload(sourceIdOnly)
+                    .setWithVectors(WithVectorsSelector.newBuilder().setEnable(false).build())
+                    .setLimit(SCROLL_PAGE_SIZE);
+                if (offset != null) {
+                    scroll.setOffset(offset);
+                }
+                ScrollResponse page = client.scrollAsync(scroll.build()).get();
+                for (RetrievedPoint point : page.getResultList()) {
+                    Value id = point.getPayloadMap().get(SOURCE_ID_KEY);
+                    if (id != null && id.getStringValue().startsWith(prefix)) {
+                        ids.add(id.getStringValue());
+                    }
+                }
+                offset = page.hasNextPageOffset() ? page.getNextPageOffset() : null;
+            } while (offset != null);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to list source ids in Qdrant", e);
+        }
+        return ids;
+    }
+    
+    /**
+     * Build a point with a stable id derived from the source identity, its vector and payload
+     */
+    static PointStruct toPoint(VectorData data) {
+        // addData(float) appends to the primitive repeated field without boxing
+        io.qdrant.client.grpc.Points.Vector.Builder vectorBuilder = io.qdrant.client.grpc.Points.Vector.newBuilder();
+        for (float v : data.getVector()) {
+            vectorBuilder.addData(v);
+        }
+        
+        return PointStruct.newBuilder()
+            .setId(toPointId(data.getId()))
+            .setVectors(Vectors.newBuilder().setVector(vectorBuilder.build()).build())
+            .putAllPayload(convertMetadataToPayload(data.getMetadata()))
+            .putPayload(SOURCE_ID_KEY, ValueFactory.value(data.getId()))
+            .putPayload(CONTENT_HASH_KEY, ValueFactory.value(data.getContentHash()))
+            .build();
+    }
+    
+    /**
+     * Qdrant point id for a source id: a name-based (version 5) UUID, so the same source always maps
+     * to the same point across restarts
+     */
+    static PointId toPointId(String sourceId) {
+        return PointIdFactory.id(uuidV5(POINT_ID_NAMESPACE, sourceId));
+    }
+    
+    /**
+     * RFC 4122 version 5 (SHA-1, name-based) UUID
+     */
+    static UUID uuidV5(UUID namespace, String name) {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+        
+        ByteBuffer namespaceBytes = ByteBuffer.allocate(16)
+            .putLong(namespace.getMostSignificantBits())
+            .putLong(namespace.getLeastSignificantBits());
+        sha1.update(namespaceBytes.array());
+        byte[] hash = sha1.digest(name.getBytes(StandardCharsets.UTF_8));
+        
+        hash[6] = (byte) ((hash[6] & 0x0f) | 0x50); // version 5
+        hash[8] = (byte) ((hash[8] & 0x3f) | 0x80); // IETF variant
+        
+        ByteBuffer buffer = ByteBuffer.wrap(hash, 0, 16);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+    
+    /**
+     * Search for similar vectors using Qdrant's optimized similarity search
+     */
+    @Override
+    public List<SearchResult> search(float[] queryVector, int limit, boolean withVectors) {
+        try {
             // Build search request
-            SearchPoints searchPoints = SearchPoints.newBuilder()
+            SearchPoints.Builder searchBuilder = SearchPoints.newBuilder()
                 .setCollectionName(collectionName)
-                .addAllVector(queryVectorList)
                 .setLimit(limit)
                 .setWithPayload(WithPayloadSelector.newBuilder().setEnable(true).build())
-                .build();
+                .setWithVectors(WithVectorsSelector.newBuilder().setEnable(withVectors).build());
+            for (float v : queryVector) {
+                searchBuilder.addVector(v);
+            }
+            if (quantization != VectorQuantization.NONE) {
+                // Oversample on the quantized vectors, then rescore the candidates with the originals
+                searchBuilder.setParams(SearchParams.newBuilder()
+                    .setQuantization(QuantizationSearchParams.newBuilder()
+                        .setRescore(true)
+                        .setOversampling(RESCORE_OVERSAMPLING)));
+            }
+            SearchPoints searchPoints = searchBuilder.build();
             
             // Perform search
             List<ScoredPoint> searchResults = client.searchAsync(searchPoints).get();
@@ -173,7 +508,16 @@ public class QdrantVectorStore implements AutoCloseable {
             List<SearchResult> results = new ArrayList<>();
             for (ScoredPoint scoredPoint : searchResults) {
                 Map<String, Object> metadata = convertPayloadToMetadata(scoredPoint.getPayloadMap());
-                results.add(new SearchResult(scoredPoint.getScore(), metadata));
+                float[] vector = null;
+                if (scoredPoint.hasVectors() && scoredPoint.getVectors().hasVector()) {
+                    // getData(i) reads the primitive float; getDataList() would box every element
+                    io.qdrant.client.grpc.Points.Vector values = scoredPoint.getVectors().getVector();
+                    vector = new float[values.getDataCount()];
+                    for (int i = 0; i < vector.length; i++) {
+                        vector[i] = values.getData(i);
+                    }
+                }
+                results.add(new SearchResult(scoredPoint.getScore(), metadata, vector));
             }
             
             logger.info("Found {} similar vectors (limit: {})", results.size(), limit);
@@ -188,6 +532,7 @@ public class QdrantVectorStore implements AutoCloseable {
     /**
      * Get collection statistics
      */
+    @Override
     public CollectionStats getStats() {
         try {
             // Ensure collection exists
@@ -211,11 +556,7 @@ public class QdrantVectorStore implements AutoCloseable {
             // Collection doesn't exist, create it
             try {
                 logger.info("Collection '{}' doesn't exist, creating...", collectionName);
-                VectorParams vectorParams = VectorParams.newBuilder()
-                    .setSize(vectorDimension)
-                    .setDistance(Distance.Cosine)
-                    .build();
-                client.createCollectionAsync(collectionName, vectorParams).get();
+                createCollection();
                 logger.info("✅ Created collection: {}", collectionName);
             } catch (Exception ex) {
                 logger.error("Failed to create collection", ex);
@@ -227,12 +568,13 @@ public class QdrantVectorStore implements AutoCloseable {
     /**
      * Clear all vectors from the collection
      */
+    @Override
     public void clear() {
         try {
             // Delete and recreate collection
+            flush();
             client.deleteCollectionAsync(collectionName).get();
             initializeCollection();
-            pointIdCounter = 0;
             logger.info("Cleared all vectors from collection {}", collectionName);
         } catch (Exception e) {
             logger.error("Failed to clear collection", e);
@@ -241,6 +583,11 @@ public class QdrantVectorStore implements AutoCloseable {
     
     @Override
     public void close() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Error flushing pending upserts", e);
+        }
         try {
             client.close();
             logger.info("Closed Qdrant vector store: {}", collectionName);
@@ -254,7 +601,7 @@ public class QdrantVectorStore implements AutoCloseable {
     /**
      * Convert metadata to Qdrant payload
      */
-    private Map<String, Value> convertMetadataToPayload(Map<String, Object> metadata) {
+    static Map<String, Value> convertMetadataToPayload(Map<String, Object> metadata) {
         Map<String, Value> payload = new HashMap<>();
         
         if (metadata != null) {
@@ -285,7 +632,7 @@ public class QdrantVectorStore implements AutoCloseable {
     /**
      * Convert Qdrant payload to metadata
      */
-    private Map<String, Object> convertPayloadToMetadata(Map<String, Value> payload) {
+    static Map<String, Object> convertPayloadToMetadata(Map<String, Value> payload) {
         Map<String, Object> metadata = new HashMap<>();
         
         for (Map.Entry<String, Value> entry : payload.entrySet()) {
@@ -304,77 +651,4 @@ public class QdrantVectorStore implements AutoCloseable {
         
         return metadata;
     }
-    
-    /**
-     * Represents vector data with metadata
-     */
-    public static class VectorData {
-        private final String id;
-        private final float[] vector;
-        private final Map<String, Object> metadata;
-        
-        public VectorData(String id, float[] vector, Map<String, Object> metadata) {
-            this.id = id;
-            this.vector = vector;
-            this.metadata = metadata;
-        }
-        
-        public String getId() {
-            return id;
-        }
-        
-        public List<Float> getVector() {
-            List<Float> list = new ArrayList<>(vector.length);
-            for (float v : vector) {
-                list.add(v);
-            }
-            return list;
-        }
-        
-        public Map<String, Object> getMetadata() {
-            return metadata;
-        }
-    }
-    
-    /**
-     * Represents a search result
-     */
-    public static class SearchResult {
-        private final float score;
-        private final Map<String, Object> metadata;
-        
-        public SearchResult(float score, Map<String, Object> metadata) {
-            this.score = score;
-            this.metadata = metadata;
-        }
-        
-        public float getScore() {
-            return score;
-        }
-        
-        public Map<String, Object> getMetadata() {
-            return metadata;
-        }
-    }
-    
-    /**
-     * Collection statistics
-     */
-    public static class CollectionStats {
-        private final long pointsCount;
-        private final long vectorsCount;
-        
-        public CollectionStats(long pointsCount, long vectorsCount) {
-            this.pointsCount = pointsCount;
-            this.vectorsCount = vectorsCount;
-        }
-        
-        public long getPointsCount() {
-            return pointsCount;
-        }
-        
-        public long getVectorsCount() {
-            return vectorsCount;
-        }
-    }
 }
@@ -0,0 +1,244 @@
+package org.vidyaastra.protege.rag;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache of recent RAG queries: their embeddings, and the retrieval and answer produced for them.
+ *
+ * Entries are keyed by normalized query text (trimmed, whitespace collapsed), held in a
+ * bounded LRU map and expire after a TTL. Retrievals are also matched semantically: a new query whose
+ * embedding has a cosine similarity of at least the threshold with a cached query reuses that query's
+ * results, as long as they were retrieved at the current index version.
+ *
+ * A cached answer is stricter: it is only reused for the same normalized query text, or for a
+ * near-duplicate whose top lexical hits are the same, since queries like {@code CircularFlow_001}
+ * and {@code CircularFlow_002} embed almost identically but ask about different entities.
+ */
+public class QueryCache {
+    
+    static final int DEFAULT_MAX_ENTRIES = 256;
+    static final int DEFAULT_TTL_MINUTES = 60;
+    static final double DEFAULT_SIMILARITY_THRESHOLD = 0.95;
+    // Top lexical hits a near-duplicate query must share with the cached one to reuse its answer
+    static final int ANSWER_LEXICAL_HITS = 3;
+    
+    /** Index version of an entry that only holds an embedding */
+    private static final long NO_RESULTS = -1;
+    
+    private final long ttlNanos;
+    private final double similarityThreshold;
+    private final LinkedHashMap<String, Entry> entries;
+    
+    private long embeddingHits;
+    private long resultHits;
+    private long misses;
+    
+    /**
+     * @param maxEntries Maximum number of queries kept
+     * @param ttl Time after which an entry expires; 0 disables the cache
+     * @param similarityThreshold Minimum cosine similarity for a near-duplicate hit; 1 or more only
+     *                            reuses results of the same normalized query text
+     */
+    public QueryCache(int maxEntries, long ttl, TimeUnit unit, double similarityThreshold) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.similarityThreshold = similarityThreshold;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    public QueryCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES, DEFAULT_SIMILARITY_THRESHOLD);
+    }
+    
+    /**
+     * Cache key of a query. Case is kept: embeddings are case-sensitive, so queries differing in
+     * the case of an identifier must not share one.
+     */
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ");
+    }
+    
+    /**
+     * Embedding cached for the same normalized query, or null
+     */
+    public synchronized float[] getEmbedding(String query) {
+        Entry entry = live(normalize(query));
+        if (entry == null) {
+            return null;
+        }
+        embeddingHits++;
+        return entry.embedding;
+    }
+    
+    public synchronized void putEmbedding(String query, float[] embedding) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        String key = normalize(query);
+        if (live(key) == null) {
+            entries.put(key, new Entry(key, embedding, NO_RESULTS, null, null, null, null));
+        }
+    }
+    
+    /**
+     * Cached retrieval for the same or a near-duplicate query at the given index version, or null.
+     * An exact match on the normalized text wins; otherwise the most similar cached query above the
+     * threshold is used.
+     */
+    public synchronized Entry findResults(String query, float[] embedding, long indexVersion) {
+        Entry exact = live(normalize(query));
+        if (exact != null && exact.indexVersion == indexVersion) {
+            resultHits++;
+            return exact;
+        }
+        
+        Entry best = null;
+        if (similarityThreshold < 1) {
+            float[] unit = DistanceMetric.COSINE.prepare(embedding);
+            double bestSimilarity = similarityThreshold;
+            long now = System.nanoTime();
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (now - entry.createdNanos > ttlNanos) {
+                    it.remove();
+                } else if (entry.indexVersion == indexVersion && entry.unitEmbedding.length == unit.length) {
+                    float similarity = VectorMath.dot(unit, entry.unitEmbedding);
+                    if (similarity >= bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = entry;
+                    }
+                }
+            }
+        }
+        
+        if (best == null) {
+            misses++;
+        } else {
+            resultHits++;
+        }
+        return best;
+    }
+    
+    /**
+     * Remember the retrieval and answer produced for a query
+     *
+     * @param searchResults Vector search results to reuse
+     * @param lexicalResults Lexical hits of the query, compared before reusing the answer
+     * @param answerBasis Other prompt input the answer depends on (e.g. the ontology summary and
+     *                    graph schema); the answer is only reused when it is unchanged
+     */
+    public synchronized void putResults(String query, float[] embedding, long indexVersion,
+                                        List<VectorStore.SearchResult> searchResults,
+                                        List<VectorStore.SearchResult> lexicalResults,
+                                        String answerBasis, String answer) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        String key = normalize(query);
+        entries.put(key, new Entry(key, embedding, indexVersion, searchResults, topSourceIds(lexicalResults),
+            answerBasis, answer));
+    }
+    
+    /**
+     * Source ids of the first {@value #ANSWER_LEXICAL_HITS} hits
+     */
+    private static List<Object> topSourceIds(List<VectorStore.SearchResult> results) {
+        List<Object> ids = new ArrayList<>();
+        for (VectorStore.SearchResult result : results.subList(0, Math.min(ANSWER_LEXICAL_HITS, results.size()))) {
+            ids.add(result.getMetadata().get(VectorStore.SOURCE_ID_KEY));
+        }
+        return ids;
+    }
+    
+    private Entry live(String key) {
+        if (ttlNanos <= 0) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.createdNanos > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public synchronized long getEmbeddingHitCount() {
+        return embeddingHits;
+    }
+    
+    /**
+     * Queries answered from cached results, exact or near-duplicate
+     */
+    public synchronized long getResultHitCount() {
+        return resultHits;
+    }
+    
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * A cached query; immutable, replaced as a whole when updated
+     */
+    public static class Entry {
+        private final String key;
+        private final float[] embedding;
+        private final float[] unitEmbedding;
+        private final long createdNanos;
+        private final long indexVersion;
+        private final List<VectorStore.SearchResult> searchResults;
+        private final List<Object> lexicalTopIds;
+        private final String answerBasis;
+        private final String answer;
+        
+        private Entry(String key, float[] embedding, long indexVersion, List<VectorStore.SearchResult> searchResults,
+                      List<Object> lexicalTopIds, String answerBasis, String answer) {
+            this.key = key;
+            this.embedding = embedding;
+            this.unitEmbedding = DistanceMetric.COSINE.prepare(embedding);
+            this.createdNanos = System.nanoTime();
+            this.indexVersion = indexVersion;
+            this.searchResults = searchResults;
+            this.lexicalTopIds = lexicalTopIds;
+            this.answerBasis = answerBasis;
+            this.answer = answer;
+        }
+        
+        public List<VectorStore.SearchResult> getSearchResults() {
+            return searchResults;
+        }
+        
+        /**
+         * Cached answer if it was generated from the same answer basis for the same query, or for a
+         * near-duplicate with the same top lexical hits; otherwise null
+         *
+         * @param lexicalResults Lexical hits of the new query
+         */
+        public String getAnswer(String query, List<VectorStore.SearchResult> lexicalResults, String answerBasis) {
+            if (answer == null || !answerBasis.equals(this.answerBasis)) {
+                return null;
+            }
+            if (key.equals(normalize(query))) {
+                return answer;
+            }
+            return !lexicalTopIds.isEmpty() && lexicalTopIds.equals(topSourceIds(lexicalResults)) ? answer : null;
+        }
+    }
+}
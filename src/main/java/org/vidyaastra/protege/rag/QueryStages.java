@@ -0,0 +1,185 @@
+package org.vidyaastra.protege.rag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Stages of one RAG query, run concurrently on the query executor.
+ *
+ * Each stage has its own timeout, after which it fails. {@link #cancel()} (called when the user aborts
+ * the query) fails every stage still running and runs registered cancellers, e.g. to abort an HTTP call.
+ * Stage threads are never interrupted, since that would close the file channels of the vector store.
+ * The wall-clock latency of each stage is collected in {@link Timings}.
+ */
+public class QueryStages {
+    
+    private final ExecutorService executor;
+    private final long started = System.nanoTime();
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private final List<Runnable> cancellers = new ArrayList<>();
+    private boolean cancelled;
+    
+    QueryStages(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Start a stage on the query executor
+     *
+     * @param stage Stage name used in timeouts and the latency breakdown
+     * @param timeoutSeconds Time after which the stage fails with a {@link TimeoutException}
+     */
+    <T> CompletableFuture<T> start(String stage, long timeoutSeconds, Callable<T> task) {
+        return start(stage, timeoutSeconds, () -> false, task);
+    }
+    
+    /**
+     * Start a stage whose timeout only applies until it reports progress, e.g. a streamed answer
+     * once its first token has arrived; from then on the stage's own I/O timeouts bound it
+     *
+     * @param progressed Whether the stage has made progress, checked when the timeout expires
+     */
+    <T> CompletableFuture<T> start(String stage, long timeoutSeconds, BooleanSupplier progressed, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            long begin = System.nanoTime();
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                record(stage, System.nanoTime() - begin);
+            }
+        });
+        
+        CompletableFuture.delayedExecutor(timeoutSeconds, TimeUnit.SECONDS).execute(() -> {
+            if (!progressed.getAsBoolean()) {
+                result.completeExceptionally(new TimeoutException(stage + " timed out after " + timeoutSeconds + " s"));
+            }
+        });
+        // A stage that timed out or was cancelled is dropped if it has not started yet. Running stages are
+        // not interrupted: an interrupt during FileChannel I/O closes the channel for good, so they are
+        // stopped through registered cancellers instead
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                running.cancel(false);
+            }
+        });
+        
+        onCancel(() -> result.cancel(false));
+        return result;
+    }
+    
+    /**
+     * Wait for a stage, rethrowing its failure
+     */
+    static <T> T await(CompletableFuture<T> stage) throws Exception {
+        try {
+            return stage.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } catch (CancellationException e) {
+            throw new InterruptedException("Query cancelled");
+        }
+    }
+    
+    /**
+     * Run the canceller when the query is cancelled, or right away if it already was
+     */
+    synchronized void onCancel(Runnable canceller) {
+        if (cancelled) {
+            canceller.run();
+        } else {
+            cancellers.add(canceller);
+        }
+    }
+    
+    /**
+     * Cancel every stage still running
+     */
+    void cancel() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            pending = new ArrayList<>(cancellers);
+            cancellers.clear();
+        }
+        pending.forEach(Runnable::run);
+    }
+    
+    /**
+     * Record the time from the start of the query to an event, e.g. the first streamed token
+     */
+    synchronized void mark(String event) {
+        stageNanos.put(event, System.nanoTime() - started);
+    }
+    
+    private synchronized void record(String stage, long nanos) {
+        stageNanos.put(stage, nanos);
+    }
+    
+    /**
+     * Latency breakdown of the stages finished so far
+     */
+    synchronized Timings finish() {
+        return new Timings(System.nanoTime() - started, new LinkedHashMap<>(stageNanos));
+    }
+    
+    /**
+     * Wall-clock latency of a query and of each of its stages; stages overlap, so their sum may
+     * exceed the total
+     */
+    public static class Timings {
+        private final long totalNanos;
+        private final Map<String, Long> stageNanos;
+        
+        Timings(long totalNanos, Map<String, Long> stageNanos) {
+            this.totalNanos = totalNanos;
+            this.stageNanos = stageNanos;
+        }
+        
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+        
+        /**
+         * Stage name to latency in milliseconds, in completion order
+         */
+        public Map<String, Long> getStageMillis() {
+            Map<String, Long> millis = new LinkedHashMap<>();
+            stageNanos.forEach((stage, nanos) -> millis.put(stage, TimeUnit.NANOSECONDS.toMillis(nanos)));
+            return Collections.unmodifiableMap(millis);
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder().append(getTotalMillis()).append(" ms total");
+            getStageMillis().forEach((stage, millis) ->
+                text.append(", ").append(stage).append(' ').append(millis).append(" ms"));
+            return text.toString();
+        }
+    }
+}
@@ -15,29 +15,56 @@ public class RagPreferences {
     private static final String NEO4J_USERNAME_KEY = "neo4j.username";
     private static final String NEO4J_PASSWORD_KEY = "neo4j.password";
     private static final String NEO4J_DATABASE_KEY = "neo4j.database";
+    private static final String NEO4J_SYNC_PROPERTY_KEY = "neo4j.sync.property";
+    private static final String NEO4J_SYNC_INTERVAL_KEY = "neo4j.sync.interval";
+    private static final String NEO4J_SYNC_WATERMARK_KEY = "neo4j.sync.watermark";
+    private static final String NEO4J_POOL_SIZE_KEY = "neo4j.pool.size";
+    private static final String NEO4J_POOL_ACQUISITION_TIMEOUT_KEY = "neo4j.pool.acquisitiontimeout";
+    private static final String NEO4J_POOL_LIFETIME_KEY = "neo4j.pool.lifetime";
+    private static final String NEO4J_POOL_LIVENESS_KEY = "neo4j.pool.liveness";
+    private static final String NEO4J_FETCH_SIZE_KEY = "neo4j.fetchsize";
     
     // Vector Store preference keys
     private static final String VECTOR_STORE_COLLECTION_KEY = "vectorstore.collection";
+    private static final String VECTOR_STORE_QUANTIZATION_KEY = "vectorstore.quantization";
     private static final String QDRANT_URL_KEY = "qdrant.url";
     private static final String QDRANT_API_KEY_KEY = "qdrant.apikey";
+    private static final String QDRANT_UPSERT_BATCH_SIZE_KEY = "qdrant.upsert.batchsize";
+    private static final String QDRANT_UPSERT_CONCURRENCY_KEY = "qdrant.upsert.concurrency";
+    private static final String QDRANT_UPSERT_FIRE_AND_FORGET_KEY = "qdrant.upsert.fireandforget";
+    private static final String LOCAL_INDEX_M_KEY = "local.hnsw.m";
+    private static final String LOCAL_INDEX_EF_CONSTRUCTION_KEY = "local.hnsw.efconstruction";
+    private static final String LOCAL_INDEX_EF_SEARCH_KEY = "local.hnsw.efsearch";
+    private static final String LOCAL_INDEX_METRIC_KEY = "local.metric";
     
     // Embedding model preference keys
     private static final String EMBEDDING_MODEL_KEY = "embedding.model";
     private static final String EMBEDDING_API_KEY_KEY = "embedding.apikey";
+    private static final String EMBEDDING_CONCURRENCY_KEY = "embedding.concurrency";
     
     // AI model preference keys
     private static final String AI_MODEL_KEY = "ai.model";
     private static final String AI_API_KEY_KEY = "ai.apikey";
+    private static final String AI_LOCAL_URL_KEY = "ai.local.url";
+    private static final String AI_CONTEXT_TOKENS_KEY = "ai.context.tokens";
+    private static final String AI_ANSWER_TOKENS_KEY = "ai.answer.tokens";
+    private static final String GRAPH_EXPANSION_HOPS_KEY = "graph.expansion.hops";
+    private static final String GRAPH_EXPANSION_NODES_KEY = "graph.expansion.nodes";
+    private static final String QUERY_CACHE_TTL_KEY = "query.cache.ttl";
+    private static final String QUERY_CACHE_SIMILARITY_KEY = "query.cache.similarity";
+    private static final String QUERY_CACHE_ANSWERS_KEY = "query.cache.answers";
     
     // Default values
     private static final String DEFAULT_NEO4J_URI = "bolt://localhost:7687";
     private static final String DEFAULT_NEO4J_USERNAME = "neo4j";
     private static final String DEFAULT_NEO4J_DATABASE = "neo4j";
+    private static final String DEFAULT_NEO4J_SYNC_PROPERTY = "updatedAt";
     
     private static final String DEFAULT_VECTOR_STORE_COLLECTION = "ontology_graphs";
     private static final String DEFAULT_QDRANT_URL = "./qdrant_local";
     
     private static final String DEFAULT_EMBEDDING_MODEL = "text-embedding-3-small (OpenAI)";
+    static final int DEFAULT_EMBEDDING_CONCURRENCY = 4;
     private static final String DEFAULT_AI_MODEL = "gpt-4o-mini (OpenAI)";
     
     private Preferences getPreferences() {
@@ -78,6 +105,95 @@ public class RagPreferences {
         getPreferences().putString(NEO4J_DATABASE_KEY, database);
     }
     
+    /**
+     * Node/relationship property (epoch millis) used to detect graph changes
+     */
+    public String getNeo4jSyncProperty() {
+        return getPreferences().getString(NEO4J_SYNC_PROPERTY_KEY, DEFAULT_NEO4J_SYNC_PROPERTY);
+    }
+    
+    public void setNeo4jSyncProperty(String property) {
+        getPreferences().putString(NEO4J_SYNC_PROPERTY_KEY, property);
+    }
+    
+    /**
+     * Minutes between scheduled graph syncs; 0 disables scheduling
+     */
+    public int getNeo4jSyncIntervalMinutes() {
+        return getPreferences().getInt(NEO4J_SYNC_INTERVAL_KEY, 0);
+    }
+    
+    public void setNeo4jSyncIntervalMinutes(int minutes) {
+        getPreferences().putInt(NEO4J_SYNC_INTERVAL_KEY, minutes);
+    }
+    
+    /**
+     * Highest change property value already indexed
+     */
+    public long getNeo4jSyncWatermark() {
+        return getPreferences().getLong(NEO4J_SYNC_WATERMARK_KEY, 0L);
+    }
+    
+    public void setNeo4jSyncWatermark(long watermark) {
+        getPreferences().putLong(NEO4J_SYNC_WATERMARK_KEY, watermark);
+    }
+    
+    /**
+     * Maximum driver connections per Neo4j server
+     */
+    public int getNeo4jPoolSize() {
+        return getPreferences().getInt(NEO4J_POOL_SIZE_KEY, Neo4jService.PoolSettings.DEFAULT_MAX_POOL_SIZE);
+    }
+    
+    public void setNeo4jPoolSize(int size) {
+        getPreferences().putInt(NEO4J_POOL_SIZE_KEY, size);
+    }
+    
+    /**
+     * Seconds a query waits for a pooled connection
+     */
+    public int getNeo4jPoolAcquisitionTimeoutSeconds() {
+        return getPreferences().getInt(NEO4J_POOL_ACQUISITION_TIMEOUT_KEY,
+            Neo4jService.PoolSettings.DEFAULT_ACQUISITION_TIMEOUT_SECONDS);
+    }
+    
+    public void setNeo4jPoolAcquisitionTimeoutSeconds(int seconds) {
+        getPreferences().putInt(NEO4J_POOL_ACQUISITION_TIMEOUT_KEY, seconds);
+    }
+    
+    /**
+     * Minutes after which a pooled connection is closed instead of reused
+     */
+    public int getNeo4jPoolLifetimeMinutes() {
+        return getPreferences().getInt(NEO4J_POOL_LIFETIME_KEY, Neo4jService.PoolSettings.DEFAULT_MAX_LIFETIME_MINUTES);
+    }
+    
+    public void setNeo4jPoolLifetimeMinutes(int minutes) {
+        getPreferences().putInt(NEO4J_POOL_LIFETIME_KEY, minutes);
+    }
+    
+    /**
+     * Idle seconds after which a pooled connection is tested before use; -1 never tests
+     */
+    public int getNeo4jPoolLivenessCheckSeconds() {
+        return getPreferences().getInt(NEO4J_POOL_LIVENESS_KEY, Neo4jService.PoolSettings.DEFAULT_LIVENESS_CHECK_SECONDS);
+    }
+    
+    public void setNeo4jPoolLivenessCheckSeconds(int seconds) {
+        getPreferences().putInt(NEO4J_POOL_LIVENESS_KEY, seconds);
+    }
+    
+    /**
+     * Records pulled per round trip when reading query results
+     */
+    public int getNeo4jFetchSize() {
+        return getPreferences().getInt(NEO4J_FETCH_SIZE_KEY, Neo4jService.DEFAULT_FETCH_SIZE);
+    }
+    
+    public void setNeo4jFetchSize(int fetchSize) {
+        getPreferences().putInt(NEO4J_FETCH_SIZE_KEY, fetchSize);
+    }
+    
     // Vector Store getters and setters
     public String getVectorStoreCollection() {
         return getPreferences().getString(VECTOR_STORE_COLLECTION_KEY, DEFAULT_VECTOR_STORE_COLLECTION);
@@ -87,6 +203,14 @@ public class RagPreferences {
         getPreferences().putString(VECTOR_STORE_COLLECTION_KEY, collection);
     }
     
+    public String getVectorStoreQuantization() {
+        return getPreferences().getString(VECTOR_STORE_QUANTIZATION_KEY, VectorQuantization.NONE.name());
+    }
+    
+    public void setVectorStoreQuantization(String quantization) {
+        getPreferences().putString(VECTOR_STORE_QUANTIZATION_KEY, quantization);
+    }
+    
     public String getQdrantUrl() {
         return getPreferences().getString(QDRANT_URL_KEY, DEFAULT_QDRANT_URL);
     }
@@ -103,6 +227,63 @@ public class RagPreferences {
         getPreferences().putString(QDRANT_API_KEY_KEY, apiKey);
     }
     
+    public int getQdrantUpsertBatchSize() {
+        return getPreferences().getInt(QDRANT_UPSERT_BATCH_SIZE_KEY, QdrantVectorStore.DEFAULT_UPSERT_BATCH_SIZE);
+    }
+    
+    public void setQdrantUpsertBatchSize(int batchSize) {
+        getPreferences().putInt(QDRANT_UPSERT_BATCH_SIZE_KEY, batchSize);
+    }
+    
+    public int getQdrantUpsertConcurrency() {
+        return getPreferences().getInt(QDRANT_UPSERT_CONCURRENCY_KEY, QdrantVectorStore.DEFAULT_MAX_IN_FLIGHT_UPSERTS);
+    }
+    
+    public void setQdrantUpsertConcurrency(int concurrency) {
+        getPreferences().putInt(QDRANT_UPSERT_CONCURRENCY_KEY, concurrency);
+    }
+    
+    public boolean isQdrantUpsertFireAndForget() {
+        return getPreferences().getBoolean(QDRANT_UPSERT_FIRE_AND_FORGET_KEY, false);
+    }
+    
+    public void setQdrantUpsertFireAndForget(boolean fireAndForget) {
+        getPreferences().putBoolean(QDRANT_UPSERT_FIRE_AND_FORGET_KEY, fireAndForget);
+    }
+    
+    // Local (in-process HNSW) index getters and setters
+    public int getLocalIndexM() {
+        return getPreferences().getInt(LOCAL_INDEX_M_KEY, HnswVectorStore.DEFAULT_M);
+    }
+    
+    public void setLocalIndexM(int m) {
+        getPreferences().putInt(LOCAL_INDEX_M_KEY, m);
+    }
+    
+    public int getLocalIndexEfConstruction() {
+        return getPreferences().getInt(LOCAL_INDEX_EF_CONSTRUCTION_KEY, HnswVectorStore.DEFAULT_EF_CONSTRUCTION);
+    }
+    
+    public void setLocalIndexEfConstruction(int efConstruction) {
+        getPreferences().putInt(LOCAL_INDEX_EF_CONSTRUCTION_KEY, efConstruction);
+    }
+    
+    public int getLocalIndexEfSearch() {
+        return getPreferences().getInt(LOCAL_INDEX_EF_SEARCH_KEY, HnswVectorStore.DEFAULT_EF_SEARCH);
+    }
+    
+    public void setLocalIndexEfSearch(int efSearch) {
+        getPreferences().putInt(LOCAL_INDEX_EF_SEARCH_KEY, efSearch);
+    }
+    
+    public String getLocalIndexMetric() {
+        return getPreferences().getString(LOCAL_INDEX_METRIC_KEY, DistanceMetric.COSINE.name());
+    }
+    
+    public void setLocalIndexMetric(String metric) {
+        getPreferences().putString(LOCAL_INDEX_METRIC_KEY, metric);
+    }
+    
     // Embedding model getters and setters
     public String getEmbeddingModel() {
         return getPreferences().getString(EMBEDDING_MODEL_KEY, DEFAULT_EMBEDDING_MODEL);
@@ -120,6 +301,14 @@ public class RagPreferences {
         getPreferences().putString(EMBEDDING_API_KEY_KEY, apiKey);
     }
     
+    public int getEmbeddingConcurrency() {
+        return getPreferences().getInt(EMBEDDING_CONCURRENCY_KEY, DEFAULT_EMBEDDING_CONCURRENCY);
+    }
+    
+    public void setEmbeddingConcurrency(int concurrency) {
+        getPreferences().putInt(EMBEDDING_CONCURRENCY_KEY, concurrency);
+    }
+    
     // AI model getters and setters
     public String getAiModel() {
         return getPreferences().getString(AI_MODEL_KEY, DEFAULT_AI_MODEL);
@@ -136,4 +325,92 @@ public class RagPreferences {
     public void setAiApiKey(String apiKey) {
         getPreferences().putString(AI_API_KEY_KEY, apiKey);
     }
+    
+    /**
+     * Base URL of the OpenAI-compatible server used for local models
+     */
+    public String getAiLocalUrl() {
+        return getPreferences().getString(AI_LOCAL_URL_KEY, ChatProvider.DEFAULT_LOCAL_URL);
+    }
+    
+    public void setAiLocalUrl(String url) {
+        getPreferences().putString(AI_LOCAL_URL_KEY, url);
+    }
+    
+    /**
+     * Maximum tokens of retrieved context in the prompt
+     */
+    public int getAiContextTokens() {
+        return getPreferences().getInt(AI_CONTEXT_TOKENS_KEY, ContextBuilder.DEFAULT_TOKEN_BUDGET);
+    }
+    
+    public void setAiContextTokens(int tokens) {
+        getPreferences().putInt(AI_CONTEXT_TOKENS_KEY, tokens);
+    }
+    
+    /**
+     * Maximum tokens of a generated answer
+     */
+    public int getAiAnswerTokens() {
+        return getPreferences().getInt(AI_ANSWER_TOKENS_KEY, RagService.DEFAULT_ANSWER_MAX_TOKENS);
+    }
+    
+    public void setAiAnswerTokens(int tokens) {
+        getPreferences().putInt(AI_ANSWER_TOKENS_KEY, tokens);
+    }
+    
+    /**
+     * Hops of graph neighbourhood fetched around the top hits; 0 disables expansion
+     */
+    public int getGraphExpansionHops() {
+        return getPreferences().getInt(GRAPH_EXPANSION_HOPS_KEY, RagService.DEFAULT_EXPANSION_HOPS);
+    }
+    
+    public void setGraphExpansionHops(int hops) {
+        getPreferences().putInt(GRAPH_EXPANSION_HOPS_KEY, hops);
+    }
+    
+    /**
+     * Maximum nodes in the expanded graph neighbourhood
+     */
+    public int getGraphExpansionNodes() {
+        return getPreferences().getInt(GRAPH_EXPANSION_NODES_KEY, RagService.DEFAULT_EXPANSION_NODES);
+    }
+    
+    public void setGraphExpansionNodes(int nodes) {
+        getPreferences().putInt(GRAPH_EXPANSION_NODES_KEY, nodes);
+    }
+    
+    /**
+     * Minutes a cached query embedding, retrieval and answer stay valid; 0 disables the query cache
+     */
+    public int getQueryCacheTtlMinutes() {
+        return getPreferences().getInt(QUERY_CACHE_TTL_KEY, QueryCache.DEFAULT_TTL_MINUTES);
+    }
+    
+    public void setQueryCacheTtlMinutes(int minutes) {
+        getPreferences().putInt(QUERY_CACHE_TTL_KEY, minutes);
+    }
+    
+    /**
+     * Minimum cosine similarity for a near-duplicate query to reuse a cached retrieval
+     */
+    public double getQueryCacheSimilarity() {
+        return getPreferences().getDouble(QUERY_CACHE_SIMILARITY_KEY, QueryCache.DEFAULT_SIMILARITY_THRESHOLD);
+    }
+    
+    public void setQueryCacheSimilarity(double similarity) {
+        getPreferences().putDouble(QUERY_CACHE_SIMILARITY_KEY, similarity);
+    }
+    
+    /**
+     * Whether a query cache hit returns the cached answer; off by default
+     */
+    public boolean isQueryCacheAnswers() {
+        return getPreferences().getBoolean(QUERY_CACHE_ANSWERS_KEY, false);
+    }
+    
+    public void setQueryCacheAnswers(boolean reuseAnswers) {
+        getPreferences().putBoolean(QUERY_CACHE_ANSWERS_KEY, reuseAnswers);
+    }
 }
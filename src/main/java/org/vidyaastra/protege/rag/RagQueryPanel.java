@@ -1,12 +1,21 @@
 package org.vidyaastra.protege.rag;
 
+import org.neo4j.driver.ConnectionPoolMetrics;
 import org.protege.editor.owl.ui.view.AbstractOWLViewComponent;
+import org.semanticweb.owlapi.model.OWLEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 /**
  * Main UI panel for Neo4j-Qdrant RAG plugin
@@ -21,16 +30,40 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
     private JTextField neo4jUsernameField;
     private JPasswordField neo4jPasswordField;
     private JTextField neo4jDatabaseField;
+    private JTextField neo4jSyncPropertyField;
+    private JSpinner neo4jSyncIntervalSpinner;
+    private JSpinner neo4jPoolSizeSpinner;
+    private JSpinner neo4jPoolAcquisitionTimeoutSpinner;
+    private JSpinner neo4jPoolLifetimeSpinner;
+    private JSpinner neo4jPoolLivenessSpinner;
+    private JSpinner neo4jFetchSizeSpinner;
     
     private JTextField vectorStoreCollectionField;
     private JTextField qdrantUrlField;
     private JPasswordField qdrantApiKeyField;
+    private JSpinner upsertBatchSizeSpinner;
+    private JSpinner upsertConcurrencySpinner;
+    private JCheckBox fireAndForgetUpsertsCheckBox;
+    private JSpinner localIndexMSpinner;
+    private JSpinner localIndexEfConstructionSpinner;
+    private JSpinner localIndexEfSearchSpinner;
+    private JComboBox<DistanceMetric> localIndexMetricCombo;
+    private JComboBox<VectorQuantization> quantizationCombo;
     
     private JComboBox<String> embeddingModelCombo;
     private JPasswordField embeddingApiKeyField;
+    private JSpinner embeddingConcurrencySpinner;
     
     private JComboBox<String> aiModelCombo;
     private JPasswordField aiApiKeyField;
+    private JTextField aiLocalUrlField;
+    private JSpinner aiContextTokensSpinner;
+    private JSpinner aiAnswerTokensSpinner;
+    private JSpinner graphExpansionHopsSpinner;
+    private JSpinner graphExpansionNodesSpinner;
+    private JSpinner queryCacheTtlSpinner;
+    private JSpinner queryCacheSimilaritySpinner;
+    private JCheckBox queryCacheAnswersCheckBox;
     
     // Status indicators
     private JLabel neo4jStatusLabel;
@@ -41,21 +74,30 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
     private JTextArea resultsTextArea;
     private JTextArea statsArea;
     private JButton executeButton;
+    private JButton cancelQueryButton;
+    private SwingWorker<String, String> queryWorker;
     private JButton saveSettingsButton;
     private JButton connectButton;
     
     // Service instances
     private RagPreferences preferences;
     private Neo4jService neo4jService;
-    private QdrantVectorStore vectorStore;
+    private VectorStore vectorStore;
     private EmbeddingService embeddingService;
+    private EmbeddingCache embeddingCache;
     private RagService ragService;
+    private OntologyChangeTracker ontologyChangeTracker;
+    private GraphSyncScheduler graphSyncScheduler;
     
     @Override
     protected void initialiseOWLView() {
         setLayout(new BorderLayout());
         preferences = new RagPreferences();
         
+        // Track ontology edits so they can be re-indexed incrementally
+        ontologyChangeTracker = new OntologyChangeTracker();
+        getOWLModelManager().addOntologyChangeListener(ontologyChangeTracker);
+        
         // Create main panel with tabs
         JTabbedPane tabbedPane = new JTabbedPane();
         tabbedPane.addTab("Configuration", createConfigurationPanel());
@@ -95,37 +137,95 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         neo4jDatabaseField.setText("neo4j");
         
         gbc.gridy = 5;
+        JPanel syncPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        syncPanel.add(new JLabel("Property:"));
+        syncPanel.add(neo4jSyncPropertyField = new JTextField("updatedAt", 10));
+        neo4jSyncPropertyField.setToolTipText("Node/relationship property holding the last modification time in epoch milliseconds");
+        syncPanel.add(new JLabel("Every (min, 0 = off):"));
+        syncPanel.add(neo4jSyncIntervalSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 1440, 5)));
+        addLabeledField(configGrid, gbc, "Change Sync:", syncPanel);
+        
+        gbc.gridy = 6;
+        JPanel poolPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        poolPanel.add(new JLabel("Size:"));
+        poolPanel.add(neo4jPoolSizeSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 1000, 10)));
+        neo4jPoolSizeSpinner.setToolTipText("Maximum connections per server; size it from the in-use and "
+            + "acquisition wait figures in the stats view");
+        poolPanel.add(new JLabel("Acquire timeout (s):"));
+        poolPanel.add(neo4jPoolAcquisitionTimeoutSpinner = new JSpinner(new SpinnerNumberModel(60, 1, 600, 5)));
+        poolPanel.add(new JLabel("Lifetime (min):"));
+        poolPanel.add(neo4jPoolLifetimeSpinner = new JSpinner(new SpinnerNumberModel(60, 1, 1440, 5)));
+        addLabeledField(configGrid, gbc, "Connection Pool:", poolPanel);
+        
+        gbc.gridy = 7;
+        JPanel poolCheckPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        poolCheckPanel.add(new JLabel("Liveness check after idle (s, -1 = off):"));
+        poolCheckPanel.add(neo4jPoolLivenessSpinner = new JSpinner(new SpinnerNumberModel(-1, -1, 3600, 10)));
+        poolCheckPanel.add(new JLabel("Fetch size:"));
+        poolCheckPanel.add(neo4jFetchSizeSpinner = new JSpinner(new SpinnerNumberModel(1000, 10, 100_000, 100)));
+        neo4jFetchSizeSpinner.setToolTipText("Records pulled per round trip when reading query results");
+        addLabeledField(configGrid, gbc, "Pool Checks:", poolCheckPanel);
+        
+        gbc.gridy = 8;
         gbc.gridx = 1;
         neo4jStatusLabel = new JLabel("⚪ Not Connected");
         configGrid.add(neo4jStatusLabel, gbc);
         
         // Vector Store Configuration Section
-        gbc.gridy = 6;
-        addSectionHeader(configGrid, gbc, 6, "Qdrant Vector Store Configuration");
+        gbc.gridy = 9;
+        addSectionHeader(configGrid, gbc, 9, "Qdrant Vector Store Configuration");
         
-        gbc.gridy = 7;
+        gbc.gridy = 10;
         addLabeledField(configGrid, gbc, "Qdrant URL:", qdrantUrlField = new JTextField(30));
         qdrantUrlField.setText("./qdrant_local");
         qdrantUrlField.setToolTipText("Local path (e.g., ./qdrant_local) or Cloud URL (e.g., xyz.gcp.cloud.qdrant.io)");
         
-        gbc.gridy = 8;
+        gbc.gridy = 11;
         addLabeledField(configGrid, gbc, "Qdrant API Key:", qdrantApiKeyField = new JPasswordField(30));
         qdrantApiKeyField.setToolTipText("Leave empty for local file storage, required for Qdrant Cloud");
         
-        gbc.gridy = 9;
-        addLabeledField(configGrid, gbc, "Collection:", vectorStoreCollectionField = new JTextField(30));
+        gbc.gridy = 12;
+        JPanel collectionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        collectionPanel.add(vectorStoreCollectionField = new JTextField(20));
         vectorStoreCollectionField.setText("ontology_graphs");
+        collectionPanel.add(new JLabel("Quantization:"));
+        collectionPanel.add(quantizationCombo = new JComboBox<>(VectorQuantization.values()));
+        quantizationCombo.setToolTipText("Search compressed vectors and rescore the best with full precision; "
+            + "applies to new Qdrant collections and to the local index");
+        addLabeledField(configGrid, gbc, "Collection:", collectionPanel);
         
-        gbc.gridy = 10;
+        gbc.gridy = 13;
+        JPanel upsertPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        upsertPanel.add(new JLabel("Batch:"));
+        upsertPanel.add(upsertBatchSizeSpinner = new JSpinner(new SpinnerNumberModel(256, 1, 10000, 64)));
+        upsertPanel.add(new JLabel("In flight:"));
+        upsertPanel.add(upsertConcurrencySpinner = new JSpinner(new SpinnerNumberModel(4, 1, 64, 1)));
+        upsertPanel.add(fireAndForgetUpsertsCheckBox = new JCheckBox("Fire-and-forget (flush at end)"));
+        fireAndForgetUpsertsCheckBox.setToolTipText("Send upserts with wait=false and only wait for them once indexing finishes");
+        addLabeledField(configGrid, gbc, "Upserts:", upsertPanel);
+        
+        gbc.gridy = 14;
+        JPanel localIndexPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        localIndexPanel.add(new JLabel("M:"));
+        localIndexPanel.add(localIndexMSpinner = new JSpinner(new SpinnerNumberModel(16, 2, 128, 2)));
+        localIndexPanel.add(new JLabel("efConstruction:"));
+        localIndexPanel.add(localIndexEfConstructionSpinner = new JSpinner(new SpinnerNumberModel(200, 8, 2000, 10)));
+        localIndexPanel.add(new JLabel("efSearch:"));
+        localIndexPanel.add(localIndexEfSearchSpinner = new JSpinner(new SpinnerNumberModel(64, 1, 2000, 8)));
+        localIndexPanel.add(localIndexMetricCombo = new JComboBox<>(DistanceMetric.values()));
+        localIndexPanel.setToolTipText("In-process HNSW index, used when the Qdrant URL is a local path");
+        addLabeledField(configGrid, gbc, "Local Index:", localIndexPanel);
+        
+        gbc.gridy = 15;
         gbc.gridx = 1;
         vectorStoreStatusLabel = new JLabel("⚪ Not Initialized");
         configGrid.add(vectorStoreStatusLabel, gbc);
         
         // Embedding Model Configuration
-        gbc.gridy = 11;
-        addSectionHeader(configGrid, gbc, 11, "Embedding Model");
+        gbc.gridy = 16;
+        addSectionHeader(configGrid, gbc, 16, "Embedding Model");
         
-        gbc.gridy = 12;
+        gbc.gridy = 17;
         String[] embeddingModels = {
             "text-embedding-3-small (OpenAI)",
             "text-embedding-3-large (OpenAI)",
@@ -136,29 +236,72 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         };
         addLabeledField(configGrid, gbc, "Model:", embeddingModelCombo = new JComboBox<>(embeddingModels));
         
-        gbc.gridy = 13;
+        gbc.gridy = 18;
         addLabeledField(configGrid, gbc, "API Key:", embeddingApiKeyField = new JPasswordField(30));
         embeddingApiKeyField.setToolTipText("Leave empty for local models");
         
+        gbc.gridy = 19;
+        addLabeledField(configGrid, gbc, "Max Concurrent Requests:",
+            embeddingConcurrencySpinner = new JSpinner(new SpinnerNumberModel(4, 1, 64, 1)));
+        embeddingConcurrencySpinner.setToolTipText("Upper bound on embedding batch requests in flight; reduced automatically when throttled");
+        
         // AI Model Configuration
-        gbc.gridy = 14;
-        addSectionHeader(configGrid, gbc, 14, "AI Model (for RAG)");
+        gbc.gridy = 20;
+        addSectionHeader(configGrid, gbc, 20, "AI Model (for RAG)");
         
-        gbc.gridy = 15;
+        gbc.gridy = 21;
         String[] aiModels = {
             "gpt-4o (OpenAI)",
             "gpt-4o-mini (OpenAI)",
-            "claude-3-5-sonnet (Anthropic)",
-            "claude-3-opus (Anthropic)",
+            "claude-3-5-sonnet-latest (Anthropic)",
+            "claude-3-opus-latest (Anthropic)",
             "llama3:8b (Ollama Local)",
             "mistral (Ollama Local)"
         };
         addLabeledField(configGrid, gbc, "Model:", aiModelCombo = new JComboBox<>(aiModels));
         
-        gbc.gridy = 16;
+        gbc.gridy = 22;
         addLabeledField(configGrid, gbc, "API Key:", aiApiKeyField = new JPasswordField(30));
         aiApiKeyField.setToolTipText("Leave empty for Ollama local models");
         
+        gbc.gridy = 23;
+        addLabeledField(configGrid, gbc, "Local Server URL:", aiLocalUrlField = new JTextField(ChatProvider.DEFAULT_LOCAL_URL, 30));
+        aiLocalUrlField.setToolTipText("OpenAI-compatible API of the server running local models (Ollama, llama.cpp, vLLM)");
+        
+        gbc.gridy = 24;
+        JPanel tokenBudgetPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        tokenBudgetPanel.add(new JLabel("Context:"));
+        tokenBudgetPanel.add(aiContextTokensSpinner = new JSpinner(new SpinnerNumberModel(2000, 200, 100_000, 100)));
+        aiContextTokensSpinner.setToolTipText("Maximum tokens of retrieved graph context in the prompt; "
+            + "near-duplicate chunks are dropped first");
+        tokenBudgetPanel.add(new JLabel("Answer:"));
+        tokenBudgetPanel.add(aiAnswerTokensSpinner = new JSpinner(new SpinnerNumberModel(1000, 100, 32_000, 100)));
+        addLabeledField(configGrid, gbc, "Token Budget:", tokenBudgetPanel);
+        
+        gbc.gridy = 25;
+        JPanel queryCachePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        queryCachePanel.add(new JLabel("TTL (min, 0 = off):"));
+        queryCachePanel.add(queryCacheTtlSpinner = new JSpinner(new SpinnerNumberModel(60, 0, 1440, 5)));
+        queryCachePanel.add(new JLabel("Similarity:"));
+        queryCachePanel.add(queryCacheSimilaritySpinner = new JSpinner(new SpinnerNumberModel(0.95, 0.5, 1.0, 0.01)));
+        queryCacheSimilaritySpinner.setToolTipText("Minimum cosine similarity for a near-duplicate query to reuse "
+            + "cached results; 1.0 only reuses results of the same question");
+        queryCachePanel.add(queryCacheAnswersCheckBox = new JCheckBox("Reuse answers", false));
+        queryCacheAnswersCheckBox.setToolTipText("Return the cached answer for the same question, or a near-duplicate "
+            + "with the same top keyword hits, instead of only reusing the retrieval");
+        addLabeledField(configGrid, gbc, "Query Cache:", queryCachePanel);
+        
+        gbc.gridy = 26;
+        JPanel graphExpansionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        graphExpansionPanel.add(new JLabel("Hops (0 = off):"));
+        graphExpansionPanel.add(graphExpansionHopsSpinner = new JSpinner(
+            new SpinnerNumberModel(2, 0, Neo4jService.MAX_EXPANSION_HOPS, 1)));
+        graphExpansionPanel.add(new JLabel("Max nodes:"));
+        graphExpansionPanel.add(graphExpansionNodesSpinner = new JSpinner(new SpinnerNumberModel(40, 5, 500, 5)));
+        graphExpansionHopsSpinner.setToolTipText("Neighbourhood of the top graph hits added to the context, "
+            + "for multi-hop questions such as rings and circular flows");
+        addLabeledField(configGrid, gbc, "Graph Expansion:", graphExpansionPanel);
+        
         // Buttons
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         saveSettingsButton = new JButton("Save Settings");
@@ -192,7 +335,13 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         
         executeButton = new JButton("Execute RAG Query");
         executeButton.addActionListener(this::handleExecuteQuery);
-        queryPanel.add(executeButton, BorderLayout.SOUTH);
+        cancelQueryButton = new JButton("Cancel");
+        cancelQueryButton.addActionListener(this::handleCancelQuery);
+        cancelQueryButton.setEnabled(false);
+        JPanel queryButtonPanel = new JPanel(new BorderLayout(5, 0));
+        queryButtonPanel.add(executeButton, BorderLayout.CENTER);
+        queryButtonPanel.add(cancelQueryButton, BorderLayout.EAST);
+        queryPanel.add(queryButtonPanel, BorderLayout.SOUTH);
         
         // Results area
         JPanel resultsPanel = new JPanel(new BorderLayout());
@@ -222,15 +371,25 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         indexGraphButton.addActionListener(this::handleIndexGraph);
         indexGraphButton.setToolTipText("Convert Neo4j graph to embeddings and store in memory");
         
+        JButton syncGraphButton = new JButton("Sync Neo4j Changes");
+        syncGraphButton.addActionListener(this::handleSyncGraph);
+        syncGraphButton.setToolTipText("Re-embed only nodes changed since the last sync, plus their neighbours");
+        
         JButton indexOntologyButton = new JButton("Index Current Ontology to Vector Store");
         indexOntologyButton.addActionListener(this::handleIndexOntology);
         indexOntologyButton.setToolTipText("Convert current Protégé ontology to embeddings");
         
+        JButton indexOntologyChangesButton = new JButton("Index Ontology Changes");
+        indexOntologyChangesButton.addActionListener(this::handleIndexOntologyChanges);
+        indexOntologyChangesButton.setToolTipText("Re-embed only entities changed since the last ontology indexing");
+        
         JButton viewStatsButton = new JButton("View Vector Store Stats");
         viewStatsButton.addActionListener(this::handleViewStats);
         
         controlPanel.add(indexGraphButton);
+        controlPanel.add(syncGraphButton);
         controlPanel.add(indexOntologyButton);
+        controlPanel.add(indexOntologyChangesButton);
         controlPanel.add(viewStatsButton);
         
         statsArea = new JTextArea(20, 40);
@@ -263,23 +422,65 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         panel.add(field, gbc);
     }
     
+    /**
+     * A file system path (e.g. ./qdrant_local) selects the in-process index instead of Qdrant Cloud
+     */
+    private static boolean isLocalPath(String url) {
+        return url.startsWith(".") || url.startsWith("/") || url.startsWith("~")
+            || url.startsWith("file:") || url.matches("^[A-Za-z]:[\\\\/].*");
+    }
+    
+    private static Path localIndexDirectory(String url) {
+        if (url.startsWith("file:")) {
+            return Paths.get(URI.create(url));
+        }
+        if (url.startsWith("~")) {
+            return Paths.get(System.getProperty("user.home") + url.substring(1));
+        }
+        return Paths.get(url);
+    }
+    
     private void handleSaveSettings(ActionEvent e) {
         // Save Neo4j settings
         preferences.setNeo4jUri(neo4jUriField.getText());
         preferences.setNeo4jUsername(neo4jUsernameField.getText());
         preferences.setNeo4jPassword(new String(neo4jPasswordField.getPassword()));
         preferences.setNeo4jDatabase(neo4jDatabaseField.getText());
+        preferences.setNeo4jSyncProperty(neo4jSyncPropertyField.getText());
+        preferences.setNeo4jSyncIntervalMinutes((Integer) neo4jSyncIntervalSpinner.getValue());
+        preferences.setNeo4jPoolSize((Integer) neo4jPoolSizeSpinner.getValue());
+        preferences.setNeo4jPoolAcquisitionTimeoutSeconds((Integer) neo4jPoolAcquisitionTimeoutSpinner.getValue());
+        preferences.setNeo4jPoolLifetimeMinutes((Integer) neo4jPoolLifetimeSpinner.getValue());
+        preferences.setNeo4jPoolLivenessCheckSeconds((Integer) neo4jPoolLivenessSpinner.getValue());
+        preferences.setNeo4jFetchSize((Integer) neo4jFetchSizeSpinner.getValue());
         
         // Save vector store settings
         preferences.setVectorStoreCollection(vectorStoreCollectionField.getText());
+        preferences.setVectorStoreQuantization(((VectorQuantization) quantizationCombo.getSelectedItem()).name());
         preferences.setQdrantUrl(qdrantUrlField.getText());
         preferences.setQdrantApiKey(new String(qdrantApiKeyField.getPassword()));
+        preferences.setQdrantUpsertBatchSize((Integer) upsertBatchSizeSpinner.getValue());
+        preferences.setQdrantUpsertConcurrency((Integer) upsertConcurrencySpinner.getValue());
+        preferences.setQdrantUpsertFireAndForget(fireAndForgetUpsertsCheckBox.isSelected());
+        preferences.setLocalIndexM((Integer) localIndexMSpinner.getValue());
+        preferences.setLocalIndexEfConstruction((Integer) localIndexEfConstructionSpinner.getValue());
+        preferences.setLocalIndexEfSearch((Integer) localIndexEfSearchSpinner.getValue());
+        preferences.setLocalIndexMetric(((DistanceMetric) localIndexMetricCombo.getSelectedItem()).name());
         
         // Save model settings
         preferences.setEmbeddingModel((String) embeddingModelCombo.getSelectedItem());
         preferences.setEmbeddingApiKey(new String(embeddingApiKeyField.getPassword()));
+        preferences.setEmbeddingConcurrency((Integer) embeddingConcurrencySpinner.getValue());
         preferences.setAiModel((String) aiModelCombo.getSelectedItem());
         preferences.setAiApiKey(new String(aiApiKeyField.getPassword()));
+        preferences.setAiLocalUrl(aiLocalUrlField.getText());
+        preferences.setAiContextTokens((Integer) aiContextTokensSpinner.getValue());
+        preferences.setAiAnswerTokens((Integer) aiAnswerTokensSpinner.getValue());
+        preferences.setGraphExpansionHops((Integer) graphExpansionHopsSpinner.getValue());
+        preferences.setGraphExpansionNodes((Integer) graphExpansionNodesSpinner.getValue());
+        preferences.setQueryCacheTtlMinutes((Integer) queryCacheTtlSpinner.getValue());
+        preferences.setQueryCacheSimilarity((Double) queryCacheSimilaritySpinner.getValue());
+        preferences.setQueryCacheAnswers(queryCacheAnswersCheckBox.isSelected());
         
         JOptionPane.showMessageDialog(this, "Settings saved successfully!", 
             "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -291,15 +492,25 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
+                // Release the previous connection first: a persistent local index must not stay open twice
+                closeServices();
+                
                 // Connect to Neo4j
                 neo4jService = new Neo4jService(
                     neo4jUriField.getText(),
                     neo4jUsernameField.getText(),
                     new String(neo4jPasswordField.getPassword()),
-                    neo4jDatabaseField.getText()
+                    neo4jDatabaseField.getText(),
+                    new Neo4jService.PoolSettings(
+                        (Integer) neo4jPoolSizeSpinner.getValue(),
+                        (Integer) neo4jPoolAcquisitionTimeoutSpinner.getValue(),
+                        (Integer) neo4jPoolLifetimeSpinner.getValue(),
+                        (Integer) neo4jPoolLivenessSpinner.getValue(),
+                        (Integer) neo4jFetchSizeSpinner.getValue()
+                    )
                 );
                 
-                // Create Qdrant Cloud vector store
+                // Create the vector store: in-process for a local path, Qdrant Cloud otherwise
                 String qdrantUrl = qdrantUrlField.getText();
                 String apiKey = new String(qdrantApiKeyField.getPassword());
                 
@@ -307,16 +518,44 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
                     throw new RuntimeException("Qdrant Cloud URL is required");
                 }
                 
-                vectorStore = new QdrantVectorStore(
-                    vectorStoreCollectionField.getText(),
-                    qdrantUrl,
-                    apiKey.isEmpty() ? null : apiKey
-                );
+                if (isLocalPath(qdrantUrl)) {
+                    vectorStore = HnswVectorStore.open(
+                        localIndexDirectory(qdrantUrl).resolve(vectorStoreCollectionField.getText()),
+                        (DistanceMetric) localIndexMetricCombo.getSelectedItem(),
+                        (Integer) localIndexMSpinner.getValue(),
+                        (Integer) localIndexEfConstructionSpinner.getValue(),
+                        (Integer) localIndexEfSearchSpinner.getValue(),
+                        (VectorQuantization) quantizationCombo.getSelectedItem()
+                    );
+                } else {
+                    QdrantVectorStore qdrantStore = new QdrantVectorStore(
+                        vectorStoreCollectionField.getText(),
+                        qdrantUrl,
+                        apiKey.isEmpty() ? null : apiKey,
+                        (VectorQuantization) quantizationCombo.getSelectedItem()
+                    );
+                    qdrantStore.configureUpserts(
+                        (Integer) upsertBatchSizeSpinner.getValue(),
+                        (Integer) upsertConcurrencySpinner.getValue(),
+                        fireAndForgetUpsertsCheckBox.isSelected()
+                    );
+                    vectorStore = qdrantStore;
+                }
+                
+                // Open the on-disk embedding cache once; it is shared across reconnects
+                if (embeddingCache == null) {
+                    try {
+                        embeddingCache = EmbeddingCache.openDefault();
+                    } catch (Exception ex) {
+                        logger.warn("Embedding cache unavailable, continuing without it", ex);
+                    }
+                }
                 
                 // Create embedding service
                 embeddingService = new EmbeddingService(
                     (String) embeddingModelCombo.getSelectedItem(),
-                    new String(embeddingApiKeyField.getPassword())
+                    new String(embeddingApiKeyField.getPassword()),
+                    embeddingCache
                 );
                 
                 // Initialize RAG service
@@ -324,9 +563,30 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
                     neo4jService,
                     vectorStore,
                     embeddingService,
-                    (String) aiModelCombo.getSelectedItem(),
-                    new String(aiApiKeyField.getPassword())
+                    ChatProvider.forModel(
+                        (String) aiModelCombo.getSelectedItem(),
+                        new String(aiApiKeyField.getPassword()),
+                        aiLocalUrlField.getText()
+                    ),
+                    (Integer) embeddingConcurrencySpinner.getValue()
+                );
+                ragService.configureTokenBudget(
+                    (Integer) aiContextTokensSpinner.getValue(),
+                    (Integer) aiAnswerTokensSpinner.getValue()
+                );
+                ragService.configureGraphExpansion(
+                    (Integer) graphExpansionHopsSpinner.getValue(),
+                    (Integer) graphExpansionNodesSpinner.getValue()
                 );
+                ragService.configureQueryCache(
+                    (Integer) queryCacheTtlSpinner.getValue(),
+                    (Double) queryCacheSimilaritySpinner.getValue(),
+                    queryCacheAnswersCheckBox.isSelected()
+                );
+                
+                // Incremental graph sync runs off the UI thread on its own schedule
+                graphSyncScheduler = new GraphSyncScheduler(ragService, preferences, neo4jSyncPropertyField.getText());
+                graphSyncScheduler.start((Integer) neo4jSyncIntervalSpinner.getValue());
                 
                 return null;
             }
@@ -367,26 +627,54 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         
         resultsTextArea.setText("Processing RAG query...\n\n");
         executeButton.setEnabled(false);
+        cancelQueryButton.setEnabled(true);
         
-        new SwingWorker<String, Void>() {
+        queryWorker = new SwingWorker<String, String>() {
+            private boolean streaming;
+            
             @Override
             protected String doInBackground() throws Exception {
-                return ragService.executeRagQuery(query, getOWLModelManager().getActiveOntology());
+                return ragService.executeRagQuery(query, getOWLModelManager().getActiveOntology(), this::publish);
+            }
+            
+            /**
+             * Tokens published since the last call arrive together, so each batch costs one append and repaint
+             */
+            @Override
+            protected void process(List<String> tokens) {
+                if (!streaming) {
+                    streaming = true;
+                    resultsTextArea.setText("");
+                }
+                resultsTextArea.append(String.join("", tokens));
             }
             
             @Override
             protected void done() {
                 try {
                     String result = get();
-                    resultsTextArea.setText(result);
+                    if (!streaming) {
+                        resultsTextArea.setText(result);
+                    }
+                } catch (CancellationException ex) {
+                    resultsTextArea.append(streaming ? "\n\n[Query cancelled]" : "Query cancelled.");
                 } catch (Exception ex) {
                     resultsTextArea.setText("Error: " + ex.getMessage());
                     logger.error("RAG query failed", ex);
                 } finally {
                     executeButton.setEnabled(true);
+                    cancelQueryButton.setEnabled(false);
                 }
             }
-        }.execute();
+        };
+        queryWorker.execute();
+    }
+    
+    private void handleCancelQuery(ActionEvent e) {
+        // Interrupts the worker thread, which cancels every query stage still running
+        if (queryWorker != null) {
+            queryWorker.cancel(true);
+        }
     }
     
     private void handleIndexGraph(ActionEvent e) {
@@ -401,7 +689,10 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
             @Override
             protected Void doInBackground() throws Exception {
                 logger.info("Starting Neo4j graph indexing...");
+                // Read the watermark first so changes made during indexing are synced later
+                long watermark = neo4jService.getChangeWatermark(neo4jSyncPropertyField.getText());
                 ragService.indexGraphToVectorStore();
+                preferences.setNeo4jSyncWatermark(watermark);
                 return null;
             }
             
@@ -409,7 +700,7 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
             protected void done() {
                 try {
                     get();
-                    QdrantVectorStore.CollectionStats stats = vectorStore.getStats();
+                    VectorStore.CollectionStats stats = vectorStore.getStats();
                     JOptionPane.showMessageDialog(RagQueryPanel.this,
                         "Successfully indexed Neo4j graph!\n\nTotal vectors: " + stats.getVectorsCount(),
                         "Indexing Complete", JOptionPane.INFORMATION_MESSAGE);
@@ -427,6 +718,44 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         }.execute();
     }
     
+    private void handleSyncGraph(ActionEvent e) {
+        if (ragService == null) {
+            JOptionPane.showMessageDialog(this,
+                "Please connect to services first!",
+                "Not Connected", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                logger.info("Starting Neo4j graph sync...");
+                return graphSyncScheduler.syncNow().get();
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    long watermark = get();
+                    VectorStore.CollectionStats stats = vectorStore.getStats();
+                    JOptionPane.showMessageDialog(RagQueryPanel.this,
+                        "Successfully synced Neo4j changes!\n\nWatermark: " + watermark
+                            + "\nTotal vectors: " + stats.getVectorsCount(),
+                        "Sync Complete", JOptionPane.INFORMATION_MESSAGE);
+                    logger.info("Graph sync completed successfully");
+                    
+                    // Auto-refresh stats
+                    handleViewStats(null);
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(RagQueryPanel.this,
+                        "Graph sync failed: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                    logger.error("Graph sync failed", ex);
+                }
+            }
+        }.execute();
+    }
+    
     private void handleIndexOntology(ActionEvent e) {
         if (ragService == null) {
             JOptionPane.showMessageDialog(this,
@@ -446,7 +775,15 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
             @Override
             protected Void doInBackground() throws Exception {
                 logger.info("Starting ontology indexing...");
-                ragService.indexOntologyToVectorStore(getOWLModelManager().getActiveOntology());
+                // A full run re-chunks every entity and deletes the vectors of removed ones,
+                // so it covers every pending change
+                Set<OWLEntity> pending = ontologyChangeTracker.drainDirty();
+                try {
+                    ragService.indexOntologyToVectorStore(getOWLModelManager().getActiveOntology());
+                } catch (Exception ex) {
+                    ontologyChangeTracker.markDirty(pending);
+                    throw ex;
+                }
                 return null;
             }
             
@@ -454,7 +791,7 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
             protected void done() {
                 try {
                     get();
-                    QdrantVectorStore.CollectionStats stats = vectorStore.getStats();
+                    VectorStore.CollectionStats stats = vectorStore.getStats();
                     JOptionPane.showMessageDialog(RagQueryPanel.this,
                         "Successfully indexed ontology!\n\nTotal vectors: " + stats.getVectorsCount(),
                         "Indexing Complete", JOptionPane.INFORMATION_MESSAGE);
@@ -472,6 +809,62 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         }.execute();
     }
     
+    private void handleIndexOntologyChanges(ActionEvent e) {
+        if (ragService == null) {
+            JOptionPane.showMessageDialog(this,
+                "Please connect to services first!",
+                "Not Connected", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        if (getOWLModelManager().getActiveOntology() == null) {
+            JOptionPane.showMessageDialog(this,
+                "No ontology is currently loaded!",
+                "No Ontology", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        Set<OWLEntity> dirty = ontologyChangeTracker.drainDirty();
+        if (dirty.isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                "No ontology changes since the last indexing.",
+                "Nothing to Index", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        new SwingWorker<Void, String>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                logger.info("Starting incremental ontology indexing...");
+                ragService.indexOntologyChanges(getOWLModelManager().getActiveOntology(), dirty);
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    VectorStore.CollectionStats stats = vectorStore.getStats();
+                    JOptionPane.showMessageDialog(RagQueryPanel.this,
+                        "Successfully indexed " + dirty.size() + " changed entities!\n\nTotal vectors: "
+                            + stats.getVectorsCount(),
+                        "Indexing Complete", JOptionPane.INFORMATION_MESSAGE);
+                    logger.info("Incremental ontology indexing completed successfully");
+                    
+                    // Auto-refresh stats
+                    handleViewStats(null);
+                } catch (Exception ex) {
+                    // Keep the changes pending so the next run picks them up
+                    ontologyChangeTracker.markDirty(dirty);
+                    JOptionPane.showMessageDialog(RagQueryPanel.this,
+                        "Incremental ontology indexing failed: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                    logger.error("Incremental ontology indexing failed", ex);
+                }
+            }
+        }.execute();
+    }
+    
     private void handleViewStats(ActionEvent e) {
         if (vectorStore == null) {
             statsArea.setText("Vector Store Statistics:\n\nStatus: Not initialized\n\nPlease connect to services first.");
@@ -479,16 +872,81 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         }
         
         try {
-            QdrantVectorStore.CollectionStats stats = vectorStore.getStats();
+            VectorStore.CollectionStats stats = vectorStore.getStats();
             StringBuilder sb = new StringBuilder();
             sb.append("Vector Store Statistics:\n\n");
             sb.append("Collection: ").append(vectorStoreCollectionField.getText()).append("\n");
-            sb.append("Qdrant Cloud URL: ").append(qdrantUrlField.getText()).append("\n");
+            sb.append(vectorStore instanceof HnswVectorStore ? "Local Index Path: " : "Qdrant Cloud URL: ")
+              .append(qdrantUrlField.getText()).append("\n");
             sb.append("Total Vectors: ").append(stats.getVectorsCount()).append("\n");
             sb.append("Total Points: ").append(stats.getPointsCount()).append("\n");
-            sb.append("Storage Type: Qdrant Cloud\n");
+            sb.append("Storage Type: ").append(vectorStore instanceof HnswVectorStore
+                ? "Local HNSW (" + localIndexMetricCombo.getSelectedItem() + ")" : "Qdrant Cloud").append("\n");
+            sb.append("Quantization: ").append(quantizationCombo.getSelectedItem()).append("\n");
+            if (vectorStore instanceof HnswVectorStore) {
+                sb.append("Search Bytes per Vector: ")
+                  .append(((HnswVectorStore) vectorStore).getSearchBytesPerVector()).append("\n");
+            }
+            if (embeddingCache != null) {
+                sb.append("Embedding Cache: ").append(embeddingCache.size()).append(" entries, ")
+                  .append(embeddingCache.getHitCount()).append(" hits, ")
+                  .append(embeddingCache.getMissCount()).append(" misses\n");
+            }
+            if (ragService != null) {
+                QueryCache queryCache = ragService.getQueryCache();
+                sb.append("Query Cache: ").append(queryCache.size()).append(" queries, ")
+                  .append(queryCache.getEmbeddingHitCount()).append(" embedding hits, ")
+                  .append(queryCache.getResultHitCount()).append(" result hits, ")
+                  .append(queryCache.getMissCount()).append(" misses\n");
+                LexicalIndex lexicalIndex = ragService.getLexicalIndex();
+                sb.append("Lexical Index: ").append(lexicalIndex.size()).append(" chunks, ")
+                  .append(lexicalIndex.getTermCount()).append(" terms, ")
+                  .append(lexicalIndex.getPostingBytes() / 1024).append(" KB postings\n");
+            }
+            if (neo4jService != null && !neo4jService.getConnectionPoolMetrics().isEmpty()) {
+                // Summed over the pools of all servers
+                int inUse = 0;
+                int idle = 0;
+                int acquiring = 0;
+                long acquired = 0;
+                long timedOut = 0;
+                long acquisitionMillis = 0;
+                for (ConnectionPoolMetrics pool : neo4jService.getConnectionPoolMetrics()) {
+                    inUse += pool.inUse();
+                    idle += pool.idle();
+                    acquiring += pool.acquiring();
+                    acquired += pool.acquired();
+                    timedOut += pool.timedOutToAcquire();
+                    acquisitionMillis += pool.totalAcquisitionTime();
+                }
+                sb.append("Neo4j Pool: ").append(inUse).append(" in use, ")
+                  .append(idle).append(" idle, ")
+                  .append(acquiring).append(" waiting, ")
+                  .append(String.format("%.1f", acquired == 0 ? 0.0 : (double) acquisitionMillis / acquired))
+                  .append(" ms average acquisition wait, ")
+                  .append(timedOut).append(" acquisition timeouts\n");
+            }
             sb.append("Status: ").append(stats.getVectorsCount() > 0 ? "Ready" : "Empty - Please index data").append("\n\n");
             
+            if (ragService != null && ragService.getLastQueryTimings() != null) {
+                sb.append("Last Query Latency: ").append(ragService.getLastQueryTimings()).append("\n\n");
+            }
+            
+            if (ragService != null && ragService.getLastIndexingReport() != null) {
+                sb.append("Last Indexing Run:\n").append(ragService.getLastIndexingReport()).append("\n\n");
+            }
+            
+            if (graphSyncScheduler != null) {
+                sb.append("Graph Sync Watermark: ").append(preferences.getNeo4jSyncWatermark()).append("\n");
+                if (graphSyncScheduler.getLastSyncMillis() > 0) {
+                    sb.append("Last Graph Sync: ").append(new Date(graphSyncScheduler.getLastSyncMillis())).append("\n");
+                }
+                if (graphSyncScheduler.getLastError() != null) {
+                    sb.append("Last Graph Sync Error: ").append(graphSyncScheduler.getLastError().getMessage()).append("\n");
+                }
+                sb.append("\n");
+            }
+            
             if (stats.getVectorsCount() == 0) {
                 sb.append("No vectors indexed yet.\n");
                 sb.append("Use 'Index Neo4j Graph' or 'Index Current Ontology' buttons above.");
@@ -509,28 +967,83 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
         neo4jUsernameField.setText(preferences.getNeo4jUsername());
         neo4jPasswordField.setText(preferences.getNeo4jPassword());
         neo4jDatabaseField.setText(preferences.getNeo4jDatabase());
+        neo4jSyncPropertyField.setText(preferences.getNeo4jSyncProperty());
+        neo4jSyncIntervalSpinner.setValue(preferences.getNeo4jSyncIntervalMinutes());
+        neo4jPoolSizeSpinner.setValue(preferences.getNeo4jPoolSize());
+        neo4jPoolAcquisitionTimeoutSpinner.setValue(preferences.getNeo4jPoolAcquisitionTimeoutSeconds());
+        neo4jPoolLifetimeSpinner.setValue(preferences.getNeo4jPoolLifetimeMinutes());
+        neo4jPoolLivenessSpinner.setValue(preferences.getNeo4jPoolLivenessCheckSeconds());
+        neo4jFetchSizeSpinner.setValue(preferences.getNeo4jFetchSize());
         
         qdrantUrlField.setText(preferences.getQdrantUrl());
         qdrantApiKeyField.setText(preferences.getQdrantApiKey());
+        upsertBatchSizeSpinner.setValue(preferences.getQdrantUpsertBatchSize());
+        upsertConcurrencySpinner.setValue(preferences.getQdrantUpsertConcurrency());
+        fireAndForgetUpsertsCheckBox.setSelected(preferences.isQdrantUpsertFireAndForget());
+        localIndexMSpinner.setValue(preferences.getLocalIndexM());
+        localIndexEfConstructionSpinner.setValue(preferences.getLocalIndexEfConstruction());
+        localIndexEfSearchSpinner.setValue(preferences.getLocalIndexEfSearch());
+        try {
+            localIndexMetricCombo.setSelectedItem(DistanceMetric.valueOf(preferences.getLocalIndexMetric()));
+        } catch (IllegalArgumentException ex) {
+            localIndexMetricCombo.setSelectedItem(DistanceMetric.COSINE);
+        }
         vectorStoreCollectionField.setText(preferences.getVectorStoreCollection());
+        try {
+            quantizationCombo.setSelectedItem(VectorQuantization.valueOf(preferences.getVectorStoreQuantization()));
+        } catch (IllegalArgumentException ex) {
+            quantizationCombo.setSelectedItem(VectorQuantization.NONE);
+        }
         
         String embModel = preferences.getEmbeddingModel();
         if (embModel != null) {
             embeddingModelCombo.setSelectedItem(embModel);
         }
         embeddingApiKeyField.setText(preferences.getEmbeddingApiKey());
+        embeddingConcurrencySpinner.setValue(preferences.getEmbeddingConcurrency());
         
         String aiModel = preferences.getAiModel();
         if (aiModel != null) {
             aiModelCombo.setSelectedItem(aiModel);
         }
         aiApiKeyField.setText(preferences.getAiApiKey());
+        aiLocalUrlField.setText(preferences.getAiLocalUrl());
+        aiContextTokensSpinner.setValue(preferences.getAiContextTokens());
+        aiAnswerTokensSpinner.setValue(preferences.getAiAnswerTokens());
+        graphExpansionHopsSpinner.setValue(preferences.getGraphExpansionHops());
+        graphExpansionNodesSpinner.setValue(preferences.getGraphExpansionNodes());
+        queryCacheTtlSpinner.setValue(preferences.getQueryCacheTtlMinutes());
+        queryCacheSimilaritySpinner.setValue(preferences.getQueryCacheSimilarity());
+        queryCacheAnswersCheckBox.setSelected(preferences.isQueryCacheAnswers());
     }
     
     @Override
     protected void disposeOWLView() {
+        if (ontologyChangeTracker != null) {
+            getOWLModelManager().removeOntologyChangeListener(ontologyChangeTracker);
+        }
+        closeServices();
+        if (embeddingCache != null) {
+            embeddingCache.close();
+        }
+    }
+    
+    /**
+     * Close the services of the current connection. The sync scheduler goes first so no sync is still
+     * writing when the RAG service and the stores it uses are closed.
+     */
+    private void closeServices() {
+        if (graphSyncScheduler != null) {
+            graphSyncScheduler.close();
+            graphSyncScheduler = null;
+        }
+        if (ragService != null) {
+            ragService.close();
+            ragService = null;
+        }
         if (neo4jService != null) {
             neo4jService.close();
+            neo4jService = null;
         }
         if (vectorStore != null) {
             try {
@@ -538,6 +1051,7 @@ public class RagQueryPanel extends AbstractOWLViewComponent {
             } catch (Exception e) {
                 logger.error("Error closing vector store", e);
             }
+            vectorStore = null;
         }
     }
 }
@@ -1,16 +1,20 @@
 package org.vidyaastra.protege.rag;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import okhttp3.*;
+import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Main RAG service that orchestrates Neo4j, Qdrant vector store, and AI models
@@ -19,219 +23,522 @@ public class RagService {
     
     private static final Logger logger = LoggerFactory.getLogger(RagService.class);
     
+    private static final int PIPELINE_BATCH_SIZE = 256;
+    private static final int PIPELINE_QUEUE_CAPACITY = 4;
+    
+    // Per-stage query timeouts
+    private static final long EMBEDDING_TIMEOUT_SECONDS = 30;
+    private static final long SEARCH_TIMEOUT_SECONDS = 30;
+    private static final long SUMMARY_TIMEOUT_SECONDS = 15;
+    private static final long SCHEMA_TIMEOUT_SECONDS = 15;
+    private static final long EXPANSION_TIMEOUT_SECONDS = 15;
+    // The generation timeout depends on the model and comes from the chat provider
+    
+    // Hits retrieved per query; the context builder picks from these within its token budget
+    private static final int SEARCH_CANDIDATES = 20;
+    static final int DEFAULT_ANSWER_MAX_TOKENS = 1000;
+    // Top hits whose graph neighbourhood is fetched
+    private static final int EXPANSION_SEEDS = 5;
+    static final int DEFAULT_EXPANSION_HOPS = 2;
+    static final int DEFAULT_EXPANSION_NODES = 40;
+    // Reciprocal rank fusion constant; damps the weight of the very first ranks
+    static final int RRF_K = 60;
+    // Prefix of the source ids of graph chunks
+    static final String GRAPH_SOURCE_ID_PREFIX = "neo4j:";
+    
     private final Neo4jService neo4jService;
-    private final QdrantVectorStore vectorStore;
+    private final VectorStore vectorStore;
     private final EmbeddingService embeddingService;
-    private final String aiModel;
-    private final String aiApiKey;
-    private final OkHttpClient httpClient;
-    private final Gson gson;
+    private final EmbeddingExecutor embeddingExecutor;
+    private final ChatProvider chatProvider;
+    private final ExecutorService queryExecutor;
+    private final LexicalIndex lexicalIndex = new LexicalIndex();
+    private volatile QueryStages.Timings lastQueryTimings;
+    private volatile IndexingPipeline.Report lastIndexingReport;
+    // Bumped whenever an indexing run writes to the vector store; cached retrievals are only valid for one version
+    private final AtomicLong indexVersion = new AtomicLong();
+    private volatile QueryCache queryCache = new QueryCache();
+    private volatile boolean reuseCachedAnswers = false;
+    private volatile ContextBuilder contextBuilder = new ContextBuilder();
+    private volatile int answerMaxTokens = DEFAULT_ANSWER_MAX_TOKENS;
+    private volatile int expansionHops = DEFAULT_EXPANSION_HOPS;
+    private volatile int expansionNodes = DEFAULT_EXPANSION_NODES;
     
-    public RagService(Neo4jService neo4jService, QdrantVectorStore vectorStore,
+    public RagService(Neo4jService neo4jService, VectorStore vectorStore,
                      EmbeddingService embeddingService, String aiModel, String aiApiKey) {
+        this(neo4jService, vectorStore, embeddingService, aiModel, aiApiKey,
+            RagPreferences.DEFAULT_EMBEDDING_CONCURRENCY);
+    }
+    
+    public RagService(Neo4jService neo4jService, VectorStore vectorStore,
+                     EmbeddingService embeddingService, String aiModel, String aiApiKey,
+                     int embeddingConcurrency) {
+        this(neo4jService, vectorStore, embeddingService,
+            ChatProvider.forModel(aiModel, aiApiKey, ChatProvider.DEFAULT_LOCAL_URL), embeddingConcurrency);
+    }
+    
+    public RagService(Neo4jService neo4jService, VectorStore vectorStore,
+                     EmbeddingService embeddingService, ChatProvider chatProvider,
+                     int embeddingConcurrency) {
         this.neo4jService = neo4jService;
         this.vectorStore = vectorStore;
         this.embeddingService = embeddingService;
-        this.aiModel = extractModelName(aiModel);
-        this.aiApiKey = aiApiKey;
-        this.httpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(90, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
-        this.gson = new Gson();
+        this.embeddingExecutor = new EmbeddingExecutor(embeddingService, embeddingConcurrency);
+        this.chatProvider = chatProvider;
+        this.queryExecutor = newQueryExecutor();
         
-        logger.info("Initialized RagService with AI model: {} and Qdrant Cloud vector store", 
-            this.aiModel);
+        logger.info("Initialized RagService with AI model: {} ({})",
+            chatProvider.getModel(), chatProvider.getClass().getSimpleName());
     }
     
-    private String extractModelName(String selection) {
-        if (selection.contains("(")) {
-            return selection.substring(0, selection.indexOf("(")).trim();
+    /**
+     * Executor for query stages: virtual threads when the runtime has them (Java 21+), since the
+     * stages mostly wait on I/O; otherwise a cached pool of daemon threads
+     */
+    private static ExecutorService newQueryExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "rag-query");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        return selection;
     }
     
     /**
-     * Execute a RAG-enhanced query
+     * Execute a RAG-enhanced query.
+     *
+     * The ontology summary and graph schema do not depend on the query embedding, so they are
+     * fetched while the query is embedded and searched. Each stage has its own timeout; interrupting
+     * the calling thread cancels every stage still running.
      */
     public String executeRagQuery(String userQuery, OWLOntology ontology) throws Exception {
+        return executeRagQuery(userQuery, ontology, null);
+    }
+    
+    /**
+     * Execute a RAG-enhanced query, streaming the answer as it is generated
+     *
+     * @param onToken Receives each piece of the answer as it arrives, on a query executor thread;
+     *                a cached answer arrives in one piece. Null disables streaming.
+     * @return The complete answer
+     */
+    public String executeRagQuery(String userQuery, OWLOntology ontology, Consumer<String> onToken) throws Exception {
         logger.info("Executing RAG query: {}", userQuery);
         
-        // Step 1: Generate embedding for the user query
-        List<Float> queryEmbedding = embeddingService.generateEmbedding(userQuery);
-        
-        // Convert to float[] for FileBasedVectorStore
-        float[] queryVector = new float[queryEmbedding.size()];
-        for (int i = 0; i < queryEmbedding.size(); i++) {
-            queryVector[i] = queryEmbedding.get(i);
+        QueryCache cache = queryCache;
+        long version = indexVersion.get();
+        QueryStages stages = new QueryStages(queryExecutor);
+        try {
+            // Lexical (BM25) search needs no embedding and runs alongside the vector search
+            CompletableFuture<List<VectorStore.SearchResult>> lexical = stages.start("lexical", SEARCH_TIMEOUT_SECONDS,
+                () -> lexicalIndex.search(userQuery, SEARCH_CANDIDATES));
+            
+            // Step 1: Generate embedding for the user query, unless the same query was embedded recently
+            CompletableFuture<float[]> embedding = stages.start("embedding", EMBEDDING_TIMEOUT_SECONDS, () -> {
+                float[] cachedVector = cache.getEmbedding(userQuery);
+                if (cachedVector != null) {
+                    return cachedVector;
+                }
+                float[] vector = embeddingService.generateEmbedding(userQuery);
+                cache.putEmbedding(userQuery, vector);
+                return vector;
+            });
+            
+            // Step 2: Search for relevant graph chunks, reusing the vector hits of the same or a
+            // near-duplicate query against the same index version, and fuse with the lexical hits
+            CompletableFuture<Retrieval> retrieval = embedding.thenCompose(vector ->
+                stages.start("search", SEARCH_TIMEOUT_SECONDS, () -> {
+                    QueryCache.Entry cached = cache.findResults(userQuery, vector, version);
+                    return cached != null
+                        ? new Retrieval(vector, cached.getSearchResults(), null, cached)
+                        : new Retrieval(vector,
+                            vectorStore.search(vector, SEARCH_CANDIDATES, contextBuilder.needsVectors()), null, null);
+                })).thenCombine(lexical, (found, lexicalHits) ->
+                    new Retrieval(found.queryVector, found.vectorResults, lexicalHits, found.cached));
+            
+            // Steps 3-4: Ontology summary and graph schema (cached between indexing runs), concurrently
+            CompletableFuture<String> summary = stages.start("ontologySummary", SUMMARY_TIMEOUT_SECONDS,
+                () -> buildOntologySummary(ontology));
+            CompletableFuture<String> schema = stages.start("schema", SCHEMA_TIMEOUT_SECONDS,
+                neo4jService::getGraphSchema);
+            
+            Retrieval retrieved = QueryStages.await(retrieval);
+            String ontologySummary = QueryStages.await(summary);
+            if (retrieved.cached != null && reuseCachedAnswers) {
+                String answer = retrieved.cached.getAnswer(userQuery, retrieved.lexicalResults,
+                    answerBasis(ontologySummary, QueryStages.await(schema)));
+                if (answer != null) {
+                    logger.info("Answered RAG query from the query cache");
+                    if (onToken != null) {
+                        onToken.accept(answer);
+                    }
+                    return answer;
+                }
+            }
+            
+            // Graph expansion: the neighbourhood of the top hits, in one round trip
+            List<Long> seeds = graphSeeds(retrieved.searchResults);
+            int hops = expansionHops;
+            CompletableFuture<Neo4jService.Subgraph> expansion = hops > 0 && !seeds.isEmpty()
+                ? stages.start("graphExpansion", EXPANSION_TIMEOUT_SECONDS,
+                    () -> neo4jService.expandNeighbourhood(seeds, hops, expansionNodes))
+                : CompletableFuture.completedFuture(null);
+            String graphSchema = QueryStages.await(schema);
+            
+            // Step 5: Build context from the most relevant non-redundant search results that fit the budget
+            ContextBuilder.Selection selection = contextBuilder.select(retrieved.searchResults);
+            logger.info("Context: {}", selection);
+            Neo4jService.Subgraph subgraph = QueryStages.await(expansion);
+            String retrievedContext = subgraph == null || subgraph.isEmpty()
+                ? buildContext(selection.getResults())
+                : buildContext(selection.getResults()) + subgraph.toText();
+            
+            // Step 6: Generate response using AI model with RAG context. A streamed answer only has
+            // to start within the generation timeout; the read timeout bounds pauses after that
+            AtomicBoolean firstToken = new AtomicBoolean();
+            String response = QueryStages.await(stages.start("generation", chatProvider.getGenerationTimeoutSeconds(),
+                firstToken::get,
+                () -> generateAIResponse(userQuery, retrievedContext, graphSchema, ontologySummary, stages,
+                    onToken == null ? null : firstTokenTimer(stages, firstToken, onToken))));
+            
+            cache.putResults(userQuery, retrieved.queryVector, version, retrieved.vectorResults,
+                retrieved.lexicalResults, answerBasis(ontologySummary, graphSchema), response);
+            return response;
+        } catch (Exception e) {
+            stages.cancel();
+            throw e;
+        } finally {
+            lastQueryTimings = stages.finish();
+            logger.info("RAG query latency: {}", lastQueryTimings);
         }
+    }
+    
+    /**
+     * Prompt input besides the retrieval that a cached answer depends on; the index version is
+     * matched by the query cache itself
+     */
+    private static String answerBasis(String ontologySummary, String graphSchema) {
+        return ontologySummary + "\n" + graphSchema;
+    }
+    
+    /**
+     * Neo4j node ids of the top graph hits, best first
+     */
+    private static List<Long> graphSeeds(List<VectorStore.SearchResult> searchResults) {
+        List<Long> seeds = new ArrayList<>();
+        for (VectorStore.SearchResult result : searchResults) {
+            Object nodeId = result.getMetadata().get("node_id");
+            if (nodeId instanceof Number) {
+                seeds.add(((Number) nodeId).longValue());
+                if (seeds.size() == EXPANSION_SEEDS) {
+                    break;
+                }
+            }
+        }
+        return seeds;
+    }
+    
+    /**
+     * Token listener that records the time to the first token
+     *
+     * @param received Set when the first token arrives
+     */
+    private static Consumer<String> firstTokenTimer(QueryStages stages, AtomicBoolean received,
+                                                    Consumer<String> onToken) {
+        return token -> {
+            if (received.compareAndSet(false, true)) {
+                stages.mark("firstToken");
+            }
+            onToken.accept(token);
+        };
+    }
+    
+    /**
+     * Latency breakdown of the most recent query, or null if none ran yet
+     */
+    public QueryStages.Timings getLastQueryTimings() {
+        return lastQueryTimings;
+    }
+    
+    /**
+     * Index Neo4j graph data into vector store, deleting the vectors of nodes no longer in the graph
+     */
+    public void indexGraphToVectorStore() throws IOException, InterruptedException {
+        logger.info("Starting graph indexing to vector store...");
+        CacheSnapshot cacheBefore = CacheSnapshot.of(embeddingService.getCache());
+        
+        // Stream graph chunks from Neo4j through the extract -> embed -> upsert pipeline
+        IndexingPipeline.Report report = runPipeline(
+            neo4jService.streamGraphChunks(Neo4jService.DEFAULT_PAGE_SIZE),
+            Neo4jService.GraphChunk::getText,
+            RagService::describeGraphChunk);
+        int removed = removeDeletedGraphNodes();
+        neo4jService.invalidateGraphSchema();
+        
+        logger.info("Successfully indexed {} graph chunks to vector store ({} removed)", report.getIndexed(), removed);
+        cacheBefore.logDelta(embeddingService.getCache());
+    }
+    
+    /**
+     * Re-index only graph nodes changed since the watermark, together with their 1-hop neighbourhood.
+     *
+     * Deleted nodes are not detected, since that means checking every stored node against the graph;
+     * they are removed by {@link #removeDeletedGraphNodes()}, which runs on a full index and on the
+     * slower cadence of {@link GraphSyncScheduler}. Deleted relationships are not detected either;
+     * see {@link Neo4jService#findChangedNodes(String, long)}.
+     *
+     * @param changeProperty Node/relationship property holding the last modification time in epoch millis
+     * @param sinceWatermark Watermark returned by the previous sync (or read before the last full index)
+     * @return Watermark to pass to the next sync
+     */
+    public long syncGraphChangesToVectorStore(String changeProperty, long sinceWatermark)
+            throws IOException, InterruptedException {
+        logger.info("Starting incremental graph sync since watermark {}...", sinceWatermark);
+        Neo4jService.GraphChangeSet changes = neo4jService.findChangedNodes(changeProperty, sinceWatermark);
+        if (changes.getNodeIds().isEmpty()) {
+            logger.info("No graph changes since watermark {}", sinceWatermark);
+            return changes.getWatermark();
+        }
+        CacheSnapshot cacheBefore = CacheSnapshot.of(embeddingService.getCache());
+        
+        IndexingPipeline.Report report = runPipeline(
+            neo4jService.streamGraphChunks(changes.getNodeIds(), Neo4jService.DEFAULT_PAGE_SIZE),
+            Neo4jService.GraphChunk::getText,
+            RagService::describeGraphChunk);
+        neo4jService.invalidateGraphSchema();
+        
+        logger.info("Synced {} changed graph nodes: {} chunks re-indexed, {} unchanged, watermark now {}",
+            changes.getChangedCount(), report.getIndexed(), report.getSkipped(), changes.getWatermark());
+        cacheBefore.logDelta(embeddingService.getCache());
+        return changes.getWatermark();
+    }
+    
+    private static VectorStore.VectorData describeGraphChunk(Neo4jService.GraphChunk chunk) {
+        // Convert metadata to payload format
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("text", chunk.getText());
+        payload.putAll(chunk.getMetadata());
+        payload.put("node_id", chunk.getNodeId());
+        return new VectorStore.VectorData(graphSourceId(chunk.getNodeId()), null, payload);
+    }
+    
+    /**
+     * Source id of a Neo4j node; determines its vector store point id
+     */
+    static String graphSourceId(long nodeId) {
+        return GRAPH_SOURCE_ID_PREFIX + nodeId;
+    }
+    
+    /**
+     * Delete the vectors of graph nodes that no longer exist. Deletions leave no change property
+     * behind, so every stored node id is checked against the graph instead.
+     *
+     * @return Number of nodes removed
+     */
+    public int removeDeletedGraphNodes() {
+        Map<Long, String> stored = new HashMap<>();
+        for (String sourceId : vectorStore.findSourceIds(GRAPH_SOURCE_ID_PREFIX)) {
+            stored.put(Long.parseLong(sourceId.substring(GRAPH_SOURCE_ID_PREFIX.length())), sourceId);
+        }
+        stored.keySet().removeAll(neo4jService.findExistingNodeIds(stored.keySet()));
+        deleteSources(stored.values());
+        return stored.size();
+    }
+    
+    /**
+     * Stage throughput and queue depths of the most recent indexing run, or null if none ran yet
+     */
+    public IndexingPipeline.Report getLastIndexingReport() {
+        return lastIndexingReport;
+    }
+    
+    /**
+     * Index current ontology into vector store, deleting the vectors of entities no longer in it
+     */
+    public void indexOntologyToVectorStore(OWLOntology ontology) throws IOException, InterruptedException {
+        logger.info("Starting ontology indexing to vector store...");
+        CacheSnapshot cacheBefore = CacheSnapshot.of(embeddingService.getCache());
         
-        // Step 2: Search for relevant graph chunks in vector store
-        List<QdrantVectorStore.SearchResult> searchResults = vectorStore.search(queryVector, 5);
-        
-        // Step 3: Retrieve graph schema from Neo4j
-        String graphSchema = neo4jService.getGraphSchema();
-        
-        // Step 4: Build context from search results
-        String retrievedContext = buildContext(searchResults);
+        // Chunk text keyed by source id (entity kind + IRI)
+        Map<String, String> chunks = new OntologyChunker(ontology).chunkAll();
         
-        // Step 5: Get ontology summary
-        String ontologySummary = buildOntologySummary(ontology);
+        IndexingPipeline.Report report = indexOntologyChunks(chunks);
         
-        // Step 6: Generate response using AI model with RAG context
-        String response = generateAIResponse(userQuery, retrievedContext, graphSchema, ontologySummary);
+        // Stored ontology points without a chunk belong to entities removed since they were indexed
+        Set<String> removed = vectorStore.findSourceIds(OntologyChunker.SOURCE_ID_PREFIX);
+        removed.removeAll(chunks.keySet());
+        deleteSources(removed);
         
-        return response;
+        logger.info("Successfully indexed {} ontology elements to vector store ({} unchanged, {} removed)",
+            report.getIndexed(), report.getSkipped(), removed.size());
+        cacheBefore.logDelta(embeddingService.getCache());
     }
     
     /**
-     * Index Neo4j graph data into vector store
+     * Re-index only the given dirty entities (as collected by an {@link OntologyChangeTracker}).
+     * Entities still in the ontology are re-chunked and re-embedded, together with neighbours whose
+     * chunk text mentions them; vectors of entities no longer in the ontology are deleted.
      */
-    public void indexGraphToVectorStore() throws IOException {
-        logger.info("Starting graph indexing to vector store...");
-        
-        // Get graph chunks from Neo4j
-        List<Neo4jService.GraphChunk> graphChunks = neo4jService.getGraphChunks();
-        
-        // Generate embeddings for each chunk
-        List<String> texts = new ArrayList<>();
-        for (Neo4jService.GraphChunk chunk : graphChunks) {
-            texts.add(chunk.getText());
+    public void indexOntologyChanges(OWLOntology ontology, Set<OWLEntity> dirtyEntities)
+            throws IOException, InterruptedException {
+        logger.info("Starting incremental ontology indexing for {} changed entities...", dirtyEntities.size());
+        CacheSnapshot cacheBefore = CacheSnapshot.of(embeddingService.getCache());
+        OntologyChunker chunker = new OntologyChunker(ontology);
+        
+        Set<OWLEntity> affected = new LinkedHashSet<>(dirtyEntities);
+        for (OWLEntity entity : dirtyEntities) {
+            // Any entity in an axiom mentioning a changed entity may render it in its chunk
+            ontology.getReferencingAxioms(entity).forEach(axiom ->
+                axiom.getSignature().stream()
+                    .filter(OntologyChunker::isChunked)
+                    .forEach(affected::add));
         }
         
-        List<List<Float>> embeddings = embeddingService.generateEmbeddings(texts);
-        
-        // Prepare vector data for Qdrant
-        List<QdrantVectorStore.VectorData> vectorDataList = new ArrayList<>();
-        for (int i = 0; i < graphChunks.size(); i++) {
-            Neo4jService.GraphChunk chunk = graphChunks.get(i);
-            List<Float> embedding = embeddings.get(i);
-            
-            // Convert to float[]
-            float[] vector = new float[embedding.size()];
-            for (int j = 0; j < embedding.size(); j++) {
-                vector[j] = embedding.get(j);
+        Map<String, String> chunks = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        for (OWLEntity entity : affected) {
+            if (ontology.containsEntityInSignature(entity)) {
+                chunks.put(OntologyChunker.sourceId(entity), chunker.chunk(entity));
+            } else {
+                removed.add(OntologyChunker.sourceId(entity));
             }
-            
-            // Convert metadata to payload format
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("text", chunk.getText());
-            payload.putAll(chunk.getMetadata());
-            
-            vectorDataList.add(new QdrantVectorStore.VectorData("graph_" + i, vector, payload));
         }
         
-        // Upsert to vector store
-        vectorStore.upsert(vectorDataList);
+        deleteSources(removed);
+        IndexingPipeline.Report report = indexOntologyChunks(chunks);
         
-        logger.info("Successfully indexed {} graph chunks to vector store", graphChunks.size());
+        logger.info("Incrementally indexed {} of {} affected ontology elements ({} unchanged, {} removed)",
+            report.getIndexed(), affected.size(), report.getSkipped(), removed.size());
+        cacheBefore.logDelta(embeddingService.getCache());
     }
     
     /**
-     * Index current ontology into vector store
+     * Delete the vectors and lexical entries of sources that no longer exist
      */
-    public void indexOntologyToVectorStore(OWLOntology ontology) throws IOException {
-        logger.info("Starting ontology indexing to vector store...");
-        
-        List<String> chunks = new ArrayList<>();
-        
-        // Extract classes with their superclasses
-        ontology.getClassesInSignature().forEach(cls -> {
-            StringBuilder chunk = new StringBuilder();
-            chunk.append(String.format("OWL Class: %s", cls.getIRI().getShortForm()));
-            
-            // Add superclass information
-            ontology.getSubClassAxiomsForSubClass(cls).forEach(axiom -> {
-                chunk.append(String.format(" subClassOf %s", 
-                    axiom.getSuperClass().toString().replaceAll("<.*#(.+)>", "$1")));
-            });
-            
-            chunks.add(chunk.toString());
-        });
-        
-        // Extract individuals with their types and relationships
-        ontology.getIndividualsInSignature().forEach(ind -> {
-            StringBuilder chunk = new StringBuilder();
-            chunk.append(String.format("Individual: %s", ind.getIRI().getShortForm()));
-            
-            // Add class types (rdf:type)
-            ontology.getClassAssertionAxioms(ind).forEach(axiom -> {
-                String className = axiom.getClassExpression().toString()
-                    .replaceAll("<.*#(.+)>", "$1");
-                chunk.append(String.format(" type:%s", className));
-            });
-            
-            // Add object property assertions (relationships)
-            ontology.getObjectPropertyAssertionAxioms(ind).forEach(axiom -> {
-                String property = axiom.getProperty().toString()
-                    .replaceAll("<.*#(.+)>", "$1");
-                String target = axiom.getObject().toString()
-                    .replaceAll("<.*#(.+)>", "$1");
-                chunk.append(String.format(" %s:%s", property, target));
-            });
-            
-            // Add data property assertions
-            ontology.getDataPropertyAssertionAxioms(ind).forEach(axiom -> {
-                String property = axiom.getProperty().toString()
-                    .replaceAll("<.*#(.+)>", "$1");
-                String value = axiom.getObject().getLiteral();
-                chunk.append(String.format(" %s:'%s'", property, value));
-            });
-            
-            chunks.add(chunk.toString());
-        });
-        
-        // Extract object properties with domain/range
-        ontology.getObjectPropertiesInSignature().forEach(prop -> {
-            StringBuilder chunk = new StringBuilder();
-            chunk.append(String.format("OWL Object Property: %s", prop.getIRI().getShortForm()));
-            
-            ontology.getObjectPropertyDomainAxioms(prop).forEach(axiom -> {
-                chunk.append(String.format(" domain:%s", 
-                    axiom.getDomain().toString().replaceAll("<.*#(.+)>", "$1")));
+    private void deleteSources(Collection<String> sourceIds) {
+        if (!sourceIds.isEmpty()) {
+            vectorStore.delete(sourceIds);
+            lexicalIndex.delete(sourceIds);
+            indexVersion.incrementAndGet();
+        }
+    }
+    
+    private IndexingPipeline.Report indexOntologyChunks(Map<String, String> chunks)
+            throws IOException, InterruptedException {
+        // Embed and upsert changed chunks; unchanged ones are skipped by content hash
+        return runPipeline(
+            chunks.entrySet(),
+            Map.Entry::getValue,
+            entry -> {
+                Map<String, Object> payload = new HashMap<>();
+                payload.put("text", entry.getValue());
+                payload.put("source", "ontology");
+                return new VectorStore.VectorData(entry.getKey(), null, payload);
             });
-            
-            ontology.getObjectPropertyRangeAxioms(prop).forEach(axiom -> {
-                chunk.append(String.format(" range:%s", 
-                    axiom.getRange().toString().replaceAll("<.*#(.+)>", "$1")));
+    }
+    
+    private <T> IndexingPipeline.Report runPipeline(Iterable<T> source, Function<T, String> textOf,
+                                                    Function<T, VectorStore.VectorData> describe)
+            throws IOException, InterruptedException {
+        IndexingPipeline<T> pipeline = new IndexingPipeline<>(
+            embeddingExecutor, vectorStore, PIPELINE_BATCH_SIZE, PIPELINE_QUEUE_CAPACITY);
+        try {
+            // Every chunk passes through describe, including those the pipeline skips as unchanged,
+            // so the lexical index is complete after any full indexing run
+            IndexingPipeline.Report report = pipeline.run(source, textOf, item -> {
+                VectorStore.VectorData record = describe.apply(item);
+                lexicalIndex.add(record.getId(), record.getMetadata());
+                return record;
             });
-            
-            chunks.add(chunk.toString());
-        });
-        
-        // Generate embeddings
-        List<List<Float>> embeddings = embeddingService.generateEmbeddings(chunks);
-        
-        // Prepare vector data for Qdrant
-        List<QdrantVectorStore.VectorData> vectorDataList = new ArrayList<>();
-        for (int i = 0; i < chunks.size(); i++) {
-            List<Float> embedding = embeddings.get(i);
-            float[] vector = new float[embedding.size()];
-            for (int j = 0; j < embedding.size(); j++) {
-                vector[j] = embedding.get(j);
+            lastIndexingReport = report;
+            return report;
+        } finally {
+            // Even a failed run may have written some points
+            indexVersion.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Replace the query cache
+     *
+     * @param ttlMinutes Minutes a cached query stays valid; 0 disables caching
+     * @param similarityThreshold Minimum cosine similarity for a near-duplicate query to reuse a cached retrieval
+     * @param reuseAnswers Whether a cache hit returns the cached answer instead of only the cached
+     *                     retrieval; see {@link QueryCache} for when an answer is reused
+     */
+    public void configureQueryCache(int ttlMinutes, double similarityThreshold, boolean reuseAnswers) {
+        this.queryCache = new QueryCache(QueryCache.DEFAULT_MAX_ENTRIES, ttlMinutes, TimeUnit.MINUTES,
+            similarityThreshold);
+        this.reuseCachedAnswers = reuseAnswers;
+    }
+    
+    /**
+     * Set the prompt and answer token budgets
+     *
+     * @param contextTokens Maximum tokens of retrieved context in the prompt
+     * @param answerTokens Maximum tokens the model may generate
+     */
+    public void configureTokenBudget(int contextTokens, int answerTokens) {
+        this.contextBuilder = new ContextBuilder(contextTokens, ContextBuilder.DEFAULT_MMR_LAMBDA);
+        this.answerMaxTokens = answerTokens;
+    }
+    
+    /**
+     * Set how far the graph neighbourhood of the top hits is expanded into the context
+     *
+     * @param hops Relationship distance, up to {@value Neo4jService#MAX_EXPANSION_HOPS}; 0 disables expansion
+     * @param nodeBudget Maximum nodes in the expanded subgraph
+     */
+    public void configureGraphExpansion(int hops, int nodeBudget) {
+        this.expansionHops = hops;
+        this.expansionNodes = nodeBudget;
+    }
+    
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+    
+    public LexicalIndex getLexicalIndex() {
+        return lexicalIndex;
+    }
+    
+    /**
+     * Merge rankings by reciprocal rank fusion: a hit scores the sum of 1 / (k + rank) over the
+     * rankings it appears in, so raw scores on different scales never need to be compared
+     *
+     * @return Up to limit hits, best first, keyed by source id and keeping any stored vector
+     */
+    static List<VectorStore.SearchResult> fuseRankings(List<List<VectorStore.SearchResult>> rankings, int limit) {
+        Map<Object, Double> scores = new LinkedHashMap<>();
+        Map<Object, VectorStore.SearchResult> hits = new HashMap<>();
+        for (List<VectorStore.SearchResult> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                VectorStore.SearchResult hit = ranking.get(rank);
+                Object key = hit.getMetadata().getOrDefault(VectorStore.SOURCE_ID_KEY, hit.getMetadata().get("text"));
+                scores.merge(key, 1.0 / (RRF_K + rank + 1), Double::sum);
+                hits.merge(key, hit, (first, other) -> first.getVector() != null ? first : other);
             }
-            
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("text", chunks.get(i));
-            payload.put("source", "ontology");
-            
-            vectorDataList.add(new QdrantVectorStore.VectorData("ontology_" + i, vector, payload));
         }
         
-        // Upsert to vector store
-        vectorStore.upsert(vectorDataList);
-        
-        logger.info("Successfully indexed {} ontology elements to vector store", chunks.size());
+        List<VectorStore.SearchResult> fused = new ArrayList<>(scores.size());
+        scores.forEach((key, score) -> {
+            VectorStore.SearchResult hit = hits.get(key);
+            fused.add(new VectorStore.SearchResult(score.floatValue(), hit.getMetadata(), hit.getVector()));
+        });
+        fused.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return fused.size() > limit ? new ArrayList<>(fused.subList(0, limit)) : fused;
     }
     
-    private String buildContext(List<QdrantVectorStore.SearchResult> searchResults) {
+    static String buildContext(List<VectorStore.SearchResult> searchResults) {
         StringBuilder context = new StringBuilder();
         context.append("Relevant graph data retrieved from vector store:\n\n");
         
         for (int i = 0; i < searchResults.size(); i++) {
-            QdrantVectorStore.SearchResult result = searchResults.get(i);
-            context.append(String.format("Result %d (similarity: %.3f):\n", i + 1, result.getScore()));
+            VectorStore.SearchResult result = searchResults.get(i);
+            context.append(String.format("Result %d (relevance: %.3f):\n", i + 1, result.getScore()));
             
             Object textValue = result.getMetadata().get("text");
             if (textValue != null) {
@@ -242,7 +549,7 @@ public class RagService {
         return context.toString();
     }
     
-    private String buildOntologySummary(OWLOntology ontology) {
+    static String buildOntologySummary(OWLOntology ontology) {
         StringBuilder summary = new StringBuilder();
         summary.append("Current Protégé Ontology Summary:\n");
         summary.append(String.format("- Classes: %d\n", ontology.getClassesInSignature().size()));
@@ -253,11 +560,11 @@ public class RagService {
         return summary.toString();
     }
     
-    private String generateAIResponse(String userQuery, String context, 
-                                     String graphSchema, String ontologySummary) throws IOException {
-        
-        // Build prompt with RAG context
-        String systemPrompt = String.format(
+    /**
+     * Build the system prompt with the RAG context
+     */
+    static String buildSystemPrompt(String context, String graphSchema, String ontologySummary) {
+        return String.format(
             "You are an expert knowledge graph analyst specializing in ontology-based question answering. " +
             "Your task is to answer questions using ONLY the provided graph context.\n\n" +
             "CRITICAL INSTRUCTIONS:\n" +
@@ -275,62 +582,70 @@ public class RagService {
             "Answer the question using the relationships and properties shown in the context above.",
             graphSchema, ontologySummary, context
         );
+    }
+    
+    /**
+     * @param onToken If not null, the completion is streamed and each content delta passed to it
+     */
+    private String generateAIResponse(String userQuery, String context, String graphSchema, String ontologySummary,
+                                     QueryStages stages, Consumer<String> onToken) throws IOException {
+        String systemPrompt = buildSystemPrompt(context, graphSchema, ontologySummary);
+        String content = chatProvider.complete(systemPrompt, userQuery, answerMaxTokens, onToken, stages::onCancel);
+        logger.info("Generated AI response (length: {})", content.length());
+        return content;
+    }
+    
+    /**
+     * Release background resources held by the service
+     */
+    public void close() {
+        queryExecutor.shutdownNow();
+        embeddingExecutor.close();
+    }
+    
+    /**
+     * Query embedding and the search results retrieved (or reused from the query cache) for it
+     */
+    private static class Retrieval {
+        private final float[] queryVector;
+        private final List<VectorStore.SearchResult> vectorResults;
+        private final List<VectorStore.SearchResult> lexicalResults;
+        // Vector and lexical results fused, or only the vector results before the lexical search is in
+        private final List<VectorStore.SearchResult> searchResults;
+        private final QueryCache.Entry cached;
+        
+        Retrieval(float[] queryVector, List<VectorStore.SearchResult> vectorResults,
+                  List<VectorStore.SearchResult> lexicalResults, QueryCache.Entry cached) {
+            this.queryVector = queryVector;
+            this.vectorResults = vectorResults;
+            this.lexicalResults = lexicalResults;
+            this.searchResults = lexicalResults == null ? vectorResults
+                : fuseRankings(Arrays.asList(vectorResults, lexicalResults), SEARCH_CANDIDATES);
+            this.cached = cached;
+        }
+    }
+    
+    /**
+     * Embedding cache counters captured at the start of an indexing run
+     */
+    private static class CacheSnapshot {
+        private final long hits;
+        private final long misses;
         
-        JsonObject requestBody = new JsonObject();
-        JsonArray messages = new JsonArray();
-        
-        JsonObject systemMessage = new JsonObject();
-        systemMessage.addProperty("role", "system");
-        systemMessage.addProperty("content", systemPrompt);
-        messages.add(systemMessage);
-        
-        JsonObject userMessage = new JsonObject();
-        userMessage.addProperty("role", "user");
-        userMessage.addProperty("content", userQuery);
-        messages.add(userMessage);
-        
-        requestBody.add("messages", messages);
-        requestBody.addProperty("model", aiModel);
-        requestBody.addProperty("temperature", 0.7);
-        requestBody.addProperty("max_tokens", 1000);
-        
-        String apiUrl = getApiUrl();
+        private CacheSnapshot(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
         
-        Request request = new Request.Builder()
-            .url(apiUrl)
-            .addHeader("Authorization", "Bearer " + aiApiKey)
-            .addHeader("Content-Type", "application/json")
-            .post(RequestBody.create(
-                gson.toJson(requestBody),
-                MediaType.get("application/json")
-            ))
-            .build();
+        static CacheSnapshot of(EmbeddingCache cache) {
+            return cache == null ? new CacheSnapshot(0, 0) : new CacheSnapshot(cache.getHitCount(), cache.getMissCount());
+        }
         
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("AI request failed: " + response.code() + " " + response.body().string());
+        void logDelta(EmbeddingCache cache) {
+            if (cache != null) {
+                logger.info("Embedding cache: {} hits, {} misses during this run ({} entries stored)",
+                    cache.getHitCount() - hits, cache.getMissCount() - misses, cache.size());
             }
-            
-            JsonObject responseJson = gson.fromJson(response.body().string(), JsonObject.class);
-            String content = responseJson
-                .getAsJsonArray("choices")
-                .get(0).getAsJsonObject()
-                .getAsJsonObject("message")
-                .get("content").getAsString();
-            
-            logger.info("Generated AI response (length: {})", content.length());
-            return content;
-        }
-    }
-    
-    private String getApiUrl() {
-        if (aiModel.startsWith("gpt")) {
-            return "https://api.openai.com/v1/chat/completions";
-        } else if (aiModel.startsWith("claude")) {
-            return "https://api.anthropic.com/v1/messages";
-        } else {
-            // Ollama local
-            return "http://localhost:11434/v1/chat/completions";
         }
     }
 }
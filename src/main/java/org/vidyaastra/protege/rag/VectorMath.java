@@ -0,0 +1,181 @@
+package org.vidyaastra.protege.rag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Similarity kernels used by local scoring (the HNSW index, rescoring and reranking).
+ *
+ * When the JVM runs with {@code --add-modules jdk.incubator.vector} (Java 17+), the kernels use the
+ * Vector API through {@code VectorApiKernel}, which is compiled separately for Java 17 and loaded
+ * reflectively. Otherwise, or with {@code -Drag.vectormath.scalar=true}, they fall back to scalar
+ * loops unrolled by four. Vectors stored in buffers are little-endian float32.
+ */
+public final class VectorMath {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VectorMath.class);
+    
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL_CLASS = "org.vidyaastra.protege.rag.VectorApiKernel";
+    
+    static final Kernel SCALAR = new ScalarKernel();
+    private static final Kernel KERNEL = loadKernel();
+    
+    private VectorMath() {
+    }
+    
+    /**
+     * Implementation of the similarity kernels
+     */
+    interface Kernel {
+        float dot(float[] a, float[] b);
+        
+        float squaredDistance(float[] a, float[] b);
+        
+        /**
+         * Dot product with the vector stored at {@code byteOffset} in a little-endian buffer
+         */
+        float dot(float[] a, ByteBuffer b, int byteOffset);
+        
+        float squaredDistance(float[] a, ByteBuffer b, int byteOffset);
+    }
+    
+    private static Kernel loadKernel() {
+        if (Boolean.getBoolean("rag.vectormath.scalar")) {
+            logger.info("Using scalar similarity kernels (forced)");
+            return SCALAR;
+        }
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            logger.info("Using scalar similarity kernels; run with --add-modules {} to enable SIMD", VECTOR_MODULE);
+            return SCALAR;
+        }
+        try {
+            Kernel kernel = (Kernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+            logger.info("Using Vector API similarity kernels");
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Vector API kernels unavailable, using scalar kernels", e);
+            return SCALAR;
+        }
+    }
+    
+    /**
+     * Active kernels, for benchmarks comparing them with {@link #SCALAR}
+     */
+    static Kernel kernel() {
+        return KERNEL;
+    }
+    
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+    
+    public static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b);
+    }
+    
+    public static float squaredDistance(float[] a, float[] b) {
+        return KERNEL.squaredDistance(a, b);
+    }
+    
+    public static float cosine(float[] a, float[] b) {
+        float norms = (float) Math.sqrt((double) KERNEL.dot(a, a) * KERNEL.dot(b, b));
+        return norms > 0 ? KERNEL.dot(a, b) / norms : 0f;
+    }
+    
+    static float dot(float[] a, ByteBuffer b, int byteOffset) {
+        return KERNEL.dot(a, b, byteOffset);
+    }
+    
+    static float squaredDistance(float[] a, ByteBuffer b, int byteOffset) {
+        return KERNEL.squaredDistance(a, b, byteOffset);
+    }
+    
+    /**
+     * Scalar loops with four independent accumulators, which lets the JIT pipeline the multiply-adds
+     */
+    private static final class ScalarKernel implements Kernel {
+        
+        @Override
+        public float dot(float[] a, float[] b) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            int bound = a.length & ~3;
+            for (; i < bound; i += 4) {
+                s0 += a[i] * b[i];
+                s1 += a[i + 1] * b[i + 1];
+                s2 += a[i + 2] * b[i + 2];
+                s3 += a[i + 3] * b[i + 3];
+            }
+            for (; i < a.length; i++) {
+                s0 += a[i] * b[i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+        
+        @Override
+        public float squaredDistance(float[] a, float[] b) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            int bound = a.length & ~3;
+            for (; i < bound; i += 4) {
+                float d0 = a[i] - b[i];
+                float d1 = a[i + 1] - b[i + 1];
+                float d2 = a[i + 2] - b[i + 2];
+                float d3 = a[i + 3] - b[i + 3];
+                s0 += d0 * d0;
+                s1 += d1 * d1;
+                s2 += d2 * d2;
+                s3 += d3 * d3;
+            }
+            for (; i < a.length; i++) {
+                float d = a[i] - b[i];
+                s0 += d * d;
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+        
+        @Override
+        public float dot(float[] a, ByteBuffer b, int byteOffset) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            int bound = a.length & ~3;
+            for (; i < bound; i += 4) {
+                int offset = byteOffset + i * Float.BYTES;
+                s0 += a[i] * b.getFloat(offset);
+                s1 += a[i + 1] * b.getFloat(offset + 4);
+                s2 += a[i + 2] * b.getFloat(offset + 8);
+                s3 += a[i + 3] * b.getFloat(offset + 12);
+            }
+            for (; i < a.length; i++) {
+                s0 += a[i] * b.getFloat(byteOffset + i * Float.BYTES);
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+        
+        @Override
+        public float squaredDistance(float[] a, ByteBuffer b, int byteOffset) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            int bound = a.length & ~3;
+            for (; i < bound; i += 4) {
+                int offset = byteOffset + i * Float.BYTES;
+                float d0 = a[i] - b.getFloat(offset);
+                float d1 = a[i + 1] - b.getFloat(offset + 4);
+                float d2 = a[i + 2] - b.getFloat(offset + 8);
+                float d3 = a[i + 3] - b.getFloat(offset + 12);
+                s0 += d0 * d0;
+                s1 += d1 * d1;
+                s2 += d2 * d2;
+                s3 += d3 * d3;
+            }
+            for (; i < a.length; i++) {
+                float d = a[i] - b.getFloat(byteOffset + i * Float.BYTES);
+                s0 += d * d;
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+    }
+}
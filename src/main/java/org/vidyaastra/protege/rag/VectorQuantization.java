@@ -0,0 +1,15 @@
+package org.vidyaastra.protege.rag;
+
+/**
+ * How stored vectors are compressed for search. Compressed searches rescore their best candidates
+ * with the full-precision vectors, so the ranking of returned results stays exact.
+ */
+public enum VectorQuantization {
+    
+    /** Full float32 vectors only */
+    NONE,
+    /** One signed byte per dimension (4x smaller) */
+    SCALAR_INT8,
+    /** One byte per group of dimensions, indexing a trained codebook (32x smaller at 8 dimensions per group) */
+    PRODUCT
+}
@@ -0,0 +1,355 @@
+package org.vidyaastra.protege.rag;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Trained compression of prepared vectors into fixed-size byte codes, plus asymmetric scoring of a
+ * full-precision query against those codes. Scores approximate {@link DistanceMetric#similarity} and
+ * are only used to pick candidates; final scores come from the full vectors.
+ */
+abstract class VectorQuantizer {
+    
+    /** Dimensions per product quantization subvector; each is coded in one byte */
+    static final int PRODUCT_SUBVECTOR_DIMENSION = 8;
+    
+    private static final int PRODUCT_CENTROIDS = 256;
+    private static final int KMEANS_ITERATIONS = 10;
+    
+    private static final byte SCALAR = 1;
+    private static final byte PRODUCT = 2;
+    
+    /**
+     * Scores one query against codes stored at an offset in a buffer
+     */
+    interface Scorer {
+        float score(ByteBuffer codes, int offset);
+    }
+    
+    /**
+     * Train a quantizer of the given type on a sample of prepared vectors
+     */
+    static VectorQuantizer train(VectorQuantization type, DistanceMetric metric, List<float[]> sample) {
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("Cannot train a quantizer without vectors");
+        }
+        switch (type) {
+            case SCALAR_INT8:
+                return Scalar.train(metric, sample);
+            case PRODUCT:
+                return Product.train(metric, sample, PRODUCT_SUBVECTOR_DIMENSION);
+            default:
+                throw new IllegalArgumentException("Not a quantization type: " + type);
+        }
+    }
+    
+    abstract VectorQuantization getType();
+    
+    /**
+     * Bytes per encoded vector
+     */
+    abstract int codeSize();
+    
+    abstract void encode(float[] vector, byte[] codes, int offset);
+    
+    /**
+     * Scorer for one prepared query; builds any per-query lookup tables once
+     */
+    abstract Scorer scorer(float[] query);
+    
+    abstract void write(DataOutput out) throws IOException;
+    
+    static VectorQuantizer read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        DistanceMetric metric = DistanceMetric.valueOf(in.readUTF());
+        int dimension = in.readInt();
+        if (type == SCALAR) {
+            float[] min = readFloats(in, dimension);
+            float[] step = readFloats(in, dimension);
+            return new Scalar(metric, min, step);
+        }
+        if (type == PRODUCT) {
+            int subDimension = in.readInt();
+            int subspaces = (dimension + subDimension - 1) / subDimension;
+            float[][] centroids = new float[subspaces][];
+            for (int s = 0; s < subspaces; s++) {
+                centroids[s] = readFloats(in, in.readInt());
+            }
+            return new Product(metric, dimension, subDimension, centroids);
+        }
+        throw new IOException("Unknown quantizer type " + type);
+    }
+    
+    private static float[] readFloats(DataInput in, int length) throws IOException {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+    
+    private static void writeFloats(DataOutput out, float[] values) throws IOException {
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+    
+    /**
+     * Int8 scalar quantization: each dimension is mapped linearly from its trained [min, max] range to
+     * a signed byte. Dot products against a code reduce to one multiply-add per dimension plus a constant.
+     */
+    static final class Scalar extends VectorQuantizer {
+        private final DistanceMetric metric;
+        private final float[] min;
+        private final float[] step;
+        
+        Scalar(DistanceMetric metric, float[] min, float[] step) {
+            this.metric = metric;
+            this.min = min;
+            this.step = step;
+        }
+        
+        static Scalar train(DistanceMetric metric, List<float[]> sample) {
+            int dimension = sample.get(0).length;
+            float[] min = new float[dimension];
+            float[] max = new float[dimension];
+            Arrays.fill(min, Float.POSITIVE_INFINITY);
+            Arrays.fill(max, Float.NEGATIVE_INFINITY);
+            for (float[] vector : sample) {
+                for (int i = 0; i < dimension; i++) {
+                    min[i] = Math.min(min[i], vector[i]);
+                    max[i] = Math.max(max[i], vector[i]);
+                }
+            }
+            float[] step = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                step[i] = (max[i] - min[i]) / 255f;
+            }
+            return new Scalar(metric, min, step);
+        }
+        
+        @Override
+        VectorQuantization getType() {
+            return VectorQuantization.SCALAR_INT8;
+        }
+        
+        @Override
+        int codeSize() {
+            return min.length;
+        }
+        
+        @Override
+        void encode(float[] vector, byte[] codes, int offset) {
+            for (int i = 0; i < min.length; i++) {
+                int level = step[i] > 0 ? Math.round((vector[i] - min[i]) / step[i]) : 0;
+                codes[offset + i] = (byte) (Math.max(0, Math.min(255, level)) - 128);
+            }
+        }
+        
+        @Override
+        Scorer scorer(float[] query) {
+            int dimension = min.length;
+            if (metric == DistanceMetric.L2) {
+                // q - decoded = (q - min - 128 * step) - step * code
+                float[] shift = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    shift[i] = query[i] - min[i] - 128 * step[i];
+                }
+                return (codes, offset) -> {
+                    float sum = 0;
+                    for (int i = 0; i < dimension; i++) {
+                        float d = shift[i] - step[i] * codes.get(offset + i);
+                        sum += d * d;
+                    }
+                    return -sum;
+                };
+            }
+            
+            // q . decoded = sum(q * (min + 128 * step)) + sum(q * step * code)
+            float[] weights = new float[dimension];
+            float constant = 0;
+            for (int i = 0; i < dimension; i++) {
+                weights[i] = query[i] * step[i];
+                constant += query[i] * (min[i] + 128 * step[i]);
+            }
+            float base = constant;
+            return (codes, offset) -> {
+                float s0 = 0, s1 = 0;
+                int i = 0;
+                int bound = dimension & ~1;
+                for (; i < bound; i += 2) {
+                    s0 += weights[i] * codes.get(offset + i);
+                    s1 += weights[i + 1] * codes.get(offset + i + 1);
+                }
+                for (; i < dimension; i++) {
+                    s0 += weights[i] * codes.get(offset + i);
+                }
+                return base + s0 + s1;
+            };
+        }
+        
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(SCALAR);
+            out.writeUTF(metric.name());
+            out.writeInt(min.length);
+            writeFloats(out, min);
+            writeFloats(out, step);
+        }
+    }
+    
+    /**
+     * Product quantization: the vector is split into subvectors, and each is replaced by the index of
+     * its nearest centroid in a per-subspace codebook trained with k-means. A query is scored by
+     * summing per-subspace similarities looked up from a table built once per query.
+     */
+    static final class Product extends VectorQuantizer {
+        private final DistanceMetric metric;
+        private final int dimension;
+        private final int subDimension;
+        // centroids[s] holds the codebook of subspace s: centroid c at [c * length(s), (c + 1) * length(s))
+        private final float[][] centroids;
+        
+        Product(DistanceMetric metric, int dimension, int subDimension, float[][] centroids) {
+            this.metric = metric;
+            this.dimension = dimension;
+            this.subDimension = subDimension;
+            this.centroids = centroids;
+        }
+        
+        static Product train(DistanceMetric metric, List<float[]> sample, int subDimension) {
+            int dimension = sample.get(0).length;
+            int subspaces = (dimension + subDimension - 1) / subDimension;
+            int k = Math.min(PRODUCT_CENTROIDS, sample.size());
+            float[][] centroids = new float[subspaces][];
+            // Subspaces are independent, so train them in parallel
+            IntStream.range(0, subspaces).parallel().forEach(s -> {
+                int start = s * subDimension;
+                int length = Math.min(subDimension, dimension - start);
+                centroids[s] = kMeans(sample, start, length, k, new Random(42 + s));
+            });
+            return new Product(metric, dimension, subDimension, centroids);
+        }
+        
+        private static float[] kMeans(List<float[]> sample, int start, int length, int k, Random random) {
+            List<float[]> seeds = new ArrayList<>(sample);
+            Collections.shuffle(seeds, random);
+            float[] centroids = new float[k * length];
+            for (int c = 0; c < k; c++) {
+                System.arraycopy(seeds.get(c), start, centroids, c * length, length);
+            }
+            
+            for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+                float[] sums = new float[k * length];
+                int[] counts = new int[k];
+                for (float[] vector : sample) {
+                    int c = nearest(centroids, k, length, vector, start);
+                    counts[c]++;
+                    for (int i = 0; i < length; i++) {
+                        sums[c * length + i] += vector[start + i];
+                    }
+                }
+                for (int c = 0; c < k; c++) {
+                    if (counts[c] == 0) {
+                        // Re-seed an empty cluster with a random training vector
+                        System.arraycopy(sample.get(random.nextInt(sample.size())), start, centroids, c * length, length);
+                        continue;
+                    }
+                    for (int i = 0; i < length; i++) {
+                        centroids[c * length + i] = sums[c * length + i] / counts[c];
+                    }
+                }
+            }
+            return centroids;
+        }
+        
+        private static int nearest(float[] centroids, int k, int length, float[] vector, int start) {
+            int best = 0;
+            float bestDistance = Float.POSITIVE_INFINITY;
+            for (int c = 0; c < k; c++) {
+                float distance = 0;
+                int base = c * length;
+                for (int i = 0; i < length; i++) {
+                    float d = vector[start + i] - centroids[base + i];
+                    distance += d * d;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = c;
+                }
+            }
+            return best;
+        }
+        
+        @Override
+        VectorQuantization getType() {
+            return VectorQuantization.PRODUCT;
+        }
+        
+        @Override
+        int codeSize() {
+            return centroids.length;
+        }
+        
+        @Override
+        void encode(float[] vector, byte[] codes, int offset) {
+            for (int s = 0; s < centroids.length; s++) {
+                int length = Math.min(subDimension, dimension - s * subDimension);
+                int k = centroids[s].length / length;
+                codes[offset + s] = (byte) nearest(centroids[s], k, length, vector, s * subDimension);
+            }
+        }
+        
+        @Override
+        Scorer scorer(float[] query) {
+            int subspaces = centroids.length;
+            float[] table = new float[subspaces * PRODUCT_CENTROIDS];
+            for (int s = 0; s < subspaces; s++) {
+                int start = s * subDimension;
+                int length = Math.min(subDimension, dimension - start);
+                float[] codebook = centroids[s];
+                int k = codebook.length / length;
+                for (int c = 0; c < k; c++) {
+                    float partial = 0;
+                    for (int i = 0; i < length; i++) {
+                        float centroid = codebook[c * length + i];
+                        if (metric == DistanceMetric.L2) {
+                            float d = query[start + i] - centroid;
+                            partial -= d * d;
+                        } else {
+                            partial += query[start + i] * centroid;
+                        }
+                    }
+                    table[s * PRODUCT_CENTROIDS + c] = partial;
+                }
+            }
+            return (codes, offset) -> {
+                float sum = 0;
+                for (int s = 0; s < subspaces; s++) {
+                    sum += table[s * PRODUCT_CENTROIDS + (codes.get(offset + s) & 0xff)];
+                }
+                return sum;
+            };
+        }
+        
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(PRODUCT);
+            out.writeUTF(metric.name());
+            out.writeInt(dimension);
+            out.writeInt(subDimension);
+            for (float[] codebook : centroids) {
+                out.writeInt(codebook.length);
+                writeFloats(out, codebook);
+            }
+        }
+    }
+}
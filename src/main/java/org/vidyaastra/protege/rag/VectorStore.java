@@ -0,0 +1,215 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Vector store used by the RAG pipeline; implemented by the remote Qdrant store and the in-process index
+ */
+public interface VectorStore extends AutoCloseable {
+    
+    /** Payload field holding the source id a point was derived from */
+    String SOURCE_ID_KEY = "source_id";
+    /** Payload field holding {@link VectorData#getContentHash()} */
+    String CONTENT_HASH_KEY = "content_hash";
+    
+    /**
+     * Add or replace vectors, keyed by their source id
+     */
+    void upsert(List<VectorData> vectorDataList);
+    
+    /**
+     * Wait until every submitted upsert has been applied
+     */
+    void flush();
+    
+    /**
+     * Find which of the given source ids are already stored with the same content hash
+     *
+     * @param contentHashesById Source id to content hash of the candidate points
+     * @return Source ids whose stored content hash matches, i.e. points that need no upsert
+     */
+    Set<String> findUnchanged(Map<String, String> contentHashesById);
+    
+    /**
+     * Delete vectors by source id
+     */
+    void delete(Collection<String> ids);
+    
+    /**
+     * Source ids of all stored points that start with the given prefix (e.g. "owl:"), used to find
+     * points whose source no longer exists
+     */
+    Set<String> findSourceIds(String prefix);
+    
+    /**
+     * Search for the most similar vectors, best first, without their stored vectors
+     */
+    default List<SearchResult> search(float[] queryVector, int limit) {
+        return search(queryVector, limit, false);
+    }
+    
+    /**
+     * Search for the most similar vectors, best first
+     *
+     * @param withVectors Whether the results carry their stored vectors, e.g. to compare them with each other
+     */
+    List<SearchResult> search(float[] queryVector, int limit, boolean withVectors);
+    
+    CollectionStats getStats();
+    
+    /**
+     * Remove all vectors
+     */
+    void clear();
+    
+    @Override
+    void close();
+    
+    /**
+     * Represents vector data with metadata.
+     * The id identifies the source (e.g. a Neo4j node or an OWL IRI) and determines the point id.
+     */
+    public static class VectorData {
+        private final String id;
+        private final float[] vector;
+        private final Map<String, Object> metadata;
+        private final String contentHash;
+        
+        public VectorData(String id, float[] vector, Map<String, Object> metadata) {
+            this(id, vector, metadata, computeContentHash(metadata));
+        }
+        
+        /**
+         * Restore stored vector data with the content hash it was written with
+         */
+        VectorData(String id, float[] vector, Map<String, Object> metadata, String contentHash) {
+            this.id = id;
+            this.vector = vector;
+            this.metadata = metadata;
+            this.contentHash = contentHash;
+        }
+        
+        /**
+         * Same source and payload with the given vector
+         */
+        public VectorData withVector(float[] vector) {
+            return new VectorData(id, vector, metadata, contentHash);
+        }
+        
+        /**
+         * Same record, hashed together with the embedding model that will produce its vector, so that
+         * switching models makes every stored point changed and re-embeds it
+         *
+         * @param embeddingModel Model id, see {@link EmbeddingService#getModelId()}
+         */
+        public VectorData forEmbeddingModel(String embeddingModel) {
+            return new VectorData(id, vector, metadata, computeContentHash(embeddingModel, metadata));
+        }
+        
+        /**
+         * Hash of the payload (including the chunk text) and, if set, the embedding model; unchanged
+         * hashes need no re-embedding or upsert
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+        
+        private static String computeContentHash(Map<String, Object> metadata) {
+            return computeContentHash(null, metadata);
+        }
+        
+        private static String computeContentHash(String embeddingModel, Map<String, Object> metadata) {
+            Hasher hasher = Hashing.sha256().newHasher();
+            if (embeddingModel != null) {
+                hasher.putString(embeddingModel, StandardCharsets.UTF_8).putByte((byte) 0);
+            }
+            if (metadata != null) {
+                for (Map.Entry<String, Object> entry : new TreeMap<>(metadata).entrySet()) {
+                    hasher.putString(entry.getKey(), StandardCharsets.UTF_8)
+                          .putByte((byte) 0)
+                          .putString(String.valueOf(entry.getValue()), StandardCharsets.UTF_8)
+                          .putByte((byte) 0);
+                }
+            }
+            return hasher.hash().toString();
+        }
+        
+        public String getId() {
+            return id;
+        }
+        
+        /**
+         * The vector itself, not a copy; callers must not modify it
+         */
+        public float[] getVector() {
+            return vector;
+        }
+        
+        public Map<String, Object> getMetadata() {
+            return metadata;
+        }
+    }
+    
+    /**
+     * Represents a search result
+     */
+    public static class SearchResult {
+        private final float score;
+        private final Map<String, Object> metadata;
+        private final float[] vector;
+        
+        public SearchResult(float score, Map<String, Object> metadata) {
+            this(score, metadata, null);
+        }
+        
+        public SearchResult(float score, Map<String, Object> metadata, float[] vector) {
+            this.score = score;
+            this.metadata = metadata;
+            this.vector = vector;
+        }
+        
+        public float getScore() {
+            return score;
+        }
+        
+        public Map<String, Object> getMetadata() {
+            return metadata;
+        }
+        
+        /**
+         * Stored vector of the hit (not a copy), or null if the store did not return it
+         */
+        public float[] getVector() {
+            return vector;
+        }
+    }
+    
+    /**
+     * Collection statistics
+     */
+    public static class CollectionStats {
+        private final long pointsCount;
+        private final long vectorsCount;
+        
+        public CollectionStats(long pointsCount, long vectorsCount) {
+            this.pointsCount = pointsCount;
+            this.vectorsCount = vectorsCount;
+        }
+        
+        public long getPointsCount() {
+            return pointsCount;
+        }
+        
+        public long getVectorsCount() {
+            return vectorsCount;
+        }
+    }
+}
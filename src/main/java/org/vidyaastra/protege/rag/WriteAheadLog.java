@@ -0,0 +1,191 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.ToNumberPolicy;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of upserts and deletes applied on top of the current index generation.
+ *
+ * Each record is {@code [int body length][int CRC32 of body][body]}, little-endian. On replay, a record
+ * with a short body or a bad checksum marks a torn write from a crash; it and everything after it is
+ * truncated away.
+ */
+final class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private static final Gson gson = new GsonBuilder()
+        .setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE)
+        .create();
+    private static final Type PAYLOAD_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+
+    private final FileChannel channel;
+
+    WriteAheadLog(Path file) throws IOException {
+        this.channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Receives replayed operations in log order
+     */
+    interface Replay {
+        void upsert(VectorStore.VectorData data);
+
+        void delete(String id);
+    }
+
+    /**
+     * Apply every intact record, truncate a torn tail, and position the log for appending
+     *
+     * @return Number of records replayed
+     */
+    int replay(Replay target) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        int records = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(body, position + RECORD_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            body.flip();
+            apply(body, target);
+            position += RECORD_HEADER_BYTES + length;
+            records++;
+        }
+
+        if (position < size) {
+            logger.warn("Truncating {} bytes of torn records from the index log", size - position);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return records;
+    }
+
+    private static void apply(ByteBuffer body, Replay target) {
+        byte type = body.get();
+        if (type == DELETE) {
+            target.delete(readString(body));
+            return;
+        }
+        String id = readString(body);
+        String contentHash = readString(body);
+        Map<String, Object> payload = gson.fromJson(readString(body), PAYLOAD_TYPE);
+        float[] vector = new float[body.getInt()];
+        body.asFloatBuffer().get(vector);
+        target.upsert(new VectorStore.VectorData(id, vector, payload, contentHash));
+    }
+
+    void appendUpserts(List<VectorStore.VectorData> vectorDataList) throws IOException {
+        for (VectorStore.VectorData data : vectorDataList) {
+            byte[] id = data.getId().getBytes(StandardCharsets.UTF_8);
+            byte[] hash = data.getContentHash().getBytes(StandardCharsets.UTF_8);
+            byte[] payload = gson.toJson(data.getMetadata()).getBytes(StandardCharsets.UTF_8);
+            float[] vector = data.getVector();
+
+            ByteBuffer body = ByteBuffer.allocate(1 + 3 * Integer.BYTES + id.length + hash.length + payload.length
+                    + Integer.BYTES + vector.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            body.put(UPSERT);
+            putBytes(body, id);
+            putBytes(body, hash);
+            putBytes(body, payload);
+            body.putInt(vector.length);
+            body.asFloatBuffer().put(vector);
+            append(body.array());
+        }
+    }
+
+    void appendDeletes(Collection<String> ids) throws IOException {
+        for (String id : ids) {
+            byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer body = ByteBuffer.allocate(1 + Integer.BYTES + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            body.put(DELETE);
+            putBytes(body, bytes);
+            append(body.array());
+        }
+    }
+
+    private void append(byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Force appended records to disk
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of index log");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,103 @@
+package org.vidyaastra.protege.rag;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Similarity kernels on the incubating Vector API, using the widest float species of the CPU.
+ * Compiled for Java 17 only and loaded reflectively by {@link VectorMath}.
+ *
+ * Loading vectors from a {@link ByteBuffer} is not available on every JDK that ships the incubator
+ * module; where it is missing, the buffer kernels fall back to {@link VectorMath#SCALAR}.
+ */
+final class VectorApiKernel implements VectorMath.Kernel {
+    
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final boolean BUFFER_LOADS = probeBufferLoads();
+    
+    private static boolean probeBufferLoads() {
+        try {
+            ByteBuffer probe = ByteBuffer.allocate(SPECIES.vectorByteSize()).order(ByteOrder.LITTLE_ENDIAN);
+            FloatVector.fromByteBuffer(SPECIES, probe, 0, ByteOrder.LITTLE_ENDIAN);
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+    
+    @Override
+    public float dot(float[] a, float[] b) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            sum = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+    
+    @Override
+    public float squaredDistance(float[] a, float[] b) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, i).sub(FloatVector.fromArray(SPECIES, b, i));
+            sum = diff.fma(diff, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            float d = a[i] - b[i];
+            result += d * d;
+        }
+        return result;
+    }
+    
+    @Override
+    public float dot(float[] a, ByteBuffer b, int byteOffset) {
+        if (!BUFFER_LOADS) {
+            return VectorMath.SCALAR.dot(a, b, byteOffset);
+        }
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector stored = FloatVector.fromByteBuffer(SPECIES, b, byteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            sum = FloatVector.fromArray(SPECIES, a, i).fma(stored, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            result += a[i] * b.getFloat(byteOffset + i * Float.BYTES);
+        }
+        return result;
+    }
+    
+    @Override
+    public float squaredDistance(float[] a, ByteBuffer b, int byteOffset) {
+        if (!BUFFER_LOADS) {
+            return VectorMath.SCALAR.squaredDistance(a, b, byteOffset);
+        }
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector stored = FloatVector.fromByteBuffer(SPECIES, b, byteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, i).sub(stored);
+            sum = diff.fma(diff, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            float d = a[i] - b.getFloat(byteOffset + i * Float.BYTES);
+            result += d * d;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package org.vidyaastra.protege.rag;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Server-sent event parsing of streamed completions, against recorded provider streams
+ */
+class ChatProviderStreamTest {
+    
+    private MockWebServer server;
+    private final List<String> tokens = new ArrayList<>();
+    
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+    
+    @AfterEach
+    void stopServer() throws IOException {
+        server.shutdown();
+    }
+    
+    @Test
+    void openAiStreamStopsAtDone() throws Exception {
+        enqueue(
+            "data: {\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}\n\n" +
+            "data: {\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Circular\"}}]}\n\n" +
+            ": keep-alive\n\n" +
+            "data: {\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Flow_001\"}}]}\n\n" +
+            "data: {\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}\n\n" +
+            "data: [DONE]\n\n" +
+            // Anything after [DONE] is ignored
+            "data: not json\n\n");
+        
+        assertEquals("CircularFlow_001", openAi().complete("system", "question", 100, tokens::add, cancel -> { }));
+        assertEquals(Arrays.asList("Circular", "Flow_001"), tokens);
+        
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getBody().readUtf8().contains("\"stream\":true"));
+    }
+    
+    @Test
+    void anthropicStreamSkipsEventsWithoutText() throws Exception {
+        enqueue(
+            "event: message_start\n" +
+            "data: {\"type\":\"message_start\",\"message\":{\"id\":\"msg_1\",\"content\":[]}}\n\n" +
+            "event: content_block_start\n" +
+            "data: {\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}\n\n" +
+            "event: ping\n" +
+            "data: {\"type\":\"ping\"}\n\n" +
+            "event: content_block_delta\n" +
+            "data: {\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"Hello\"}}\n\n" +
+            "event: content_block_delta\n" +
+            "data: {\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\" world\"}}\n\n" +
+            "event: content_block_stop\n" +
+            "data: {\"type\":\"content_block_stop\",\"index\":0}\n\n" +
+            "event: message_delta\n" +
+            "data: {\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"end_turn\"}}\n\n" +
+            "event: message_stop\n" +
+            "data: {\"type\":\"message_stop\"}\n\n");
+        
+        assertEquals("Hello world", anthropic().complete("system", "question", 100, tokens::add, cancel -> { }));
+        assertEquals(Arrays.asList("Hello", " world"), tokens);
+    }
+    
+    @Test
+    void multiLineDataIsJoinedIntoOneEvent() throws Exception {
+        enqueue(
+            "data: {\"choices\":[{\"index\":0,\n" +
+            "data: \"delta\":{\"content\":\"joined\"}}]}\n\n" +
+            "data: [DONE]\n\n");
+        
+        assertEquals("joined", openAi().complete("system", "question", 100, tokens::add, cancel -> { }));
+    }
+    
+    @Test
+    void lastEventWithoutBlankLineIsNotDropped() throws Exception {
+        enqueue(
+            "event: content_block_delta\n" +
+            "data: {\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"first\"}}\n\n" +
+            "event: content_block_delta\n" +
+            "data: {\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\" last\"}}");
+        
+        assertEquals("first last", anthropic().complete("system", "question", 100, tokens::add, cancel -> { }));
+        assertEquals(Arrays.asList("first", " last"), tokens);
+    }
+    
+    @Test
+    void openAiErrorEventFailsTheCompletion() {
+        enqueue(
+            "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"partial\"}}]}\n\n" +
+            "data: {\"error\":{\"message\":\"The server had an error\",\"type\":\"server_error\"}}\n\n");
+        
+        IOException e = assertThrows(IOException.class,
+            () -> openAi().complete("system", "question", 100, tokens::add, cancel -> { }));
+        assertTrue(e.getMessage().contains("server_error"));
+        assertEquals(Arrays.asList("partial"), tokens);
+    }
+    
+    @Test
+    void anthropicErrorEventFailsTheCompletion() {
+        enqueue(
+            "event: error\n" +
+            "data: {\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\",\"message\":\"Overloaded\"}}\n\n");
+        
+        IOException e = assertThrows(IOException.class,
+            () -> anthropic().complete("system", "question", 100, tokens::add, cancel -> { }));
+        assertTrue(e.getMessage().contains("overloaded_error"));
+    }
+    
+    @Test
+    void malformedEventFailsTheCompletion() {
+        enqueue("data: {\"choices\":\n\n");
+        
+        assertThrows(IOException.class,
+            () -> openAi().complete("system", "question", 100, tokens::add, cancel -> { }));
+    }
+    
+    private void enqueue(String events) {
+        server.enqueue(new MockResponse()
+            .setHeader("Content-Type", "text/event-stream")
+            .setBody(events));
+    }
+    
+    private OpenAiChatProvider openAi() {
+        return new OpenAiChatProvider("gpt-4o-mini", "key", server.url("/v1/chat/completions").toString(), 5, 5, 30);
+    }
+    
+    private AnthropicChatProvider anthropic() {
+        return new AnthropicChatProvider("claude-3-5-sonnet-latest", "key", server.url("/v1/messages").toString());
+    }
+}
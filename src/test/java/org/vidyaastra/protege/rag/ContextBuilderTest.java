@@ -0,0 +1,85 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chunk selection of {@link ContextBuilder}: MMR order, near-duplicates and the token budget
+ */
+class ContextBuilderTest {
+    
+    @Test
+    void mmrPrefersNovelChunksOverSimilarOnes() {
+        List<VectorStore.SearchResult> candidates = Arrays.asList(
+            result("top", 1.0f, "pumps move water", new float[] {1, 0}),
+            result("similar", 0.9f, "pumps move fluids", new float[] {0.9f, 0.436f}),
+            result("novel", 0.8f, "valves stop flow", new float[] {0, 1}));
+        
+        assertEquals(Arrays.asList("top", "novel", "similar"),
+            ids(new ContextBuilder(1000, 0.5).select(candidates)));
+        assertEquals(Arrays.asList("top", "similar", "novel"),
+            ids(new ContextBuilder(1000, 1.0).select(candidates)));
+    }
+    
+    @Test
+    void nearDuplicatesAreDropped() {
+        // By their vectors, and by word overlap when the store returned none
+        ContextBuilder.Selection byVector = new ContextBuilder(1000, 0.7).select(Arrays.asList(
+            result("a", 1.0f, "CircularFlow_001 is a Flow", new float[] {1, 0}),
+            result("b", 0.9f, "Circular flow number one", new float[] {1, 0.01f})));
+        assertEquals(Collections.singletonList("a"), ids(byVector));
+        
+        ContextBuilder.Selection byWords = new ContextBuilder(1000, 0.7).select(Arrays.asList(
+            result("a", 1.0f, "CircularFlow_001 is a Flow", null),
+            result("b", 0.9f, "circularflow_001 IS A flow", null),
+            result("c", 0.8f, "Pump_002 is a Pump", null)));
+        assertEquals(Arrays.asList("a", "c"), ids(byWords));
+        assertTrue(byWords.toString().contains("1 near-duplicates dropped"), byWords.toString());
+    }
+    
+    @Test
+    void chunksOverTheBudgetAreSkippedForSmallerOnes() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            large.append("term").append(i).append(' ');
+        }
+        int budget = 100;
+        
+        ContextBuilder.Selection selection = new ContextBuilder(budget, 0.7).select(Arrays.asList(
+            result("large", 1.0f, large.toString(), null),
+            result("small", 0.9f, "Pump_002 is a Pump", null),
+            result("other", 0.8f, "Valve_003 has pressure 4 bar", null)));
+        
+        assertEquals(Arrays.asList("small", "other"), ids(selection));
+        assertTrue(selection.getTokens() <= budget);
+        assertTrue(selection.toString().contains("1 over budget"), selection.toString());
+    }
+    
+    @Test
+    void vectorsAreOnlyNeededForMmr() {
+        assertTrue(new ContextBuilder(1000, 0.7).needsVectors());
+        assertFalse(new ContextBuilder(1000, 1.0).needsVectors());
+    }
+    
+    private static VectorStore.SearchResult result(String id, float score, String text, float[] vector) {
+        Map<String, Object> metadata = Map.of("text", text, VectorStore.SOURCE_ID_KEY, id);
+        return new VectorStore.SearchResult(score, metadata, vector);
+    }
+    
+    private static List<String> ids(ContextBuilder.Selection selection) {
+        List<String> ids = new ArrayList<>();
+        for (VectorStore.SearchResult result : selection.getResults()) {
+            ids.add((String) result.getMetadata().get(VectorStore.SOURCE_ID_KEY));
+        }
+        return ids;
+    }
+}
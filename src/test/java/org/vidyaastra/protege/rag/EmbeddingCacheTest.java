@@ -0,0 +1,62 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * File tier of {@link EmbeddingCache}. The caches keep no entries in memory, so every hit is read
+ * from the file.
+ */
+class EmbeddingCacheTest {
+    
+    private static final String MODEL = "text-embedding-3-small";
+    
+    @Test
+    void interruptedCallsDoNotDisableTheFile(@TempDir Path directory) throws IOException {
+        try (EmbeddingCache cache = new EmbeddingCache(directory, 0)) {
+            cache.put(MODEL, "a", new float[] {1, 2});
+            
+            Thread.currentThread().interrupt();
+            try {
+                cache.get(MODEL, "a");
+                cache.put(MODEL, "b", new float[] {3, 4});
+            } finally {
+                Thread.interrupted();
+            }
+            
+            assertArrayEquals(new float[] {1, 2}, cache.get(MODEL, "a"));
+            cache.put(MODEL, "c", new float[] {5, 6});
+            assertArrayEquals(new float[] {5, 6}, cache.get(MODEL, "c"));
+        }
+        
+        try (EmbeddingCache reopened = new EmbeddingCache(directory, 0)) {
+            assertArrayEquals(new float[] {1, 2}, reopened.get(MODEL, "a"));
+            assertArrayEquals(new float[] {5, 6}, reopened.get(MODEL, "c"));
+        }
+    }
+    
+    @Test
+    void secondCacheOnALockedFileIsMemoryOnly(@TempDir Path directory) throws IOException {
+        try (EmbeddingCache first = new EmbeddingCache(directory, 0)) {
+            first.put(MODEL, "a", new float[] {1, 2});
+            
+            try (EmbeddingCache second = new EmbeddingCache(directory, 0)) {
+                assertNull(second.get(MODEL, "a"));
+                second.put(MODEL, "b", new float[] {3, 4});
+                assertEquals(0, second.size());
+            }
+        }
+        
+        try (EmbeddingCache reopened = new EmbeddingCache(directory, 0)) {
+            assertEquals(1, reopened.size());
+            assertNull(reopened.get(MODEL, "b"));
+        }
+    }
+}
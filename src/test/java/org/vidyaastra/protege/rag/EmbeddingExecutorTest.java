@@ -0,0 +1,109 @@
+package org.vidyaastra.protege.rag;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throttling behaviour of {@link EmbeddingExecutor} against a mock embeddings API
+ */
+class EmbeddingExecutorTest {
+    
+    private static final String EMBEDDING = "{\"data\":[{\"index\":0,\"embedding\":[0.5,0.5]}]}";
+    
+    private final List<Long> requestNanos = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger throttleNext = new AtomicInteger();
+    private MockWebServer server;
+    private EmbeddingExecutor executor;
+    
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                requestNanos.add(System.nanoTime());
+                if (throttleNext.getAndDecrement() > 0) {
+                    return new MockResponse().setResponseCode(429).setHeader("Retry-After", "1");
+                }
+                return new MockResponse().setBody(EMBEDDING);
+            }
+        });
+        server.start();
+        EmbeddingService service = new EmbeddingService("text-embedding-3-small (OpenAI)", "key", new OkHttpClient(),
+            server.url("/v1/embeddings").toString(), server.url("/v1/embed").toString(), null);
+        executor = new EmbeddingExecutor(service, 4);
+    }
+    
+    @AfterEach
+    void stopServer() throws IOException {
+        executor.close();
+        server.shutdown();
+    }
+    
+    @Test
+    void throttledBatchIsRetriedAfterRetryAfter() throws Exception {
+        throttleNext.set(1);
+        
+        List<float[]> embeddings = executor.submit(Collections.singletonList("text")).get(10, TimeUnit.SECONDS);
+        
+        assertEquals(0.5f, embeddings.get(0)[0]);
+        assertEquals(2, requestNanos.size());
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(requestNanos.get(1) - requestNanos.get(0));
+        assertTrue(waitedMillis >= 950, "retried after " + waitedMillis + " ms");
+        assertEquals(1, executor.getThrottledRequests());
+    }
+    
+    @Test
+    void limitHalvesOnThrottleAndRecoversOnSuccess() throws Exception {
+        assertEquals(4, executor.getConcurrencyLimit());
+        throttleNext.set(1);
+        
+        executor.submit(Collections.singletonList("text")).get(10, TimeUnit.SECONDS);
+        // Halved to 2 by the 429, then +1/2 for the successful retry
+        assertEquals(2, executor.getConcurrencyLimit());
+        
+        // Additive increase: about one step per window of successes, capped at the maximum
+        executor.submit(Collections.singletonList("text")).get(10, TimeUnit.SECONDS);
+        executor.submit(Collections.singletonList("text")).get(10, TimeUnit.SECONDS);
+        assertEquals(3, executor.getConcurrencyLimit());
+        for (int i = 0; i < 10; i++) {
+            executor.submit(Collections.singletonList("text")).get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(4, executor.getConcurrencyLimit());
+        assertEquals(13, executor.getCompletedBatches());
+    }
+    
+    @Test
+    void batchFailsOnceRetriesAreExhausted() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                requestNanos.add(System.nanoTime());
+                return new MockResponse().setResponseCode(429).setHeader("Retry-After", "0");
+            }
+        });
+        
+        IOException e = assertThrows(IOException.class, () -> executor.embedAll(Collections.singletonList("text")));
+        assertTrue(e instanceof EmbeddingService.RateLimitedException);
+        // The first attempt and six retries
+        assertEquals(7, requestNanos.size());
+        assertEquals(1, executor.getConcurrencyLimit());
+    }
+}
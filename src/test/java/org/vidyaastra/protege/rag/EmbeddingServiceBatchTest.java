@@ -0,0 +1,159 @@
+package org.vidyaastra.protege.rag;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Request batching of {@link EmbeddingService} against a mock embeddings API. Each text starts
+ * with its position, which the mock server echoes back as the embedding.
+ */
+class EmbeddingServiceBatchTest {
+    
+    private final Gson gson = new Gson();
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final List<JsonObject> requests = Collections.synchronizedList(new ArrayList<>());
+    private MockWebServer server;
+    
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                JsonObject body = gson.fromJson(request.getBody().readUtf8(), JsonObject.class);
+                requests.add(body);
+                return request.getPath().endsWith("/embed") ? cohereResponse(body) : openAiResponse(body);
+            }
+        });
+        server.start();
+    }
+    
+    @AfterEach
+    void stopServer() throws IOException {
+        server.shutdown();
+    }
+    
+    @Test
+    void openAiSplitsByItemCountAndKeepsInputOrder() throws IOException {
+        List<float[]> embeddings = service("text-embedding-3-small (OpenAI)").generateEmbeddings(texts(2500, 0));
+        
+        assertEquals(Arrays.asList(2048, 452), batchSizes);
+        assertPositions(embeddings, 2500);
+        assertEquals("text-embedding-3-small", requests.get(0).get("model").getAsString());
+    }
+    
+    @Test
+    void openAiResultsArePlacedByIndex() throws IOException {
+        // The mock server returns the data array reversed, each item with its index
+        List<float[]> embeddings = service("text-embedding-3-small (OpenAI)").generateEmbeddings(texts(5, 0));
+        
+        assertEquals(Collections.singletonList(5), batchSizes);
+        assertPositions(embeddings, 5);
+    }
+    
+    @Test
+    void cohereSplitsAtNinetySixTexts() throws IOException {
+        List<float[]> embeddings = service("embed-english-v3.0 (Cohere)").generateEmbeddings(texts(200, 0));
+        
+        assertEquals(Arrays.asList(96, 96, 8), batchSizes);
+        assertPositions(embeddings, 200);
+        JsonObject first = requests.get(0);
+        assertEquals(96, first.getAsJsonArray("texts").size());
+        assertEquals("search_document", first.get("input_type").getAsString());
+        assertNull(first.get("input"));
+    }
+    
+    @Test
+    void cohereSplitsByEstimatedTokens() throws IOException {
+        // About 37,500 tokens each: two fit in Cohere's 100,000 token budget, a third does not
+        List<float[]> embeddings = service("embed-english-v3.0 (Cohere)").generateEmbeddings(texts(5, 150_000));
+        
+        assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+        assertPositions(embeddings, 5);
+    }
+    
+    private EmbeddingService service(String modelSelection) {
+        return new EmbeddingService(modelSelection, "key", new OkHttpClient(),
+            server.url("/v1/embeddings").toString(), server.url("/v1/embed").toString(), null);
+    }
+    
+    /**
+     * Texts "0 ...", "1 ...", each padded to at least the given length
+     */
+    private static List<String> texts(int count, int length) {
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder().append(i).append(' ');
+            while (text.length() < length) {
+                text.append('x');
+            }
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+    
+    private static void assertPositions(List<float[]> embeddings, int count) {
+        assertEquals(count, embeddings.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, embeddings.get(i)[0], "embedding " + i);
+        }
+    }
+    
+    private MockResponse openAiResponse(JsonObject body) {
+        JsonArray input = body.getAsJsonArray("input");
+        batchSizes.add(input.size());
+        JsonArray data = new JsonArray();
+        for (int i = input.size() - 1; i >= 0; i--) {
+            JsonObject item = new JsonObject();
+            item.addProperty("object", "embedding");
+            item.addProperty("index", i);
+            item.add("embedding", embedding(input.get(i)));
+            data.add(item);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("object", "list");
+        response.add("data", data);
+        response.addProperty("model", body.get("model").getAsString());
+        return new MockResponse().setBody(gson.toJson(response));
+    }
+    
+    private MockResponse cohereResponse(JsonObject body) {
+        JsonArray texts = body.getAsJsonArray("texts");
+        batchSizes.add(texts.size());
+        JsonArray embeddings = new JsonArray();
+        for (JsonElement text : texts) {
+            embeddings.add(embedding(text));
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("id", "embed-1");
+        response.add("embeddings", embeddings);
+        return new MockResponse().setBody(gson.toJson(response));
+    }
+    
+    private static JsonArray embedding(JsonElement text) {
+        String value = text.getAsString();
+        JsonArray embedding = new JsonArray();
+        embedding.add(Integer.parseInt(value.substring(0, value.indexOf(' '))));
+        embedding.add(1);
+        return embedding;
+    }
+}
@@ -0,0 +1,105 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recall of the HNSW search against a brute-force scan of the same store
+ */
+class HnswRecallTest {
+    
+    private static final int DIMENSION = 32;
+    private static final int VECTORS = 5000;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final int EF_SEARCH = 128;
+    private static final double MIN_RECALL = 0.95;
+    
+    @Test
+    void recallInMemory() {
+        HnswVectorStore store = new HnswVectorStore(DistanceMetric.COSINE, HnswVectorStore.DEFAULT_M,
+            HnswVectorStore.DEFAULT_EF_CONSTRUCTION, EF_SEARCH);
+        store.upsert(vectors(new Random(42)));
+        
+        assertRecall(store, new Random(7));
+    }
+    
+    @Test
+    void recallAfterWriteAheadLogReplay(@TempDir Path directory) throws IOException {
+        Random random = new Random(42);
+        List<VectorStore.VectorData> data = vectors(random);
+        try (HnswVectorStore store = open(directory)) {
+            // Several WAL batches, then deletes that replay as tombstones
+            for (int from = 0; from < data.size(); from += 1000) {
+                store.upsert(data.subList(from, from + 1000));
+            }
+            List<String> deleted = new ArrayList<>();
+            for (int i = 0; i < VECTORS; i += 10) {
+                deleted.add("v" + i);
+            }
+            store.delete(deleted);
+        }
+        
+        try (HnswVectorStore reopened = open(directory)) {
+            assertEquals(VECTORS - VECTORS / 10, reopened.getStats().getPointsCount());
+            assertRecall(reopened, new Random(7));
+            
+            reopened.compact();
+            assertRecall(reopened, new Random(7));
+        }
+    }
+    
+    private static HnswVectorStore open(Path directory) throws IOException {
+        return HnswVectorStore.open(directory, DistanceMetric.COSINE, HnswVectorStore.DEFAULT_M,
+            HnswVectorStore.DEFAULT_EF_CONSTRUCTION, EF_SEARCH, VectorQuantization.NONE);
+    }
+    
+    private static void assertRecall(HnswVectorStore store, Random random) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = randomVector(random);
+            Set<Object> expected = ids(store.exactSearch(query, K));
+            Set<Object> actual = ids(store.search(query, K));
+            actual.retainAll(expected);
+            found += actual.size();
+        }
+        double recall = (double) found / (QUERIES * K);
+        assertTrue(recall >= MIN_RECALL, "recall@" + K + " was " + recall);
+    }
+    
+    private static Set<Object> ids(List<VectorStore.SearchResult> results) {
+        Set<Object> ids = new HashSet<>();
+        for (VectorStore.SearchResult result : results) {
+            ids.add(result.getMetadata().get("n"));
+        }
+        return ids;
+    }
+    
+    private static List<VectorStore.VectorData> vectors(Random random) {
+        List<VectorStore.VectorData> data = new ArrayList<>(VECTORS);
+        for (int i = 0; i < VECTORS; i++) {
+            data.add(new VectorStore.VectorData("v" + i, randomVector(random), Collections.singletonMap("n", i)));
+        }
+        return data;
+    }
+    
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
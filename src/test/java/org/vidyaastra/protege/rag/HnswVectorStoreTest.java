@@ -0,0 +1,44 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Searches of a persistent {@link HnswVectorStore} whose segments have been compacted
+ */
+class HnswVectorStoreTest {
+    
+    @Test
+    void interruptedSearchDoesNotBreakLaterSearches(@TempDir Path directory) throws IOException {
+        try (HnswVectorStore store = HnswVectorStore.open(directory, DistanceMetric.COSINE, HnswVectorStore.DEFAULT_M,
+                HnswVectorStore.DEFAULT_EF_CONSTRUCTION, HnswVectorStore.DEFAULT_EF_SEARCH, VectorQuantization.NONE)) {
+            List<VectorStore.VectorData> data = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                data.add(new VectorStore.VectorData("v" + i, new float[] {1, i}, Collections.singletonMap("n", i)));
+            }
+            store.upsert(data);
+            // Payloads are now read from the segment files
+            store.compact();
+            
+            Thread.currentThread().interrupt();
+            try {
+                assertEquals(3, store.search(new float[] {1, 50}, 3).size());
+            } finally {
+                Thread.interrupted();
+            }
+            
+            List<VectorStore.SearchResult> results = store.search(new float[] {1, 50}, 3);
+            assertEquals(3, results.size());
+            assertFalse(results.get(0).getMetadata().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * BM25 ranking and posting list maintenance of {@link LexicalIndex}
+ */
+class LexicalIndexTest {
+    
+    private final LexicalIndex index = new LexicalIndex();
+    
+    @Test
+    void rarerTermsAndHigherFrequenciesRankFirst() {
+        add("a", "circular flow pump");
+        add("b", "pump pump valve");
+        add("c", "valve");
+        
+        assertEquals(Arrays.asList("b", "a"), ids(index.search("pump", 10)));
+        // "circular" is in one document, "valve" in two; the shorter of those ranks higher
+        assertEquals(Arrays.asList("a", "c", "b"), ids(index.search("circular valve", 10)));
+        assertEquals(Collections.singletonList("a"), ids(index.search("circular valve", 1)));
+        assertEquals(Collections.emptyList(), ids(index.search("unknown", 10)));
+    }
+    
+    @Test
+    void identifiersAreFoundWholeAndByTheirParts() {
+        add("flow", "Instance CircularFlow_001 of class Flow");
+        add("pump", "Instance Pump_002 of class Pump");
+        
+        assertEquals(Collections.singletonList("flow"), ids(index.search("CircularFlow_001", 10)));
+        assertEquals(Collections.singletonList("flow"), ids(index.search("circular flow", 10)));
+        assertEquals(Arrays.asList("pump", "flow"), ids(index.search("pump 001", 10)));
+    }
+    
+    @Test
+    void postingsStayCorrectAfterCompaction() {
+        for (String id : Arrays.asList("d1", "d2", "d3", "d4")) {
+            add(id, "alpha beta");
+        }
+        assertEquals(16, index.getPostingBytes());
+        
+        // The third removal leaves more dead postings than live ones, which compacts the lists
+        index.delete(Arrays.asList("d1", "d2", "d3"));
+        assertEquals(4, index.getPostingBytes());
+        assertEquals(Collections.singletonList("d4"), ids(index.search("alpha", 10)));
+        
+        // New postings are delta-encoded against the last document kept by the compaction
+        add("d5", "alpha gamma");
+        assertEquals(Arrays.asList("d4", "d5"), sorted(ids(index.search("alpha", 10))));
+        
+        // Re-indexing replaces the old text
+        add("d4", "gamma");
+        assertEquals(Collections.singletonList("d5"), ids(index.search("alpha", 10)));
+        assertEquals(Arrays.asList("d4", "d5"), sorted(ids(index.search("gamma", 10))));
+        assertEquals(2, index.size());
+    }
+    
+    private void add(String id, String text) {
+        index.add(id, Collections.singletonMap("text", text));
+    }
+    
+    private static List<String> ids(List<VectorStore.SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (VectorStore.SearchResult result : results) {
+            ids.add((String) result.getMetadata().get(VectorStore.SOURCE_ID_KEY));
+        }
+        return ids;
+    }
+    
+    private static List<String> sorted(List<String> ids) {
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,216 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.types.Node;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Change detection and neighbourhood expansion against an embedded Neo4j server
+ */
+class Neo4jServiceTest {
+    
+    private static Neo4j neo4j;
+    private static Driver driver;
+    private static Neo4jService service;
+    
+    @BeforeAll
+    static void startServer() {
+        neo4j = Neo4jBuilders.newInProcessBuilder().withDisabledServer().build();
+        driver = GraphDatabase.driver(neo4j.boltURI(), AuthTokens.none());
+        service = new Neo4jService(driver, "neo4j");
+    }
+    
+    @AfterAll
+    static void stopServer() {
+        // Closes the driver as well
+        service.close();
+        neo4j.close();
+    }
+    
+    @BeforeEach
+    void clearGraph() {
+        write("MATCH (n) DETACH DELETE n");
+    }
+    
+    @Test
+    void changedNodesIncludeTheirOneHopNeighbourhood() {
+        // a -> b -> c -> d, only c changed after the watermark
+        Map<String, Object> ids = write(
+            "CREATE (a:Item {updatedAt: 100})-[:NEXT]->(b:Item {updatedAt: 100})" +
+            "-[:NEXT]->(c:Item {updatedAt: 300})-[:NEXT]->(d:Item {updatedAt: 100}) " +
+            "RETURN id(a) AS a, id(b) AS b, id(c) AS c, id(d) AS d");
+        
+        Neo4jService.GraphChangeSet changes = service.findChangedNodes("updatedAt", 200);
+        
+        assertEquals(1, changes.getChangedCount());
+        assertEquals(ids(ids, "b", "c", "d"), changes.getNodeIds());
+        assertEquals(300, changes.getWatermark());
+    }
+    
+    @Test
+    void changedRelationshipMarksBothEndpoints() {
+        Map<String, Object> ids = write(
+            "CREATE (a:Item {updatedAt: 100})-[:NEXT {updatedAt: 300}]->(b:Item {updatedAt: 100}), " +
+            "(c:Item {updatedAt: 100}) " +
+            "RETURN id(a) AS a, id(b) AS b, id(c) AS c");
+        
+        Neo4jService.GraphChangeSet changes = service.findChangedNodes("updatedAt", 200);
+        
+        assertEquals(ids(ids, "a", "b"), changes.getNodeIds());
+        assertEquals(300, changes.getWatermark());
+    }
+    
+    @Test
+    void writeInTheWatermarkMillisecondIsNotMissed() {
+        write("CREATE (:Item {updatedAt: 300})");
+        long watermark = service.findChangedNodes("updatedAt", 200).getWatermark();
+        assertEquals(300, watermark);
+        
+        // Committed after the previous sync, but stamped with the same millisecond
+        Map<String, Object> ids = write("CREATE (n:Item {updatedAt: 300}) RETURN id(n) AS n");
+        
+        Neo4jService.GraphChangeSet changes = service.findChangedNodes("updatedAt", watermark);
+        assertTrue(changes.getNodeIds().contains(((Number) ids.get("n")).longValue()));
+        assertEquals(300, changes.getWatermark());
+    }
+    
+    @Test
+    void noChangesKeepTheWatermark() {
+        write("CREATE (:Item {updatedAt: 100})");
+        
+        Neo4jService.GraphChangeSet changes = service.findChangedNodes("updatedAt", 200);
+        
+        assertEquals(0, changes.getChangedCount());
+        assertEquals(0, changes.getNodeIds().size());
+        assertEquals(200, changes.getWatermark());
+    }
+    
+    @Test
+    void changePropertyMustBeAPlainIdentifier() {
+        assertThrows(IllegalArgumentException.class, () -> service.findChangedNodes("updatedAt` > 0 OR n.`x", 0));
+        assertThrows(IllegalArgumentException.class, () -> service.getChangeWatermark("updated-at"));
+    }
+    
+    @Test
+    void existingNodeIdsLeaveOutDeletedNodes() {
+        Map<String, Object> ids = write("CREATE (a:Item), (b:Item) RETURN id(a) AS a, id(b) AS b");
+        write("MATCH (b) WHERE id(b) = " + ids.get("b") + " DELETE b");
+        
+        assertEquals(ids(ids, "a"), service.findExistingNodeIds(ids(ids, "a", "b")));
+    }
+    
+    @Test
+    void executeReadQueryCollectsEachRowOnce() {
+        write("CREATE (:Item {name: 'a', rank: 1}), (:Item {name: 'b', rank: 2}), (:Item {name: 'c', rank: 3})");
+        
+        List<Map<String, Object>> rows = service.executeReadQuery(
+            "MATCH (n:Item) WHERE n.rank >= $min RETURN n.name AS name ORDER BY name", Map.of("min", 2));
+        
+        assertEquals(List.of(Map.of("name", "b"), Map.of("name", "c")), rows);
+    }
+    
+    @Test
+    void executeQueryCanWrite() {
+        List<Map<String, Object>> rows = service.executeQuery(
+            "CREATE (n:Item {name: $name}) RETURN n.name AS name", Map.of("name", "a"));
+        
+        assertEquals(List.of(Map.of("name", "a")), rows);
+        assertEquals(List.of(Map.of("count", 1L)), service.executeReadQuery("MATCH (n:Item) RETURN count(n) AS count"));
+    }
+    
+    @Test
+    void expansionFollowsRelationshipsInBothDirectionsUpToTheHopDepth() {
+        // a -> b -> c -> d
+        Map<String, Object> ids = write(
+            "CREATE (a:Item)-[:NEXT]->(b:Item)-[:NEXT]->(c:Item)-[:NEXT]->(d:Item) " +
+            "RETURN id(a) AS a, id(b) AS b, id(c) AS c, id(d) AS d");
+        
+        Neo4jService.Subgraph oneHop = service.expandNeighbourhood(List.copyOf(ids(ids, "b")), 1, 10);
+        assertEquals(ids(ids, "a", "b", "c"), nodeIds(oneHop));
+        assertEquals(2, oneHop.getRelationshipCount());
+        
+        Neo4jService.Subgraph twoHops = service.expandNeighbourhood(List.copyOf(ids(ids, "a")), 2, 10);
+        assertEquals(ids(ids, "a", "b", "c"), nodeIds(twoHops));
+        assertEquals(2, twoHops.getRelationshipCount());
+        
+        assertThrows(IllegalArgumentException.class, () -> service.expandNeighbourhood(
+            List.copyOf(ids(ids, "a")), Neo4jService.MAX_EXPANSION_HOPS + 1, 10));
+    }
+    
+    @Test
+    void expansionStopsAtTheNodeBudgetKeepingSeedsFirst() {
+        Map<String, Object> ids = write(
+            "CREATE (hub:Item), (other:Item) WITH hub, other " +
+            "UNWIND range(1, 10) AS i CREATE (hub)-[:HAS]->(:Leaf) " +
+            "WITH DISTINCT hub, other RETURN id(hub) AS hub, id(other) AS other");
+        
+        Neo4jService.Subgraph subgraph = service.expandNeighbourhood(List.copyOf(ids(ids, "hub")), 2, 4);
+        assertEquals(4, subgraph.getNodeCount());
+        assertEquals(((Number) ids.get("hub")).longValue(), subgraph.getNodes().get(0).id());
+        
+        // Seeds count against the budget too, most relevant first
+        long hub = ((Number) ids.get("hub")).longValue();
+        long other = ((Number) ids.get("other")).longValue();
+        Neo4jService.Subgraph seedsOnly = service.expandNeighbourhood(List.of(other, hub), 1, 1);
+        assertEquals(Set.of(other), nodeIds(seedsOnly));
+    }
+    
+    @Test
+    void expansionSkipsSeedsThatNoLongerExist() {
+        Map<String, Object> ids = write(
+            "CREATE (a:Item)-[:NEXT]->(b:Item), (gone:Item) RETURN id(a) AS a, id(b) AS b, id(gone) AS gone");
+        write("MATCH (n) WHERE id(n) = " + ids.get("gone") + " DELETE n");
+        long gone = ((Number) ids.get("gone")).longValue();
+        
+        Neo4jService.Subgraph subgraph = service.expandNeighbourhood(
+            List.of(gone, ((Number) ids.get("a")).longValue()), 1, 10);
+        assertEquals(ids(ids, "a", "b"), nodeIds(subgraph));
+        assertFalse(subgraph.isEmpty());
+        
+        assertTrue(service.expandNeighbourhood(List.of(gone), 2, 10).isEmpty());
+    }
+    
+    private static Set<Long> nodeIds(Neo4jService.Subgraph subgraph) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Node node : subgraph.getNodes()) {
+            ids.add(node.id());
+        }
+        return ids;
+    }
+    
+    private static Map<String, Object> write(String query) {
+        try (Session session = driver.session()) {
+            return session.writeTransaction(tx -> {
+                Result result = tx.run(query);
+                return result.hasNext() ? result.single().asMap() : Map.of();
+            });
+        }
+    }
+    
+    private static Set<Long> ids(Map<String, Object> ids, String... names) {
+        Set<Long> selected = new HashSet<>();
+        Arrays.stream(names).forEach(name -> selected.add(((Number) ids.get(name)).longValue()));
+        return selected;
+    }
+}
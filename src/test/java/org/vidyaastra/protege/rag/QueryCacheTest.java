@@ -0,0 +1,76 @@
+package org.vidyaastra.protege.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryCacheTest {
+    
+    private static final float[] EMBEDDING = {1, 0, 0};
+    private static final float[] NEAR_EMBEDDING = {1, 0.01f, 0};
+    private static final String BASIS = "summary\nschema";
+    
+    private final QueryCache cache = new QueryCache(16, 1, TimeUnit.HOURS, 0.95);
+    
+    @Test
+    void sameQueryReusesTheAnswer() {
+        cache.putResults("What is CircularFlow_001?", EMBEDDING, 1, hits("a"), hits("x", "y"), BASIS, "answer");
+        
+        QueryCache.Entry entry = cache.findResults("  What is  CircularFlow_001? ", EMBEDDING, 1);
+        
+        assertEquals("answer", entry.getAnswer("  What is  CircularFlow_001? ", hits("z"), BASIS));
+    }
+    
+    @Test
+    void embeddingIsOnlySharedByQueriesOfTheSameCase() {
+        cache.putEmbedding("What is CircularFlow_001?", EMBEDDING);
+        
+        assertNotNull(cache.getEmbedding("What is  CircularFlow_001? "));
+        assertNull(cache.getEmbedding("what is circularflow_001?"));
+    }
+    
+    @Test
+    void nearDuplicateWithOtherLexicalHitsOnlyReusesTheRetrieval() {
+        cache.putResults("What is CircularFlow_001?", EMBEDDING, 1, hits("a"), hits("flow1", "flow"), BASIS, "answer");
+        
+        QueryCache.Entry entry = cache.findResults("What is CircularFlow_002?", NEAR_EMBEDDING, 1);
+        
+        assertNotNull(entry);
+        assertEquals("a", entry.getSearchResults().get(0).getMetadata().get(VectorStore.SOURCE_ID_KEY));
+        assertNull(entry.getAnswer("What is CircularFlow_002?", hits("flow2", "flow"), BASIS));
+    }
+    
+    @Test
+    void nearDuplicateWithSameLexicalHitsReusesTheAnswer() {
+        cache.putResults("What is CircularFlow_001?", EMBEDDING, 1, hits("a"), hits("flow1", "flow"), BASIS, "answer");
+        
+        QueryCache.Entry entry = cache.findResults("Tell me about CircularFlow_001", NEAR_EMBEDDING, 1);
+        
+        assertEquals("answer", entry.getAnswer("Tell me about CircularFlow_001", hits("flow1", "flow"), BASIS));
+        assertNull(entry.getAnswer("Tell me about CircularFlow_001", Collections.emptyList(), BASIS));
+    }
+    
+    @Test
+    void changedSchemaOrIndexVersionInvalidatesTheAnswer() {
+        cache.putResults("What is CircularFlow_001?", EMBEDDING, 1, hits("a"), hits("x"), BASIS, "answer");
+        
+        assertNull(cache.findResults("What is CircularFlow_001?", EMBEDDING, 2));
+        assertNull(cache.findResults("What is CircularFlow_001?", EMBEDDING, 1)
+            .getAnswer("What is CircularFlow_001?", hits("x"), "summary\nother schema"));
+    }
+    
+    private static List<VectorStore.SearchResult> hits(String... sourceIds) {
+        List<VectorStore.SearchResult> hits = new ArrayList<>();
+        for (String sourceId : sourceIds) {
+            hits.add(new VectorStore.SearchResult(1, Collections.singletonMap(VectorStore.SOURCE_ID_KEY, sourceId)));
+        }
+        return hits;
+    }
+}